@@ -0,0 +1,71 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the {@link Interpreter} allocates for a single operation,
+ * with {@link Environment#create(Object)} sharing types and scopes and
+ * caching common values. The build runs benchmarks with the {@code gc}
+ * profiler, so look at {@code gc.alloc.rate.norm} (bytes per operation).
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+
+    private Interpreter interpreter;
+    private Ast.Expression small;
+    private Ast.Expression large;
+    private Ast.Expression comparison;
+
+    @Setup
+    public void setup() {
+        interpreter = new Interpreter(new plc.project.Scope(null));
+        interpreter.getScope().defineVariable("x", true, Environment.create(BigInteger.valueOf(100000)));
+        small = parse("1 + 2");
+        large = parse("x + 1");
+        comparison = parse("x < 5");
+    }
+
+    private static Ast.Expression parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseExpression();
+    }
+
+    /**
+     * The operands and the result are all cached.
+     */
+    @Benchmark
+    public Object smallAddition() {
+        return interpreter.visit(small);
+    }
+
+    /**
+     * Only the result and its {@code BigInteger} are allocated.
+     */
+    @Benchmark
+    public Object largeAddition() {
+        return interpreter.visit(large);
+    }
+
+    @Benchmark
+    public Object comparison() {
+        return interpreter.visit(comparison);
+    }
+
+}
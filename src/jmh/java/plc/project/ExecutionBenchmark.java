@@ -0,0 +1,77 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of running a program: walking the AST with the {@link
+ * Interpreter} (with and without the {@link Resolver}'s slots), running
+ * bytecode on the {@link VirtualMachine}, and running classes generated by the
+ * {@link JvmCompiler}. Each iteration runs the whole program, including
+ * compiling and defining its functions. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionBenchmark {
+
+    private Ast.Source source;
+    private Ast.Source resolved;
+
+    @Setup
+    public void setup() {
+        source = parse();
+        resolved = parse();
+        new Resolver().visit(resolved);
+    }
+
+    private static Ast.Source parse() {
+        return new Parser(new Lexer(
+                "VAR limit: Integer = 1000; " +
+                "FUN fib(n: Integer): Integer DO " +
+                    "IF n < 2 DO RETURN n; END " +
+                    "RETURN fib(n - 1) + fib(n - 2); " +
+                "END " +
+                "FUN sum(): Integer DO " +
+                    "LET i = 0; LET total = 0; " +
+                    "WHILE i < limit DO total = total + i * 2; i = i + 1; END " +
+                    "RETURN total; " +
+                "END " +
+                "FUN main(): Integer DO RETURN fib(15) + sum(); END"
+        ).lex()).parseSource();
+    }
+
+    @Benchmark
+    public Object interpreter() {
+        return new Interpreter(new plc.project.Scope(null)).visit(source).getValue();
+    }
+
+    @Benchmark
+    public Object resolvedInterpreter() {
+        return new Interpreter(new plc.project.Scope(null)).visit(resolved).getValue();
+    }
+
+    @Benchmark
+    public Object virtualMachine() {
+        return new VirtualMachine(new plc.project.Scope(null)).execute(source).getValue();
+    }
+
+    @Benchmark
+    public Object jvmCompiler() {
+        return new JvmCompiler(new plc.project.Scope(null)).execute(source).getValue();
+    }
+
+}
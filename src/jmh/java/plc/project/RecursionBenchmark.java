@@ -0,0 +1,50 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the interpreter on a script dominated by calls and {@code
+ * RETURN}s. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecursionBenchmark {
+
+    @Param({"15", "20"})
+    public int n;
+
+    private Ast.Source source;
+
+    @Setup
+    public void setup() {
+        source = new Parser(new Lexer(
+                "FUN fib(n: Integer): Integer DO " +
+                    "IF n < 2 DO RETURN n; END " +
+                    "RETURN fib(n - 1) + fib(n - 2); " +
+                "END " +
+                "FUN main(): Integer DO RETURN fib(" + n + "); END"
+        ).lex()).parseSource();
+    }
+
+    @Benchmark
+    public Object fibonacci() {
+        return new Interpreter(new plc.project.Scope(null)).visit(source).getValue();
+    }
+
+}
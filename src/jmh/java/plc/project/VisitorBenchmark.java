@@ -0,0 +1,252 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Ast.Visitor#visit(Ast)} dispatch through {@link
+ * Ast#accept(Ast.Visitor)} with the {@code instanceof} chain it replaced.
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisitorBenchmark {
+
+    private List<Ast> nodes;
+
+    @Setup
+    public void setup() {
+        Ast.Source source = new Parser(new Lexer(
+                "VAR x: Integer = 1; " +
+                "FUN main(): Integer DO " +
+                    "LET list = f(1, 2.0, NIL); " +
+                    "WHILE x < 10 DO " +
+                        "IF x == 5 DO print(\"five\"); ELSE x = (x + 1) * 2 - list[0]; END " +
+                    "END " +
+                    "SWITCH x CASE 1: RETURN g(x, 'c'); END DEFAULT: RETURN 0; END END " +
+                "END"
+        ).lex()).parseSource();
+        nodes = new ArrayList<>();
+        new Collector(nodes).visit(source);
+    }
+
+    @Benchmark
+    public int accept() {
+        Counter counter = new Counter();
+        int total = 0;
+        for (Ast node : nodes) {
+            total += counter.visit(node);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int instanceofChain() {
+        Counter counter = new Counter();
+        int total = 0;
+        for (Ast node : nodes) {
+            total += chain(counter, node);
+        }
+        return total;
+    }
+
+    /**
+     * The previous default implementation of {@link Ast.Visitor#visit(Ast)}.
+     */
+    private static <T> T chain(Ast.Visitor<T> visitor, Ast ast) {
+        if (ast instanceof Ast.Source) {
+            return visitor.visit((Ast.Source) ast);
+        } else if (ast instanceof Ast.Global) {
+            return visitor.visit((Ast.Global) ast);
+        } else if (ast instanceof Ast.Function) {
+            return visitor.visit((Ast.Function) ast);
+        } else if (ast instanceof Ast.Statement.Expression) {
+            return visitor.visit((Ast.Statement.Expression) ast);
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            return visitor.visit((Ast.Statement.Declaration) ast);
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            return visitor.visit((Ast.Statement.Assignment) ast);
+        } else if (ast instanceof Ast.Statement.If) {
+            return visitor.visit((Ast.Statement.If) ast);
+        } else if (ast instanceof Ast.Statement.Switch) {
+            return visitor.visit((Ast.Statement.Switch) ast);
+        } else if (ast instanceof Ast.Statement.Case) {
+            return visitor.visit((Ast.Statement.Case) ast);
+        } else if (ast instanceof Ast.Statement.While) {
+            return visitor.visit((Ast.Statement.While) ast);
+        } else if (ast instanceof Ast.Statement.Return) {
+            return visitor.visit((Ast.Statement.Return) ast);
+        } else if (ast instanceof Ast.Expression.Literal) {
+            return visitor.visit((Ast.Expression.Literal) ast);
+        } else if (ast instanceof Ast.Expression.Group) {
+            return visitor.visit((Ast.Expression.Group) ast);
+        } else if (ast instanceof Ast.Expression.Binary) {
+            return visitor.visit((Ast.Expression.Binary) ast);
+        } else if (ast instanceof Ast.Expression.Access) {
+            return visitor.visit((Ast.Expression.Access) ast);
+        } else if (ast instanceof Ast.Expression.Function) {
+            return visitor.visit((Ast.Expression.Function) ast);
+        } else if (ast instanceof Ast.Expression.PlcList) {
+            return visitor.visit((Ast.Expression.PlcList) ast);
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * Returns a distinct number per node type without visiting children, so
+     * the benchmark measures dispatch alone.
+     */
+    private static final class Counter implements Ast.Visitor<Integer> {
+
+        public Integer visit(Ast.Source ast) { return 1; }
+        public Integer visit(Ast.Global ast) { return 2; }
+        public Integer visit(Ast.Function ast) { return 3; }
+        public Integer visit(Ast.Statement.Expression ast) { return 4; }
+        public Integer visit(Ast.Statement.Declaration ast) { return 5; }
+        public Integer visit(Ast.Statement.Assignment ast) { return 6; }
+        public Integer visit(Ast.Statement.If ast) { return 7; }
+        public Integer visit(Ast.Statement.Switch ast) { return 8; }
+        public Integer visit(Ast.Statement.Case ast) { return 9; }
+        public Integer visit(Ast.Statement.While ast) { return 10; }
+        public Integer visit(Ast.Statement.Return ast) { return 11; }
+        public Integer visit(Ast.Expression.Literal ast) { return 12; }
+        public Integer visit(Ast.Expression.Group ast) { return 13; }
+        public Integer visit(Ast.Expression.Binary ast) { return 14; }
+        public Integer visit(Ast.Expression.Access ast) { return 15; }
+        public Integer visit(Ast.Expression.Function ast) { return 16; }
+        public Integer visit(Ast.Expression.PlcList ast) { return 17; }
+
+    }
+
+    /**
+     * Flattens a tree into a list of its nodes.
+     */
+    private static final class Collector implements Ast.Visitor<Void> {
+
+        private final List<Ast> nodes;
+
+        private Collector(List<Ast> nodes) {
+            this.nodes = nodes;
+        }
+
+        private Void visitAll(List<? extends Ast> asts) {
+            asts.forEach(this::visit);
+            return null;
+        }
+
+        public Void visit(Ast.Source ast) {
+            nodes.add(ast);
+            visitAll(ast.getGlobals());
+            return visitAll(ast.getFunctions());
+        }
+
+        public Void visit(Ast.Global ast) {
+            nodes.add(ast);
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        public Void visit(Ast.Function ast) {
+            nodes.add(ast);
+            return visitAll(ast.getStatements());
+        }
+
+        public Void visit(Ast.Statement.Expression ast) {
+            nodes.add(ast);
+            return visit(ast.getExpression());
+        }
+
+        public Void visit(Ast.Statement.Declaration ast) {
+            nodes.add(ast);
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        public Void visit(Ast.Statement.Assignment ast) {
+            nodes.add(ast);
+            visit(ast.getReceiver());
+            return visit(ast.getValue());
+        }
+
+        public Void visit(Ast.Statement.If ast) {
+            nodes.add(ast);
+            visit(ast.getCondition());
+            visitAll(ast.getThenStatements());
+            return visitAll(ast.getElseStatements());
+        }
+
+        public Void visit(Ast.Statement.Switch ast) {
+            nodes.add(ast);
+            visit(ast.getCondition());
+            return visitAll(ast.getCases());
+        }
+
+        public Void visit(Ast.Statement.Case ast) {
+            nodes.add(ast);
+            ast.getValue().ifPresent(this::visit);
+            return visitAll(ast.getStatements());
+        }
+
+        public Void visit(Ast.Statement.While ast) {
+            nodes.add(ast);
+            visit(ast.getCondition());
+            return visitAll(ast.getStatements());
+        }
+
+        public Void visit(Ast.Statement.Return ast) {
+            nodes.add(ast);
+            return visit(ast.getValue());
+        }
+
+        public Void visit(Ast.Expression.Literal ast) {
+            nodes.add(ast);
+            return null;
+        }
+
+        public Void visit(Ast.Expression.Group ast) {
+            nodes.add(ast);
+            return visit(ast.getExpression());
+        }
+
+        public Void visit(Ast.Expression.Binary ast) {
+            nodes.add(ast);
+            visit(ast.getLeft());
+            return visit(ast.getRight());
+        }
+
+        public Void visit(Ast.Expression.Access ast) {
+            nodes.add(ast);
+            ast.getOffset().ifPresent(this::visit);
+            return null;
+        }
+
+        public Void visit(Ast.Expression.Function ast) {
+            nodes.add(ast);
+            return visitAll(ast.getArguments());
+        }
+
+        public Void visit(Ast.Expression.PlcList ast) {
+            nodes.add(ast);
+            return visitAll(ast.getValues());
+        }
+
+    }
+
+}
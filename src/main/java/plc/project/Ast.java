@@ -11,6 +11,11 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /**
+     * Calls the {@link Visitor} method for this node's type.
+     */
+    public abstract <T> T accept(Visitor<T> visitor);
+
     public static final class Source extends Ast {
 
         private final List<Global> globals;
@@ -29,6 +34,11 @@ public abstract class Ast {
             return functions;
         }
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Source &&
@@ -94,6 +104,11 @@ public abstract class Ast {
         }
 
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Global &&
@@ -125,6 +140,7 @@ public abstract class Ast {
         private final Optional<String> returnTypeName;
         private final List<Statement> statements;
         private Environment.Function function = null;
+        private int frameSize = -1;
         
         public Function(String name, List<String> parameters, List<Statement> statements) {
             this(name, parameters, new ArrayList<>(), Optional.of("Any"), statements);
@@ -173,6 +189,23 @@ public abstract class Ast {
             this.function = function;
         }
 
+        /**
+         * Returns the number of slots in a frame of this function, assigned by
+         * the {@link Resolver}, or -1 if it has not been resolved.
+         */
+        public int getFrameSize() {
+            return frameSize;
+        }
+
+        public void setFrameSize(int frameSize) {
+            this.frameSize = frameSize;
+        }
+
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
 
         @Override
         public boolean equals(Object obj) {
@@ -214,6 +247,11 @@ public abstract class Ast {
                 return expression;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Statement.Expression &&
@@ -235,6 +273,7 @@ public abstract class Ast {
             private final Optional<String> typeName;
             private Optional<Ast.Expression> value;
             private Environment.Variable variable = null;
+            private int slot = -1;
 
             public Declaration(String name, Optional<Ast.Expression> value) {
                 this(name, Optional.empty(), value);
@@ -268,8 +307,25 @@ public abstract class Ast {
             public void setVariable(Environment.Variable variable) {
                 this.variable = variable;
             }
+
+            /**
+             * Returns the frame slot of the declared variable, assigned by the
+             * {@link Resolver}, or -1 if it has not been resolved.
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
             
             
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -309,6 +365,11 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Assignment &&
@@ -351,6 +412,11 @@ public abstract class Ast {
                 return elseStatements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof If &&
@@ -386,6 +452,11 @@ public abstract class Ast {
 
             public List<Ast.Statement.Case> getCases() { return cases; }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Switch &&
@@ -421,6 +492,11 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Case &&
@@ -456,6 +532,11 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof While &&
@@ -485,6 +566,11 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Return &&
@@ -533,6 +619,11 @@ public abstract class Ast {
 
 
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Literal &&
@@ -576,6 +667,11 @@ public abstract class Ast {
             }
 
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Group &&
@@ -631,6 +727,11 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Binary &&
@@ -658,6 +759,7 @@ public abstract class Ast {
             private final Optional<Ast.Expression> offset;
             private final String name;
             private Environment.Variable variable = null;
+            private int slot = -1;
 
             public Access(Optional<Ast.Expression> offset, String name) {
                 this.offset = offset;
@@ -683,11 +785,29 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            /**
+             * Returns the frame slot of the accessed variable, assigned by the
+             * {@link Resolver}, or -1 if it is a global or has not been
+             * resolved.
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getVariable().getType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Access &&
@@ -743,6 +863,11 @@ public abstract class Ast {
                 return getFunction().getReturnType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Expression.Function &&
@@ -788,6 +913,11 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Expression.PlcList &&
@@ -809,44 +939,12 @@ public abstract class Ast {
 
     public interface Visitor<T> {
 
+        /**
+         * Dispatches to the method for the node's type through {@link
+         * Ast#accept(Visitor)}.
+         */
         default T visit(Ast ast) {
-            if (ast instanceof Ast.Source) {
-                return visit((Ast.Source) ast);
-            } else if (ast instanceof Ast.Global) {
-                return visit((Ast.Global) ast);
-            } else if (ast instanceof Ast.Function) {
-                return visit((Ast.Function) ast);
-            } else if (ast instanceof Ast.Statement.Expression) {
-                return visit((Ast.Statement.Expression) ast);
-            } else if (ast instanceof Ast.Statement.Declaration) {
-                return visit((Ast.Statement.Declaration) ast);
-            } else if (ast instanceof Ast.Statement.Assignment) {
-                return visit((Ast.Statement.Assignment) ast);
-            } else if (ast instanceof Ast.Statement.If) {
-                return visit((Ast.Statement.If) ast);
-            } else if (ast instanceof Ast.Statement.Switch) {
-                return visit((Ast.Statement.Switch) ast);
-            } else if (ast instanceof Ast.Statement.Case) {
-                return visit((Ast.Statement.Case) ast);
-            } else if (ast instanceof Ast.Statement.While) {
-                return visit((Ast.Statement.While) ast);
-            } else if (ast instanceof Ast.Statement.Return) {
-                return visit((Ast.Statement.Return) ast);
-            } else if (ast instanceof Ast.Expression.Literal) {
-                return visit((Ast.Expression.Literal) ast);
-            } else if (ast instanceof Ast.Expression.Group) {
-                return visit((Ast.Expression.Group) ast);
-            } else if (ast instanceof Ast.Expression.Binary) {
-                return visit((Ast.Expression.Binary) ast);
-            } else if (ast instanceof Ast.Expression.Access) {
-                return visit((Ast.Expression.Access) ast);
-            } else if (ast instanceof Ast.Expression.Function) {
-                return visit((Ast.Expression.Function) ast);
-            } else if (ast instanceof Ast.Expression.PlcList) {
-                return visit((Ast.Expression.PlcList) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
-            }
+            return ast.accept(this);
         }
 
         T visit(Ast.Source ast);
@@ -0,0 +1,341 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact, immutable encoding of an {@link Ast.Source}. Instead of one
+ * object per node (each with its own {@code Optional}s and {@code List}s), the
+ * whole tree is stored as records in a single {@code int[]}, and names,
+ * operators and literal values are stored once each in a side pool.
+ *
+ * Each record starts with a tag followed by the node's fields: references to
+ * child records are offsets into the same array, optional children use
+ * {@code -1}, and lists are a count followed by the elements. Records are
+ * written children first, so the root is the last record.
+ *
+ * The arena is meant for storage (such as caching many parsed scripts). To run
+ * the {@link Analyzer}, {@link Interpreter} or {@link Generator}, use {@link
+ * #accept(Ast.Visitor)} or {@link #toSource()}, which decode a fresh tree; the
+ * analyzer annotates the decoded nodes, so analyze and then interpret or
+ * generate the same decoded tree.
+ */
+public final class AstArena {
+
+    private static final int SOURCE = 0;
+    private static final int GLOBAL = 1;
+    private static final int FUNCTION = 2;
+    private static final int EXPRESSION_STATEMENT = 3;
+    private static final int DECLARATION = 4;
+    private static final int ASSIGNMENT = 5;
+    private static final int IF = 6;
+    private static final int SWITCH = 7;
+    private static final int CASE = 8;
+    private static final int WHILE = 9;
+    private static final int RETURN = 10;
+    private static final int LITERAL = 11;
+    private static final int GROUP = 12;
+    private static final int BINARY = 13;
+    private static final int ACCESS = 14;
+    private static final int CALL = 15;
+    private static final int LIST = 16;
+
+    private final int[] nodes;
+    private final Object[] pool;
+    private final int root;
+    private final int count;
+
+    private AstArena(int[] nodes, Object[] pool, int root, int count) {
+        this.nodes = nodes;
+        this.pool = pool;
+        this.root = root;
+        this.count = count;
+    }
+
+    /**
+     * Encodes the given source. Analysis results stored on the nodes (such as
+     * variables and types) are not kept.
+     */
+    public static AstArena of(Ast.Source source) {
+        Encoder encoder = new Encoder();
+        int root = encoder.encode(source);
+        return new AstArena(Arrays.copyOf(encoder.nodes, encoder.size), encoder.pool.toArray(), root, encoder.count);
+    }
+
+    /**
+     * Returns the number of AST nodes stored.
+     */
+    public int getNodeCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of {@code int}s used by the node records.
+     */
+    public int getNodeWords() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the number of distinct names and literals in the pool.
+     */
+    public int getPoolSize() {
+        return pool.length;
+    }
+
+    /**
+     * Decodes the arena into a new, unanalyzed {@link Ast.Source}.
+     */
+    public Ast.Source toSource() {
+        return (Ast.Source) decode(root);
+    }
+
+    /**
+     * Decodes the arena and visits the resulting source.
+     */
+    public <T> T accept(Ast.Visitor<T> visitor) {
+        return visitor.visit(toSource());
+    }
+
+    private Ast decode(int node) {
+        int i = node + 1;
+        switch (nodes[node]) {
+            case SOURCE: {
+                List<Ast.Global> globals = new ArrayList<>();
+                for (int n = nodes[i++]; n > 0; n--) {
+                    globals.add((Ast.Global) decode(nodes[i++]));
+                }
+                List<Ast.Function> functions = new ArrayList<>();
+                for (int n = nodes[i++]; n > 0; n--) {
+                    functions.add((Ast.Function) decode(nodes[i++]));
+                }
+                return new Ast.Source(globals, functions);
+            }
+            case GLOBAL:
+                return new Ast.Global(string(nodes[i]), string(nodes[i + 1]), nodes[i + 2] != 0, optional(nodes[i + 3]));
+            case FUNCTION: {
+                String name = string(nodes[i++]);
+                Optional<String> returnTypeName = Optional.ofNullable(string(nodes[i++]));
+                List<String> parameters = new ArrayList<>();
+                for (int n = nodes[i++]; n > 0; n--) {
+                    parameters.add(string(nodes[i++]));
+                }
+                List<String> parameterTypeNames = new ArrayList<>();
+                for (int n = nodes[i++]; n > 0; n--) {
+                    parameterTypeNames.add(string(nodes[i++]));
+                }
+                return new Ast.Function(name, parameters, parameterTypeNames, returnTypeName, statements(i));
+            }
+            case EXPRESSION_STATEMENT:
+                return new Ast.Statement.Expression(expression(nodes[i]));
+            case DECLARATION:
+                return new Ast.Statement.Declaration(string(nodes[i]), Optional.ofNullable(string(nodes[i + 1])), optional(nodes[i + 2]));
+            case ASSIGNMENT:
+                return new Ast.Statement.Assignment(expression(nodes[i]), expression(nodes[i + 1]));
+            case IF:
+                return new Ast.Statement.If(expression(nodes[i]), statements(i + 1), statements(i + 2 + nodes[i + 1]));
+            case SWITCH: {
+                Ast.Expression condition = expression(nodes[i++]);
+                List<Ast.Statement.Case> cases = new ArrayList<>();
+                for (int n = nodes[i++]; n > 0; n--) {
+                    cases.add((Ast.Statement.Case) decode(nodes[i++]));
+                }
+                return new Ast.Statement.Switch(condition, cases);
+            }
+            case CASE:
+                return new Ast.Statement.Case(optional(nodes[i]), statements(i + 1));
+            case WHILE:
+                return new Ast.Statement.While(expression(nodes[i]), statements(i + 1));
+            case RETURN:
+                return new Ast.Statement.Return(expression(nodes[i]));
+            case LITERAL:
+                return new Ast.Expression.Literal(nodes[i] < 0 ? null : pool[nodes[i]]);
+            case GROUP:
+                return new Ast.Expression.Group(expression(nodes[i]));
+            case BINARY:
+                return new Ast.Expression.Binary(string(nodes[i]), expression(nodes[i + 1]), expression(nodes[i + 2]));
+            case ACCESS:
+                return new Ast.Expression.Access(optional(nodes[i + 1]), string(nodes[i]));
+            case CALL:
+                return new Ast.Expression.Function(string(nodes[i]), expressions(i + 1));
+            case LIST:
+                return new Ast.Expression.PlcList(expressions(i));
+            default:
+                throw new AssertionError("Unknown node tag " + nodes[node] + ".");
+        }
+    }
+
+    private Ast.Expression expression(int node) {
+        return (Ast.Expression) decode(node);
+    }
+
+    private Optional<Ast.Expression> optional(int node) {
+        return node < 0 ? Optional.empty() : Optional.of(expression(node));
+    }
+
+    private String string(int index) {
+        return index < 0 ? null : (String) pool[index];
+    }
+
+    private List<Ast.Statement> statements(int list) {
+        List<Ast.Statement> statements = new ArrayList<>(nodes[list]);
+        for (int i = 1; i <= nodes[list]; i++) {
+            statements.add((Ast.Statement) decode(nodes[list + i]));
+        }
+        return statements;
+    }
+
+    private List<Ast.Expression> expressions(int list) {
+        List<Ast.Expression> expressions = new ArrayList<>(nodes[list]);
+        for (int i = 1; i <= nodes[list]; i++) {
+            expressions.add(expression(nodes[list + i]));
+        }
+        return expressions;
+    }
+
+    /**
+     * Writes records into a growing array, interning pool entries as it goes.
+     */
+    private static final class Encoder {
+
+        private int[] nodes = new int[256];
+        private int size = 0;
+        private int count = 0;
+        private final List<Object> pool = new ArrayList<>();
+        private final Map<Object, Integer> indices = new HashMap<>();
+
+        private int encode(Ast ast) {
+            count++;
+            if (ast instanceof Ast.Source) {
+                int[] globals = encodeAll(((Ast.Source) ast).getGlobals());
+                int[] functions = encodeAll(((Ast.Source) ast).getFunctions());
+                return write(SOURCE, list(globals), list(functions));
+            } else if (ast instanceof Ast.Global) {
+                Ast.Global global = (Ast.Global) ast;
+                int value = encodeOptional(global.getValue());
+                return write(GLOBAL, new int[] {intern(global.getName()), intern(global.getTypeName()), global.getMutable() ? 1 : 0, value});
+            } else if (ast instanceof Ast.Function) {
+                Ast.Function function = (Ast.Function) ast;
+                int[] statements = encodeAll(function.getStatements());
+                int[] header = {intern(function.getName()), intern(function.getReturnTypeName().orElse(null))};
+                return write(FUNCTION, header, list(interned(function.getParameters())),
+                        list(interned(function.getParameterTypeNames())), list(statements));
+            } else if (ast instanceof Ast.Statement.Expression) {
+                return write(EXPRESSION_STATEMENT, new int[] {encode(((Ast.Statement.Expression) ast).getExpression())});
+            } else if (ast instanceof Ast.Statement.Declaration) {
+                Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+                int value = encodeOptional(declaration.getValue());
+                return write(DECLARATION, new int[] {intern(declaration.getName()), intern(declaration.getTypeName().orElse(null)), value});
+            } else if (ast instanceof Ast.Statement.Assignment) {
+                int receiver = encode(((Ast.Statement.Assignment) ast).getReceiver());
+                int value = encode(((Ast.Statement.Assignment) ast).getValue());
+                return write(ASSIGNMENT, new int[] {receiver, value});
+            } else if (ast instanceof Ast.Statement.If) {
+                Ast.Statement.If statement = (Ast.Statement.If) ast;
+                int condition = encode(statement.getCondition());
+                int[] then = encodeAll(statement.getThenStatements());
+                int[] otherwise = encodeAll(statement.getElseStatements());
+                return write(IF, new int[] {condition}, list(then), list(otherwise));
+            } else if (ast instanceof Ast.Statement.Switch) {
+                int condition = encode(((Ast.Statement.Switch) ast).getCondition());
+                int[] cases = encodeAll(((Ast.Statement.Switch) ast).getCases());
+                return write(SWITCH, new int[] {condition}, list(cases));
+            } else if (ast instanceof Ast.Statement.Case) {
+                int value = encodeOptional(((Ast.Statement.Case) ast).getValue());
+                int[] statements = encodeAll(((Ast.Statement.Case) ast).getStatements());
+                return write(CASE, new int[] {value}, list(statements));
+            } else if (ast instanceof Ast.Statement.While) {
+                int condition = encode(((Ast.Statement.While) ast).getCondition());
+                int[] statements = encodeAll(((Ast.Statement.While) ast).getStatements());
+                return write(WHILE, new int[] {condition}, list(statements));
+            } else if (ast instanceof Ast.Statement.Return) {
+                return write(RETURN, new int[] {encode(((Ast.Statement.Return) ast).getValue())});
+            } else if (ast instanceof Ast.Expression.Literal) {
+                return write(LITERAL, new int[] {intern(((Ast.Expression.Literal) ast).getLiteral())});
+            } else if (ast instanceof Ast.Expression.Group) {
+                return write(GROUP, new int[] {encode(((Ast.Expression.Group) ast).getExpression())});
+            } else if (ast instanceof Ast.Expression.Binary) {
+                Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+                int left = encode(binary.getLeft());
+                int right = encode(binary.getRight());
+                return write(BINARY, new int[] {intern(binary.getOperator()), left, right});
+            } else if (ast instanceof Ast.Expression.Access) {
+                Ast.Expression.Access access = (Ast.Expression.Access) ast;
+                int offset = encodeOptional(access.getOffset());
+                return write(ACCESS, new int[] {intern(access.getName()), offset});
+            } else if (ast instanceof Ast.Expression.Function) {
+                Ast.Expression.Function function = (Ast.Expression.Function) ast;
+                int[] arguments = encodeAll(function.getArguments());
+                return write(CALL, new int[] {intern(function.getName())}, list(arguments));
+            } else if (ast instanceof Ast.Expression.PlcList) {
+                return write(LIST, list(encodeAll(((Ast.Expression.PlcList) ast).getValues())));
+            } else {
+                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            }
+        }
+
+        private int encodeOptional(Optional<? extends Ast> ast) {
+            return ast.isPresent() ? encode(ast.get()) : -1;
+        }
+
+        private int[] encodeAll(List<? extends Ast> asts) {
+            int[] offsets = new int[asts.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = encode(asts.get(i));
+            }
+            return offsets;
+        }
+
+        private int[] interned(List<String> values) {
+            int[] indices = new int[values.size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = intern(values.get(i));
+            }
+            return indices;
+        }
+
+        /**
+         * Returns the pool index of the value, or {@code -1} for {@code null}
+         * (a missing type name or a {@code NIL} literal).
+         */
+        private int intern(Object value) {
+            if (value == null) {
+                return -1;
+            }
+            return indices.computeIfAbsent(value, v -> {
+                pool.add(v);
+                return pool.size() - 1;
+            });
+        }
+
+        private static int[] list(int[] elements) {
+            int[] list = new int[elements.length + 1];
+            list[0] = elements.length;
+            System.arraycopy(elements, 0, list, 1, elements.length);
+            return list;
+        }
+
+        private int write(int tag, int[]... fields) {
+            int length = 1;
+            for (int[] field : fields) {
+                length += field.length;
+            }
+            if (size + length > nodes.length) {
+                nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, size + length));
+            }
+            int offset = size;
+            nodes[size++] = tag;
+            for (int[] field : fields) {
+                System.arraycopy(field, 0, nodes, size, field.length);
+                size += field.length;
+            }
+            return offset;
+        }
+
+    }
+
+}
@@ -0,0 +1,107 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * An on-disk cache of analyzed ASTs, keyed by a SHA-256 hash of the source
+ * text. Entries are written with {@link AstSerializer}; an entry that cannot
+ * be read (including one written by a different {@link
+ * AstSerializer#VERSION}) is treated as a miss and replaced.
+ *
+ * <pre>{@code
+ * AstCache cache = new AstCache(Paths.get(".plc-cache"));
+ * Ast.Source ast = cache.load(input, source -> {
+ *     Ast.Source parsed = new Parser(new Lexer(source).lex()).parseSource();
+ *     new Analyzer(scope).visit(parsed);
+ *     return parsed;
+ * });
+ * }</pre>
+ */
+public final class AstCache {
+
+    private final Path directory;
+
+    public AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cached AST for the source, or compiles it with the given
+     * function and caches the result.
+     */
+    public Ast.Source load(String source, Function<String, Ast.Source> compiler) {
+        Optional<Ast.Source> cached = lookup(source);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        Ast.Source ast = compiler.apply(source);
+        store(source, ast);
+        return ast;
+    }
+
+    /**
+     * Returns the cached AST for the source, if there is a readable entry.
+     */
+    public Optional<Ast.Source> lookup(String source) {
+        Path path = path(source);
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(AstSerializer.deserialize(Files.readAllBytes(path)));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes the AST for the source, replacing any existing entry. The entry
+     * is written to a temporary file first so readers never see a partial
+     * one.
+     */
+    public void store(String source, Ast.Source ast) {
+        Path path = path(source);
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, AstSerializer.serialize(ast));
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the file for the source's entry.
+     */
+    public Path path(String source) {
+        return directory.resolve(hash(source) + ".ast");
+    }
+
+    private static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is always available.", e);
+        }
+    }
+
+}
@@ -0,0 +1,706 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads and writes a compact binary form of an {@link Ast.Source}, including
+ * the types, variables and functions the {@link Analyzer} attached to it, so
+ * an analyzed program can be loaded without lexing, parsing or analyzing it
+ * again (see {@link AstCache}).
+ *
+ * The format starts with a magic number and {@link #VERSION}, followed by
+ * tables of strings, types, variables and functions, and then the tree with
+ * nodes in pre-order. Counts and indices are variable-length integers. Nodes
+ * that share a variable or function (such as a global and the accesses of it)
+ * share the same object again when read.
+ *
+ * Types are written by name and must be registered with {@link
+ * Environment#registerType(Environment.Type)} when reading. Variables and
+ * functions are restored with the same {@code NIL} placeholder values and
+ * implementations the analyzer gives them; the {@link Interpreter} looks up
+ * the real ones in its own scope.
+ */
+public final class AstSerializer {
+
+    /**
+     * Incremented whenever the format changes; data written with any other
+     * version is rejected.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x504C4341; // "PLCA"
+
+    private static final int SOURCE = 0;
+    private static final int GLOBAL = 1;
+    private static final int FUNCTION = 2;
+    private static final int EXPRESSION_STATEMENT = 3;
+    private static final int DECLARATION = 4;
+    private static final int ASSIGNMENT = 5;
+    private static final int IF = 6;
+    private static final int SWITCH = 7;
+    private static final int CASE = 8;
+    private static final int WHILE = 9;
+    private static final int RETURN = 10;
+    private static final int LITERAL = 11;
+    private static final int GROUP = 12;
+    private static final int BINARY = 13;
+    private static final int ACCESS = 14;
+    private static final int CALL = 15;
+    private static final int LIST = 16;
+
+    private static final int NIL_VALUE = 0;
+    private static final int BOOLEAN_VALUE = 1;
+    private static final int CHARACTER_VALUE = 2;
+    private static final int STRING_VALUE = 3;
+    private static final int INTEGER_VALUE = 4;
+    private static final int DECIMAL_VALUE = 5;
+
+    private AstSerializer() {}
+
+    public static byte[] serialize(Ast.Source source) {
+        Writer writer = new Writer();
+        writer.visit(source);
+        Output output = new Output();
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeVarInt(writer.strings.size());
+        for (String string : writer.strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            output.writeVarInt(bytes.length);
+            output.writeBytes(bytes, bytes.length);
+        }
+        output.writeVarInt(writer.types.size());
+        for (Environment.Type type : writer.types) {
+            output.writeVarInt(writer.string(type.getName()));
+        }
+        output.writeVarInt(writer.variables.size());
+        for (Environment.Variable variable : writer.variables) {
+            output.writeVarInt(writer.string(variable.getName()));
+            output.writeVarInt(writer.string(variable.getJvmName()));
+            output.writeVarInt(writer.index(variable.getType()));
+            output.writeByte(variable.getMutable() ? 1 : 0);
+        }
+        output.writeVarInt(writer.functions.size());
+        for (Environment.Function function : writer.functions) {
+            output.writeVarInt(writer.string(function.getName()));
+            output.writeVarInt(writer.string(function.getJvmName()));
+            output.writeVarInt(function.getParameterTypes().size());
+            for (Environment.Type type : function.getParameterTypes()) {
+                output.writeVarInt(writer.index(type));
+            }
+            output.writeVarInt(writer.index(function.getReturnType()));
+        }
+        output.writeBytes(writer.tree.bytes, writer.tree.size);
+        return output.toByteArray();
+    }
+
+    public static void serialize(Ast.Source source, OutputStream stream) throws IOException {
+        stream.write(serialize(source));
+    }
+
+    /**
+     * Reads a source written by {@link #serialize(Ast.Source)}, throwing an
+     * {@link IOException} if the data is truncated, malformed, or from a
+     * different {@link #VERSION}.
+     */
+    public static Ast.Source deserialize(byte[] bytes) throws IOException {
+        try {
+            return new Reader(bytes).read();
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed AST data: " + e.getMessage(), e);
+        }
+    }
+
+    public static Ast.Source deserialize(InputStream stream) throws IOException {
+        return deserialize(stream.readAllBytes());
+    }
+
+    /**
+     * Walks the tree, writing nodes into {@link #tree} and collecting the
+     * tables that are written before it.
+     */
+    private static final class Writer implements Ast.Visitor<Void> {
+
+        private final Output tree = new Output();
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndices = new HashMap<>();
+        private final List<Environment.Type> types = new ArrayList<>();
+        private final List<Environment.Variable> variables = new ArrayList<>();
+        private final List<Environment.Function> functions = new ArrayList<>();
+        private final Map<Object, Integer> indices = new IdentityHashMap<>();
+
+        private int string(String string) {
+            return stringIndices.computeIfAbsent(string, s -> {
+                strings.add(s);
+                return strings.size() - 1;
+            });
+        }
+
+        /**
+         * Writes a reference to a type, or {@code 0} if there is none.
+         */
+        private void type(Environment.Type type) {
+            tree.writeVarInt(type == null ? 0 : 1 + index(type));
+        }
+
+        private int index(Environment.Type type) {
+            if (indices.containsKey(type)) {
+                return indices.get(type);
+            }
+            try {
+                if (Environment.getType(type.getName()) != type) {
+                    throw new IllegalArgumentException();
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Type " + type.getName() + " is not registered and cannot be serialized.");
+            }
+            string(type.getName());
+            indices.put(type, types.size());
+            types.add(type);
+            return types.size() - 1;
+        }
+
+        private void variable(Environment.Variable variable) {
+            if (variable != null && !indices.containsKey(variable)) {
+                string(variable.getName());
+                string(variable.getJvmName());
+                index(variable.getType());
+                indices.put(variable, variables.size());
+                variables.add(variable);
+            }
+            tree.writeVarInt(variable == null ? 0 : 1 + indices.get(variable));
+        }
+
+        private void function(Environment.Function function) {
+            if (function != null && !indices.containsKey(function)) {
+                string(function.getName());
+                string(function.getJvmName());
+                function.getParameterTypes().forEach(this::index);
+                index(function.getReturnType());
+                indices.put(function, functions.size());
+                functions.add(function);
+            }
+            tree.writeVarInt(function == null ? 0 : 1 + indices.get(function));
+        }
+
+        private void name(String name) {
+            tree.writeVarInt(string(name));
+        }
+
+        private void optionalName(Optional<String> name) {
+            tree.writeVarInt(name.map(n -> 1 + string(n)).orElse(0));
+        }
+
+        private void optional(Optional<? extends Ast> ast) {
+            tree.writeByte(ast.isPresent() ? 1 : 0);
+            ast.ifPresent(this::visit);
+        }
+
+        private void all(List<? extends Ast> asts) {
+            tree.writeVarInt(asts.size());
+            asts.forEach(this::visit);
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            tree.writeByte(SOURCE);
+            all(ast.getGlobals());
+            all(ast.getFunctions());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Global ast) {
+            tree.writeByte(GLOBAL);
+            name(ast.getName());
+            name(ast.getTypeName());
+            tree.writeByte(ast.getMutable() ? 1 : 0);
+            optional(ast.getValue());
+            variable(bound(ast::getVariable));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Function ast) {
+            tree.writeByte(FUNCTION);
+            name(ast.getName());
+            tree.writeVarInt(ast.getParameters().size());
+            ast.getParameters().forEach(this::name);
+            tree.writeVarInt(ast.getParameterTypeNames().size());
+            ast.getParameterTypeNames().forEach(this::name);
+            optionalName(ast.getReturnTypeName());
+            all(ast.getStatements());
+            function(bound(ast::getFunction));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Expression ast) {
+            tree.writeByte(EXPRESSION_STATEMENT);
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Declaration ast) {
+            tree.writeByte(DECLARATION);
+            name(ast.getName());
+            optionalName(ast.getTypeName());
+            optional(ast.getValue());
+            variable(bound(ast::getVariable));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Assignment ast) {
+            tree.writeByte(ASSIGNMENT);
+            visit(ast.getReceiver());
+            return visit(ast.getValue());
+        }
+
+        @Override
+        public Void visit(Ast.Statement.If ast) {
+            tree.writeByte(IF);
+            visit(ast.getCondition());
+            all(ast.getThenStatements());
+            all(ast.getElseStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Switch ast) {
+            tree.writeByte(SWITCH);
+            visit(ast.getCondition());
+            all(ast.getCases());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Case ast) {
+            tree.writeByte(CASE);
+            optional(ast.getValue());
+            all(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.While ast) {
+            tree.writeByte(WHILE);
+            visit(ast.getCondition());
+            all(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Return ast) {
+            tree.writeByte(RETURN);
+            return visit(ast.getValue());
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Literal ast) {
+            tree.writeByte(LITERAL);
+            Object literal = ast.getLiteral();
+            if (literal == null) {
+                tree.writeByte(NIL_VALUE);
+            } else if (literal instanceof Boolean) {
+                tree.writeByte(BOOLEAN_VALUE);
+                tree.writeByte((Boolean) literal ? 1 : 0);
+            } else if (literal instanceof Character) {
+                tree.writeByte(CHARACTER_VALUE);
+                tree.writeVarInt((Character) literal);
+            } else if (literal instanceof String) {
+                tree.writeByte(STRING_VALUE);
+                name((String) literal);
+            } else if (literal instanceof BigInteger) {
+                tree.writeByte(INTEGER_VALUE);
+                tree.writeBigInteger((BigInteger) literal);
+            } else if (literal instanceof BigDecimal) {
+                tree.writeByte(DECIMAL_VALUE);
+                tree.writeBigInteger(((BigDecimal) literal).unscaledValue());
+                tree.writeInt(((BigDecimal) literal).scale());
+            } else {
+                throw new IllegalArgumentException("Unsupported literal " + literal.getClass().getName() + ".");
+            }
+            type(bound(ast::getType));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Group ast) {
+            tree.writeByte(GROUP);
+            visit(ast.getExpression());
+            type(bound(ast::getType));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Binary ast) {
+            tree.writeByte(BINARY);
+            name(ast.getOperator());
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            type(bound(ast::getType));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Access ast) {
+            tree.writeByte(ACCESS);
+            name(ast.getName());
+            optional(ast.getOffset());
+            variable(bound(ast::getVariable));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Function ast) {
+            tree.writeByte(CALL);
+            name(ast.getName());
+            all(ast.getArguments());
+            function(bound(ast::getFunction));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.PlcList ast) {
+            tree.writeByte(LIST);
+            all(ast.getValues());
+            type(bound(ast::getType));
+            return null;
+        }
+
+        /**
+         * Returns the analyzer binding, or {@code null} if the node has not
+         * been analyzed (the getters throw in that case).
+         */
+        private static <T> T bound(java.util.function.Supplier<T> getter) {
+            try {
+                return getter.get();
+            } catch (IllegalStateException e) {
+                return null;
+            }
+        }
+
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position = 0;
+        private String[] strings;
+        private Environment.Type[] types;
+        private Environment.Variable[] variables;
+        private Environment.Function[] functions;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private Ast.Source read() throws IOException {
+            if (readInt() != MAGIC) {
+                throw new IOException("Not serialized AST data.");
+            }
+            int version = readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported AST format version " + version + " (expected " + VERSION + ").");
+            }
+            strings = new String[readVarInt()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readVarInt();
+                strings[i] = new String(bytes, position, checkLength(length), StandardCharsets.UTF_8);
+                position += length;
+            }
+            types = new Environment.Type[readVarInt()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = Environment.getType(string());
+            }
+            variables = new Environment.Variable[readVarInt()];
+            for (int i = 0; i < variables.length; i++) {
+                String name = string();
+                String jvmName = string();
+                Environment.Type type = types[readVarInt()];
+                variables[i] = new Environment.Variable(name, jvmName, type, bytes[position++] != 0, Environment.NIL);
+            }
+            functions = new Environment.Function[readVarInt()];
+            for (int i = 0; i < functions.length; i++) {
+                String name = string();
+                String jvmName = string();
+                List<Environment.Type> parameterTypes = new ArrayList<>();
+                for (int n = readVarInt(); n > 0; n--) {
+                    parameterTypes.add(types[readVarInt()]);
+                }
+                functions[i] = new Environment.Function(name, jvmName, parameterTypes, types[readVarInt()], args -> Environment.NIL);
+            }
+            Ast.Source source = (Ast.Source) node();
+            if (position != bytes.length) {
+                throw new IOException("Trailing data after AST.");
+            }
+            return source;
+        }
+
+        private Ast node() throws IOException {
+            int tag = bytes[position++];
+            switch (tag) {
+                case SOURCE: {
+                    List<Ast.Global> globals = all();
+                    List<Ast.Function> functions = all();
+                    return new Ast.Source(globals, functions);
+                }
+                case GLOBAL: {
+                    String name = string();
+                    String typeName = string();
+                    boolean mutable = bytes[position++] != 0;
+                    Ast.Global ast = new Ast.Global(name, typeName, mutable, optional());
+                    ast.setVariable(variable());
+                    return ast;
+                }
+                case FUNCTION: {
+                    String name = string();
+                    List<String> parameters = strings();
+                    List<String> parameterTypeNames = strings();
+                    Optional<String> returnTypeName = optionalString();
+                    Ast.Function ast = new Ast.Function(name, parameters, parameterTypeNames, returnTypeName, all());
+                    ast.setFunction(function());
+                    return ast;
+                }
+                case EXPRESSION_STATEMENT:
+                    return new Ast.Statement.Expression(expression());
+                case DECLARATION: {
+                    String name = string();
+                    Optional<String> typeName = optionalString();
+                    Ast.Statement.Declaration ast = new Ast.Statement.Declaration(name, typeName, optional());
+                    ast.setVariable(variable());
+                    return ast;
+                }
+                case ASSIGNMENT: {
+                    Ast.Expression receiver = expression();
+                    return new Ast.Statement.Assignment(receiver, expression());
+                }
+                case IF: {
+                    Ast.Expression condition = expression();
+                    List<Ast.Statement> then = all();
+                    return new Ast.Statement.If(condition, then, all());
+                }
+                case SWITCH: {
+                    Ast.Expression condition = expression();
+                    return new Ast.Statement.Switch(condition, all());
+                }
+                case CASE: {
+                    Optional<Ast.Expression> value = optional();
+                    return new Ast.Statement.Case(value, all());
+                }
+                case WHILE: {
+                    Ast.Expression condition = expression();
+                    return new Ast.Statement.While(condition, all());
+                }
+                case RETURN:
+                    return new Ast.Statement.Return(expression());
+                case LITERAL: {
+                    Ast.Expression.Literal ast = new Ast.Expression.Literal(literal());
+                    ast.setType(type());
+                    return ast;
+                }
+                case GROUP: {
+                    Ast.Expression.Group ast = new Ast.Expression.Group(expression());
+                    ast.setType(type());
+                    return ast;
+                }
+                case BINARY: {
+                    String operator = string();
+                    Ast.Expression left = expression();
+                    Ast.Expression.Binary ast = new Ast.Expression.Binary(operator, left, expression());
+                    ast.setType(type());
+                    return ast;
+                }
+                case ACCESS: {
+                    String name = string();
+                    Ast.Expression.Access ast = new Ast.Expression.Access(optional(), name);
+                    ast.setVariable(variable());
+                    return ast;
+                }
+                case CALL: {
+                    String name = string();
+                    Ast.Expression.Function ast = new Ast.Expression.Function(name, all());
+                    ast.setFunction(function());
+                    return ast;
+                }
+                case LIST: {
+                    Ast.Expression.PlcList ast = new Ast.Expression.PlcList(all());
+                    ast.setType(type());
+                    return ast;
+                }
+                default:
+                    throw new IOException("Unknown node tag " + tag + ".");
+            }
+        }
+
+        private Object literal() throws IOException {
+            int kind = bytes[position++];
+            switch (kind) {
+                case NIL_VALUE:
+                    return null;
+                case BOOLEAN_VALUE:
+                    return bytes[position++] != 0;
+                case CHARACTER_VALUE:
+                    return (char) readVarInt();
+                case STRING_VALUE:
+                    return string();
+                case INTEGER_VALUE:
+                    return readBigInteger();
+                case DECIMAL_VALUE: {
+                    BigInteger unscaled = readBigInteger();
+                    return new BigDecimal(unscaled, readInt());
+                }
+                default:
+                    throw new IOException("Unknown literal kind " + kind + ".");
+            }
+        }
+
+        private Ast.Expression expression() throws IOException {
+            return (Ast.Expression) node();
+        }
+
+        private Optional<Ast.Expression> optional() throws IOException {
+            return bytes[position++] != 0 ? Optional.of(expression()) : Optional.empty();
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends Ast> List<T> all() throws IOException {
+            int size = readVarInt();
+            List<T> asts = new ArrayList<>(Math.min(size, bytes.length - position));
+            for (int i = 0; i < size; i++) {
+                asts.add((T) node());
+            }
+            return asts;
+        }
+
+        private String string() {
+            return strings[readVarInt()];
+        }
+
+        private Optional<String> optionalString() {
+            int index = readVarInt();
+            return index == 0 ? Optional.empty() : Optional.of(strings[index - 1]);
+        }
+
+        private List<String> strings() {
+            int size = readVarInt();
+            List<String> strings = new ArrayList<>(Math.min(size, bytes.length - position));
+            for (int i = 0; i < size; i++) {
+                strings.add(string());
+            }
+            return strings;
+        }
+
+        private Environment.Type type() {
+            int index = readVarInt();
+            return index == 0 ? null : types[index - 1];
+        }
+
+        private Environment.Variable variable() {
+            int index = readVarInt();
+            return index == 0 ? null : variables[index - 1];
+        }
+
+        private Environment.Function function() {
+            int index = readVarInt();
+            return index == 0 ? null : functions[index - 1];
+        }
+
+        private int readInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Variable-length integer is too long.");
+        }
+
+        private BigInteger readBigInteger() {
+            int length = checkLength(readVarInt());
+            BigInteger value = new BigInteger(bytes, position, length);
+            position += length;
+            return value;
+        }
+
+        private int checkLength(int length) {
+            if (length < 0 || length > bytes.length - position) {
+                throw new IndexOutOfBoundsException("Length " + length + " exceeds remaining data.");
+            }
+            return length;
+        }
+
+    }
+
+    /**
+     * A growable byte array. Unlike {@link java.io.DataOutputStream}, writes
+     * cannot fail, so the {@link Writer} can be an {@link Ast.Visitor}.
+     */
+    private static final class Output {
+
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        private void writeByte(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeInt(int value) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                writeByte(value >>> shift);
+            }
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        private void writeBigInteger(BigInteger value) {
+            byte[] bytes = value.toByteArray();
+            writeVarInt(bytes.length);
+            writeBytes(bytes, bytes.length);
+        }
+
+        private void writeBytes(byte[] source, int length) {
+            for (int i = 0; i < length; i++) {
+                writeByte(source[i]);
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+    }
+
+}
@@ -0,0 +1,243 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * A compiled function body for the {@link VirtualMachine}.
+ *
+ * Code is a flat {@code int[]} of fixed-width instructions, each an opcode
+ * followed by three operands ({@code a b c}), so instruction addresses are
+ * word offsets that are always multiples of {@link #WIDTH}. Operands name
+ * registers ({@code rN}), constant pool entries ({@code #N}), or jump
+ * targets. Parameters occupy the first registers, locals the registers above
+ * them, and temporaries the registers above those.
+ *
+ * Registers hold raw values (the {@link Environment.PlcObject#getValue()} of
+ * an object, with {@link Environment#NIL} represented by its value), so
+ * running bytecode only allocates the results of operations themselves.
+ */
+public final class Bytecode {
+
+    /**
+     * The number of words in an instruction.
+     */
+    public static final int WIDTH = 4;
+
+    /** {@code r[a] = constants[b]} */
+    public static final int CONST = 0;
+    /** {@code r[a] = r[b]} */
+    public static final int MOVE = 1;
+    /** {@code r[a] = global constants[b]} */
+    public static final int LOAD_GLOBAL = 2;
+    /** {@code global constants[b] = r[a]} */
+    public static final int STORE_GLOBAL = 3;
+    /** {@code r[a] = r[a][r[c]]}, where {@code constants[b]} names the list for errors */
+    public static final int GET_INDEX = 4;
+    /** {@code r[a][r[b]] = r[c]} */
+    public static final int SET_INDEX = 5;
+    /** {@code r[a] = [r[b], ..., r[b + c - 1]]} */
+    public static final int NEW_LIST = 6;
+    /** {@code r[a] = r[b] + r[c]}, which concatenates if either is a string */
+    public static final int ADD = 7;
+    /** {@code r[a] = r[b] - r[c]} */
+    public static final int SUB = 8;
+    /** {@code r[a] = r[b] * r[c]} */
+    public static final int MUL = 9;
+    /** {@code r[a] = r[b] / r[c]} */
+    public static final int DIV = 10;
+    /** {@code r[a] = r[b] ^ r[c]} */
+    public static final int POW = 11;
+    /** {@code r[a] = r[b] < r[c]} */
+    public static final int LT = 12;
+    /** {@code r[a] = r[b] > r[c]} */
+    public static final int GT = 13;
+    /** {@code r[a] = r[b] == r[c]} */
+    public static final int EQ = 14;
+    /** {@code r[a] = r[b] != r[c]} */
+    public static final int NE = 15;
+    /** {@code r[a] = r[b]}, which must be a boolean */
+    public static final int BOOL = 16;
+    /** {@code goto a} */
+    public static final int JUMP = 17;
+    /** {@code if (!r[a]) goto b}, where {@code r[a]} must be a boolean */
+    public static final int JUMP_FALSE = 18;
+    /** {@code if (r[a]) goto b}, where {@code r[a]} must be a boolean */
+    public static final int JUMP_TRUE = 19;
+    /** {@code if (!r[a].equals(r[b])) goto c}, for {@code SWITCH} cases */
+    public static final int JUMP_UNLESS_MATCH = 20;
+    /** {@code r[a] = constants[b](r[c], ..., r[c + arity - 1])} */
+    public static final int CALL = 21;
+    /** {@code return r[a]} */
+    public static final int RETURN = 22;
+
+    private static final String[] NAMES = {
+            "CONST", "MOVE", "LOAD_GLOBAL", "STORE_GLOBAL", "GET_INDEX", "SET_INDEX", "NEW_LIST",
+            "ADD", "SUB", "MUL", "DIV", "POW", "LT", "GT", "EQ", "NE", "BOOL",
+            "JUMP", "JUMP_FALSE", "JUMP_TRUE", "JUMP_UNLESS_MATCH", "CALL", "RETURN"
+    };
+
+    private final String name;
+    private final int arity;
+    private final int registers;
+    private final int[] code;
+    private final Object[] constants;
+
+    public Bytecode(String name, int arity, int registers, int[] code, Object[] constants) {
+        this.name = name;
+        this.arity = arity;
+        this.registers = registers;
+        this.code = code;
+        this.constants = constants;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * Returns the number of registers a call needs, including parameters.
+     */
+    public int getRegisters() {
+        return registers;
+    }
+
+    int[] getCode() {
+        return code;
+    }
+
+    Object[] getConstants() {
+        return constants;
+    }
+
+    /**
+     * Returns a listing of the code, one instruction per line, prefixed with
+     * its address. Constant operands are followed by the constant itself.
+     *
+     * <pre>
+     * twice/1 (registers: 2, constants: 1)
+     *    0  CONST          r1, #0 (2)
+     *    4  MUL            r1, r0, r1
+     *    8  RETURN         r1
+     * </pre>
+     */
+    public String disassemble() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(name).append('/').append(arity)
+                .append(" (registers: ").append(registers)
+                .append(", constants: ").append(constants.length).append(")\n");
+        for (int pc = 0; pc < code.length; pc += WIDTH) {
+            int a = code[pc + 1], b = code[pc + 2], c = code[pc + 3];
+            builder.append(String.format("%4d  %-14s ", pc, NAMES[code[pc]]));
+            switch (code[pc]) {
+                case CONST:
+                case LOAD_GLOBAL:
+                case STORE_GLOBAL:
+                    builder.append("r").append(a).append(", ").append(constant(b));
+                    break;
+                case GET_INDEX:
+                    builder.append("r").append(a).append(", ").append(constant(b)).append(", r").append(c);
+                    break;
+                case MOVE:
+                case BOOL:
+                    builder.append("r").append(a).append(", r").append(b);
+                    break;
+                case NEW_LIST:
+                    builder.append("r").append(a).append(", r").append(b).append(", ").append(c);
+                    break;
+                case JUMP:
+                    builder.append(a);
+                    break;
+                case JUMP_FALSE:
+                case JUMP_TRUE:
+                    builder.append("r").append(a).append(", ").append(b);
+                    break;
+                case JUMP_UNLESS_MATCH:
+                    builder.append("r").append(a).append(", r").append(b).append(", ").append(c);
+                    break;
+                case CALL:
+                    builder.append("r").append(a).append(", ").append(constant(b)).append(", r").append(c);
+                    break;
+                case RETURN:
+                    builder.append("r").append(a);
+                    break;
+                default:
+                    builder.append("r").append(a).append(", r").append(b).append(", r").append(c);
+                    break;
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private String constant(int index) {
+        Object constant = constants[index];
+        String text;
+        if (constant instanceof String) {
+            text = "\"" + constant + "\"";
+        } else if (constant instanceof Character) {
+            text = "'" + constant + "'";
+        } else {
+            text = String.valueOf(constant);
+        }
+        return "#" + index + " (" + text + ")";
+    }
+
+    @Override
+    public String toString() {
+        return "Bytecode{" +
+                "name='" + name + '\'' +
+                ", arity=" + arity +
+                ", registers=" + registers +
+                ", code=" + Arrays.toString(code) +
+                '}';
+    }
+
+    /**
+     * A reference to a global variable. The variable is looked up by name
+     * the first time it is used, and the result is kept.
+     */
+    static final class Global {
+
+        final String name;
+        Environment.Variable variable = null;
+
+        Global(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    /**
+     * A call target. The function is looked up by name and arity the first
+     * time it is called, and the result is kept; it is either another
+     * {@link Bytecode} run by the same machine or an {@link
+     * Environment.Function} such as {@code print}.
+     */
+    static final class Call {
+
+        final String name;
+        final int arity;
+        Object target = null;
+
+        Call(String name, int arity) {
+            this.name = name;
+            this.arity = arity;
+        }
+
+        @Override
+        public String toString() {
+            return name + "/" + arity;
+        }
+
+    }
+
+}
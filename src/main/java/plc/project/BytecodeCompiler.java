@@ -0,0 +1,379 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a function body into {@link Bytecode}. Each expression is
+ * compiled by the visitor, which returns the register holding its value;
+ * this is the local's own register for a local variable, and otherwise a
+ * fresh temporary.
+ *
+ * Names are resolved lexically, as the {@link Analyzer} does: parameters and
+ * {@code LET}s declared in an enclosing block of the function are locals in
+ * registers, and every other name is a global.
+ */
+public final class BytecodeCompiler implements Ast.Visitor<Integer> {
+
+    private int[] code = new int[16];
+    private int length = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> indices = new HashMap<>();
+    private final Map<String, Integer> globals = new HashMap<>();
+    private final Map<String, Integer> calls = new HashMap<>();
+    private final Deque<Map<String, Integer>> blocks = new ArrayDeque<>();
+    private int top = 0;
+    private int registers = 0;
+
+    private BytecodeCompiler() {}
+
+    /**
+     * Compiles the body of a function.
+     */
+    public static Bytecode compile(Ast.Function ast) {
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        Map<String, Integer> parameters = new HashMap<>();
+        for (String parameter : ast.getParameters()) {
+            parameters.put(parameter, compiler.allocate());
+        }
+        compiler.blocks.push(parameters);
+        compiler.block(ast.getStatements());
+        int nil = compiler.allocate();
+        compiler.emit(Bytecode.CONST, nil, compiler.constant(Environment.NIL.getValue()), 0);
+        compiler.emit(Bytecode.RETURN, nil, 0, 0);
+        return compiler.build(ast.getName(), ast.getParameters().size());
+    }
+
+    /**
+     * Compiles an expression into a function of no parameters that returns
+     * its value, such as the initializer of a global.
+     */
+    public static Bytecode compile(String name, Ast.Expression ast) {
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        compiler.blocks.push(new HashMap<>());
+        compiler.emit(Bytecode.RETURN, compiler.visit(ast), 0, 0);
+        return compiler.build(name, 0);
+    }
+
+    private Bytecode build(String name, int arity) {
+        return new Bytecode(name, arity, registers, Arrays.copyOf(code, length), constants.toArray());
+    }
+
+    private int allocate() {
+        registers = Math.max(registers, top + 1);
+        return top++;
+    }
+
+    private int emit(int opcode, int a, int b, int c) {
+        if (length + Bytecode.WIDTH > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        int address = length;
+        code[length++] = opcode;
+        code[length++] = a;
+        code[length++] = b;
+        code[length++] = c;
+        return address;
+    }
+
+    /**
+     * Sets operand {@code operand} (1 to 3) of the instruction at the given
+     * address to the address of the next instruction.
+     */
+    private void patch(int address, int operand) {
+        code[address + operand] = length;
+    }
+
+    private int constant(Object value) {
+        return indices.computeIfAbsent(value, this::add);
+    }
+
+    private int global(String name) {
+        return globals.computeIfAbsent(name, key -> add(new Bytecode.Global(name)));
+    }
+
+    private int call(String name, int arity) {
+        return calls.computeIfAbsent(name + "/" + arity, key -> add(new Bytecode.Call(name, arity)));
+    }
+
+    private int add(Object constant) {
+        constants.add(constant);
+        return constants.size() - 1;
+    }
+
+    private Integer local(String name) {
+        for (Map<String, Integer> block : blocks) {
+            Integer register = block.get(name);
+            if (register != null) {
+                return register;
+            }
+        }
+        return null;
+    }
+
+    private void block(List<Ast.Statement> statements) {
+        int mark = top;
+        blocks.push(new HashMap<>());
+        for (Ast.Statement statement : statements) {
+            visit(statement);
+        }
+        blocks.pop();
+        top = mark;
+    }
+
+    /**
+     * Compiles the expressions into consecutive registers, returning the
+     * first.
+     */
+    private int window(List<Ast.Expression> expressions) {
+        int base = top;
+        for (int i = 0; i < expressions.size(); i++) {
+            allocate();
+        }
+        for (int i = 0; i < expressions.size(); i++) {
+            int mark = top;
+            int register = visit(expressions.get(i));
+            if (register != base + i) {
+                emit(Bytecode.MOVE, base + i, register, 0);
+            }
+            top = mark;
+        }
+        return base;
+    }
+
+    @Override
+    public Integer visit(Ast.Source ast) {
+        throw new UnsupportedOperationException("Sources are run by the VirtualMachine, not compiled.");
+    }
+
+    @Override
+    public Integer visit(Ast.Global ast) {
+        throw new UnsupportedOperationException("Globals are run by the VirtualMachine, not compiled.");
+    }
+
+    @Override
+    public Integer visit(Ast.Function ast) {
+        throw new UnsupportedOperationException("Functions are compiled with BytecodeCompiler.compile.");
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Expression ast) {
+        int mark = top;
+        visit(ast.getExpression());
+        top = mark;
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Declaration ast) {
+        if (blocks.peek().containsKey(ast.getName())) {
+            throw new RuntimeException("The variable " + ast.getName() + " is already defined in this scope.");
+        }
+        int register = allocate();
+        if (ast.getValue().isPresent()) {
+            int value = visit(ast.getValue().get());
+            if (value != register) {
+                emit(Bytecode.MOVE, register, value, 0);
+            }
+        } else {
+            emit(Bytecode.CONST, register, constant(Environment.NIL.getValue()), 0);
+        }
+        top = register + 1;
+        blocks.peek().put(ast.getName(), register);
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Assignment ast) {
+        if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
+            throw new RuntimeException("Only variables or list elements can be assigned.");
+        }
+        Ast.Expression.Access access = (Ast.Expression.Access) ast.getReceiver();
+        Integer local = local(access.getName());
+        int mark = top;
+        if (access.getOffset().isPresent()) {
+            int list = local != null ? local : allocate();
+            if (local == null) {
+                emit(Bytecode.LOAD_GLOBAL, list, global(access.getName()), 0);
+            }
+            int offset = visit(access.getOffset().get());
+            emit(Bytecode.SET_INDEX, list, offset, visit(ast.getValue()));
+        } else if (local != null) {
+            int value = visit(ast.getValue());
+            if (value != local) {
+                emit(Bytecode.MOVE, local, value, 0);
+            }
+        } else {
+            emit(Bytecode.STORE_GLOBAL, visit(ast.getValue()), global(access.getName()), 0);
+        }
+        top = mark;
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.If ast) {
+        int mark = top;
+        int branch = emit(Bytecode.JUMP_FALSE, visit(ast.getCondition()), 0, 0);
+        top = mark;
+        block(ast.getThenStatements());
+        if (ast.getElseStatements().isEmpty()) {
+            patch(branch, 2);
+        } else {
+            int skip = emit(Bytecode.JUMP, 0, 0, 0);
+            patch(branch, 2);
+            block(ast.getElseStatements());
+            patch(skip, 1);
+        }
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Switch ast) {
+        int mark = top;
+        int condition = allocate();
+        int value = visit(ast.getCondition());
+        if (value != condition) {
+            emit(Bytecode.MOVE, condition, value, 0);
+        }
+        top = condition + 1;
+        List<Integer> exits = new ArrayList<>();
+        for (Ast.Statement.Case caseStatement : ast.getCases()) {
+            if (caseStatement.getValue().isPresent()) {
+                int branch = emit(Bytecode.JUMP_UNLESS_MATCH, condition, visit(caseStatement.getValue().get()), 0);
+                top = condition + 1;
+                block(caseStatement.getStatements());
+                exits.add(emit(Bytecode.JUMP, 0, 0, 0));
+                patch(branch, 3);
+            }
+        }
+        // as in the Interpreter, the first default case runs only if no other case matched
+        ast.getCases().stream()
+                .filter(caseStatement -> !caseStatement.getValue().isPresent())
+                .findFirst()
+                .ifPresent(this::visit);
+        for (int exit : exits) {
+            patch(exit, 1);
+        }
+        top = mark;
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Case ast) {
+        block(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.While ast) {
+        int mark = top;
+        int start = length;
+        int branch = emit(Bytecode.JUMP_FALSE, visit(ast.getCondition()), 0, 0);
+        top = mark;
+        block(ast.getStatements());
+        emit(Bytecode.JUMP, start, 0, 0);
+        patch(branch, 2);
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Statement.Return ast) {
+        int mark = top;
+        emit(Bytecode.RETURN, visit(ast.getValue()), 0, 0);
+        top = mark;
+        return null;
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.Literal ast) {
+        int register = allocate();
+        Object literal = ast.getLiteral() == null ? Environment.NIL.getValue() : ast.getLiteral();
+        emit(Bytecode.CONST, register, constant(literal), 0);
+        return register;
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.Group ast) {
+        return visit(ast.getExpression());
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.Binary ast) {
+        int register = allocate();
+        if (ast.getOperator().equals("&&") || ast.getOperator().equals("||")) {
+            int left = visit(ast.getLeft());
+            if (left != register) {
+                emit(Bytecode.MOVE, register, left, 0);
+            }
+            top = register + 1;
+            int opcode = ast.getOperator().equals("&&") ? Bytecode.JUMP_FALSE : Bytecode.JUMP_TRUE;
+            int branch = emit(opcode, register, 0, 0);
+            emit(Bytecode.BOOL, register, visit(ast.getRight()), 0);
+            patch(branch, 2);
+        } else {
+            int left = visit(ast.getLeft());
+            int right = visit(ast.getRight());
+            emit(opcode(ast.getOperator()), register, left, right);
+        }
+        top = register + 1;
+        return register;
+    }
+
+    private static int opcode(String operator) {
+        switch (operator) {
+            case "+": return Bytecode.ADD;
+            case "-": return Bytecode.SUB;
+            case "*": return Bytecode.MUL;
+            case "/": return Bytecode.DIV;
+            case "^": return Bytecode.POW;
+            case "<": return Bytecode.LT;
+            case ">": return Bytecode.GT;
+            case "==": return Bytecode.EQ;
+            case "!=": return Bytecode.NE;
+            default: throw new RuntimeException("Unsupported operator: " + operator);
+        }
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.Access ast) {
+        Integer local = local(ast.getName());
+        if (local != null && !ast.getOffset().isPresent()) {
+            return local;
+        }
+        int register = allocate();
+        if (local != null) {
+            emit(Bytecode.MOVE, register, local, 0);
+        } else {
+            emit(Bytecode.LOAD_GLOBAL, register, global(ast.getName()), 0);
+        }
+        if (ast.getOffset().isPresent()) {
+            emit(Bytecode.GET_INDEX, register, constant(ast.getName()), visit(ast.getOffset().get()));
+        }
+        top = register + 1;
+        return register;
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.Function ast) {
+        int register = allocate();
+        int base = window(ast.getArguments());
+        emit(Bytecode.CALL, register, call(ast.getName(), ast.getArguments().size()), base);
+        top = register + 1;
+        return register;
+    }
+
+    @Override
+    public Integer visit(Ast.Expression.PlcList ast) {
+        int register = allocate();
+        int base = window(ast.getValues());
+        emit(Bytecode.NEW_LIST, register, base, ast.getValues().size());
+        top = register + 1;
+        return register;
+    }
+
+}
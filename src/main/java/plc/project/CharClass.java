@@ -0,0 +1,68 @@
+package plc.project;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A single-character pattern used by the {@link Lexer}, compiled once from the
+ * same regex syntax accepted by {@link Lexer#peek(String...)}.
+ *
+ * Characters in the Latin-1 range are answered from a precomputed bitmap, so
+ * the common case is a couple of array reads with no allocation. Anything
+ * outside of that range falls back to the compiled regex, which keeps the
+ * semantics identical to {@code String.valueOf(c).matches(pattern)}.
+ */
+public final class CharClass {
+
+    private static final int TABLE_SIZE = 256;
+    private static final Map<String, CharClass> CACHE = new ConcurrentHashMap<>();
+
+    private final String pattern;
+    private final Pattern regex;
+    private final long[] table = new long[TABLE_SIZE / 64];
+
+    private CharClass(String pattern) {
+        this.pattern = pattern;
+        this.regex = Pattern.compile(pattern);
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            if (regex.matcher(String.valueOf((char) c)).matches()) {
+                table[c >>> 6] |= 1L << c;
+            }
+        }
+    }
+
+    /**
+     * Returns the compiled class for the given pattern, reusing a previously
+     * compiled instance when one exists.
+     */
+    public static CharClass of(String pattern) {
+        CharClass cached = CACHE.get(pattern);
+        if (cached == null) {
+            cached = CACHE.computeIfAbsent(pattern, CharClass::new);
+        }
+        return cached;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns true if the character matches this class.
+     */
+    public boolean matches(char c) {
+        if (c < TABLE_SIZE) {
+            return (table[c >>> 6] & (1L << c)) != 0;
+        }
+        return regex.matcher(String.valueOf(c)).matches();
+    }
+
+    @Override
+    public String toString() {
+        return "CharClass{" +
+                "pattern='" + pattern + '\'' +
+                '}';
+    }
+
+}
@@ -0,0 +1,418 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles a JVM class file for the {@link JvmCompiler}. It supports only
+ * what the compiler needs: static fields, static methods over object
+ * references, and the handful of instructions below.
+ *
+ * Classes are written as version 49 (Java 5), the last version that does not
+ * require {@code StackMapTable} frames, so branches need no frame
+ * computation. The JVM verifies them by type inference instead.
+ */
+final class ClassFile {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ANEWARRAY = 0xbd;
+    static final int CHECKCAST = 0xc0;
+    static final int WIDE = 0xc4;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final String name;
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolData = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<Code> methods = new ArrayList<>();
+
+    /**
+     * Creates a class with the given internal name, such as
+     * {@code plc/project/Generated}.
+     */
+    ClassFile(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void field(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        try {
+            data.writeShort(access);
+            data.writeShort(utf8(name));
+            data.writeShort(utf8(descriptor));
+            data.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * Adds a method and returns its code, which is written when the class is.
+     */
+    Code method(int access, String name, String descriptor) {
+        Code code = new Code(access, utf8(name), descriptor);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+        int codeName = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        try {
+            data.writeInt(0xCAFEBABE);
+            data.writeShort(0);
+            data.writeShort(49);
+            data.writeShort(poolCount);
+            pool.writeTo(data);
+            data.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            data.writeShort(thisClass);
+            data.writeShort(superClass);
+            data.writeShort(0);
+            data.writeShort(fields.size());
+            for (byte[] field : fields) {
+                data.write(field);
+            }
+            data.writeShort(methods.size());
+            for (Code code : methods) {
+                code.write(data, codeName);
+            }
+            data.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int entry(String key, int tag, Writer writer) {
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            poolData.writeByte(tag);
+            writer.write(poolData);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entries.put(key, poolCount);
+        if (poolCount == 0xFFFF) {
+            throw new RuntimeException("Too many constants in generated class " + name + ".");
+        }
+        return poolCount++;
+    }
+
+    private interface Writer {
+
+        void write(DataOutputStream data) throws IOException;
+
+    }
+
+    int utf8(String value) {
+        return entry("U" + value, CONSTANT_UTF8, data -> data.writeUTF(value));
+    }
+
+    int integer(int value) {
+        return entry("I" + value, CONSTANT_INTEGER, data -> data.writeInt(value));
+    }
+
+    int string(String value) {
+        int utf8 = utf8(value);
+        return entry("S" + value, CONSTANT_STRING, data -> data.writeShort(utf8));
+    }
+
+    int classRef(String name) {
+        int utf8 = utf8(name);
+        return entry("C" + name, CONSTANT_CLASS, data -> data.writeShort(utf8));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return entry("N" + name + ":" + descriptor, CONSTANT_NAME_AND_TYPE, data -> {
+            data.writeShort(nameIndex);
+            data.writeShort(descriptorIndex);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return entry("F" + owner + "." + name + ":" + descriptor, CONSTANT_FIELDREF, data -> {
+            data.writeShort(ownerIndex);
+            data.writeShort(nameAndType);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return entry("M" + owner + "." + name + ":" + descriptor, CONSTANT_METHODREF, data -> {
+            data.writeShort(ownerIndex);
+            data.writeShort(nameAndType);
+        });
+    }
+
+    /**
+     * A forward or backward branch target within a method.
+     */
+    static final class Label {
+
+        private int address = -1;
+        private int depth = -1;
+        private final List<Integer> branches = new ArrayList<>();
+
+    }
+
+    /**
+     * The code of a method. Each instruction adjusts the tracked operand
+     * stack depth, from which the maximum is computed.
+     */
+    final class Code {
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int depth = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+
+        private Code(int access, int name, String descriptor) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = utf8(descriptor);
+            this.maxLocals = arguments(descriptor);
+        }
+
+        private void adjust(int delta) {
+            depth += delta;
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        private void u1(int value) {
+            bytes.write(value);
+        }
+
+        private void u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+
+        /**
+         * Emits an instruction without operands.
+         */
+        void op(int opcode, int delta) {
+            u1(opcode);
+            adjust(delta);
+        }
+
+        void integer(int value) {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                constant(ClassFile.this.integer(value));
+                return;
+            }
+            adjust(1);
+        }
+
+        void string(String value) {
+            constant(ClassFile.this.string(value));
+        }
+
+        private void constant(int index) {
+            if (index <= 0xFF) {
+                u1(LDC);
+                u1(index);
+            } else {
+                u1(LDC_W);
+                u2(index);
+            }
+            adjust(1);
+        }
+
+        /**
+         * Emits {@code aload} or {@code astore}.
+         */
+        void local(int opcode, int slot) {
+            if (slot > 0xFF) {
+                u1(WIDE);
+                u1(opcode);
+                u2(slot);
+            } else {
+                u1(opcode);
+                u1(slot);
+            }
+            maxLocals = Math.max(maxLocals, slot + 1);
+            adjust(opcode == ALOAD ? 1 : -1);
+        }
+
+        /**
+         * Emits {@code getstatic} or {@code putstatic}.
+         */
+        void field(int opcode, String owner, String name, String descriptor) {
+            u1(opcode);
+            u2(fieldRef(owner, name, descriptor));
+            adjust(opcode == GETSTATIC ? 1 : -1);
+        }
+
+        /**
+         * Emits {@code invokestatic} or {@code invokevirtual}.
+         */
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            u1(opcode);
+            u2(methodRef(owner, name, descriptor));
+            int receiver = opcode == INVOKESTATIC ? 0 : 1;
+            adjust(-arguments(descriptor) - receiver + (descriptor.endsWith(")V") ? 0 : 1));
+        }
+
+        /**
+         * Emits {@code checkcast} or {@code anewarray}.
+         */
+        void type(int opcode, String type) {
+            u1(opcode);
+            u2(classRef(type));
+        }
+
+        Label label() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        /**
+         * Emits {@code goto}, {@code ifeq} or {@code ifne}.
+         */
+        void jump(int opcode, Label label) {
+            adjust(opcode == GOTO ? 0 : -1);
+            label.branches.add(bytes.size());
+            label.depth = depth;
+            u1(opcode);
+            u2(0);
+        }
+
+        /**
+         * Places the label at the next instruction. After an unconditional
+         * jump or return, the stack depth is the depth at the branches to it.
+         */
+        void mark(Label label) {
+            label.address = bytes.size();
+            if (label.depth >= 0) {
+                depth = label.depth;
+            }
+        }
+
+        /**
+         * Sets the stack depth for code after an unconditional jump or
+         * return that no branch targets.
+         */
+        void reset(int depth) {
+            this.depth = depth;
+        }
+
+        private void write(DataOutputStream data, int codeName) throws IOException {
+            byte[] code = bytes.toByteArray();
+            if (code.length > 0xFFFF) {
+                throw new RuntimeException("Generated method is too large.");
+            }
+            for (Label label : labels) {
+                for (int branch : label.branches) {
+                    int offset = label.address - branch;
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new RuntimeException("Generated method is too large.");
+                    }
+                    code[branch + 1] = (byte) (offset >>> 8);
+                    code[branch + 2] = (byte) offset;
+                }
+            }
+            data.writeShort(access);
+            data.writeShort(name);
+            data.writeShort(descriptor);
+            data.writeShort(1);
+            data.writeShort(codeName);
+            data.writeInt(12 + code.length);
+            data.writeShort(maxStack);
+            data.writeShort(maxLocals);
+            data.writeInt(code.length);
+            data.write(code);
+            data.writeShort(0);
+            data.writeShort(0);
+        }
+
+    }
+
+    /**
+     * Returns the number of arguments in a descriptor whose parameters are
+     * all references or {@code int}s.
+     */
+    private static int arguments(String descriptor) {
+        int count = 0;
+        for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+            char c = descriptor.charAt(i);
+            while (c == '[') {
+                c = descriptor.charAt(++i);
+            }
+            if (c == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,581 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compiles an AST into a tree of {@link Node}s for the {@link Interpreter}.
+ * Each node is specialized when it is compiled (one node class per operator,
+ * statement kind, and so on), so running a function body no longer goes
+ * through the visitor, the operator switch, or {@link java.util.Optional}s.
+ *
+ * The nodes behave exactly like the corresponding {@code Interpreter.visit}
+ * methods, including the errors they throw, so the interpreter can switch a
+ * function over at any point. Variables the {@link Resolver} assigned a slot
+ * are read from the interpreter's current frame; the rest are still looked up
+ * by name in its current scope, since unresolved functions see the scope of
+ * their caller.
+ *
+ * Arithmetic and comparisons the {@link Analyzer} typed as {@code Integer}
+ * also get an {@link IntegerNode} that runs on primitive {@code long}s, so
+ * only the final result is boxed. If an operand is not a {@code long} or the
+ * result overflows, the expression is evaluated again on {@link BigInteger}s;
+ * this is safe because such expressions only read variables. {@code Decimal}
+ * arithmetic has no such path, since {@code double} cannot reproduce the
+ * exact results and scales of {@link BigDecimal}.
+ */
+public final class Compiler implements Ast.Visitor<Compiler.Node> {
+
+    /**
+     * A compiled statement or expression. Statements return {@link
+     * Environment#NIL}.
+     */
+    @FunctionalInterface
+    public interface Node {
+
+        Environment.PlcObject execute();
+
+    }
+
+    private final Interpreter interpreter;
+
+    public Compiler(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * Compiles a list of statements into a single node that runs them in
+     * order.
+     */
+    public Node compile(List<Ast.Statement> statements) {
+        Node[] nodes = compileAll(statements);
+        if (nodes.length == 1) {
+            return nodes[0];
+        }
+        return () -> {
+            for (Node node : nodes) {
+                node.execute();
+                if (interpreter.isReturning()) {
+                    break;
+                }
+            }
+            return Environment.NIL;
+        };
+    }
+
+    private Node[] compileAll(List<? extends Ast> asts) {
+        Node[] nodes = new Node[asts.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = visit(asts.get(i));
+        }
+        return nodes;
+    }
+
+    @Override
+    public Node visit(Ast.Source ast) {
+        return () -> interpreter.visit(ast);
+    }
+
+    @Override
+    public Node visit(Ast.Global ast) {
+        return () -> interpreter.visit(ast);
+    }
+
+    @Override
+    public Node visit(Ast.Function ast) {
+        return () -> interpreter.visit(ast);
+    }
+
+    @Override
+    public Node visit(Ast.Statement.Expression ast) {
+        Node expression = visit(ast.getExpression());
+        return () -> {
+            expression.execute();
+            return Environment.NIL;
+        };
+    }
+
+    @Override
+    public Node visit(Ast.Statement.Declaration ast) {
+        String name = ast.getName();
+        int slot = ast.getSlot();
+        Node value = ast.getValue().map(this::visit).orElse(null);
+        if (slot >= 0) {
+            return () -> {
+                interpreter.getFrame()[slot] = value != null ? value.execute() : Environment.NIL;
+                return Environment.NIL;
+            };
+        }
+        return () -> {
+            Scope scope = interpreter.getScope();
+            scope.defineVariable(name, true, value != null ? value.execute() : Environment.NIL);
+            return Environment.NIL;
+        };
+    }
+
+    @Override
+    public Node visit(Ast.Statement.Assignment ast) {
+        if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
+            return () -> {
+                throw new RuntimeException("Only variables or list elements can be assigned.");
+            };
+        }
+        Ast.Expression.Access access = (Ast.Expression.Access) ast.getReceiver();
+        String name = access.getName();
+        int slot = access.getSlot();
+        Node value = visit(ast.getValue());
+        if (!access.getOffset().isPresent()) {
+            if (slot >= 0) {
+                return () -> {
+                    interpreter.getFrame()[slot] = value.execute();
+                    return Environment.NIL;
+                };
+            }
+            return () -> {
+                Environment.Variable variable = mutable(name);
+                variable.setValue(value.execute());
+                return Environment.NIL;
+            };
+        }
+        Node offset = visit(access.getOffset().get());
+        return () -> {
+            Environment.PlcObject listObject = slot >= 0 ? interpreter.getFrame()[slot] : mutable(name).getValue();
+            if (!(listObject.getValue() instanceof List)) {
+                throw new RuntimeException("Variable is not a list - offset is present.");
+            }
+            @SuppressWarnings("unchecked")
+            List<Object> list = (List<Object>) listObject.getValue();
+            int index = Interpreter.requireType(Number.class, offset.execute()).intValue();
+            if (index < 0 || index >= list.size()) {
+                throw new RuntimeException("List index out of bounds.");
+            }
+            list.set(index, value.execute().getValue());
+            return Environment.NIL;
+        };
+    }
+
+    private Environment.Variable mutable(String name) {
+        Environment.Variable variable = interpreter.getScope().lookupVariable(name);
+        if (!variable.getMutable()) {
+            throw new RuntimeException("Immutable variable cannot be assigned.");
+        }
+        return variable;
+    }
+
+    @Override
+    public Node visit(Ast.Statement.If ast) {
+        Node condition = visit(ast.getCondition());
+        Node then = compile(ast.getThenStatements());
+        Node otherwise = compile(ast.getElseStatements());
+        return () -> {
+            Object value = condition.execute().getValue();
+            if (!(value instanceof Boolean)) {
+                throw new RuntimeException("IF statement condition is not a Boolean. rawVAL = " + value);
+            }
+            if (interpreter.getFrame() != null) {
+                return ((Boolean) value ? then : otherwise).execute();
+            }
+            Scope scope = interpreter.getScope();
+            interpreter.setScope(new Scope(scope));
+            try {
+                return ((Boolean) value ? then : otherwise).execute();
+            } finally {
+                interpreter.setScope(scope);
+            }
+        };
+    }
+
+    @Override
+    public Node visit(Ast.Statement.Switch ast) {
+        Node condition = visit(ast.getCondition());
+        List<Node> values = new ArrayList<>();
+        List<Node> bodies = new ArrayList<>();
+        Node fallback = null;
+        for (Ast.Statement.Case caseStatement : ast.getCases()) {
+            if (caseStatement.getValue().isPresent()) {
+                values.add(visit(caseStatement.getValue().get()));
+                bodies.add(compile(caseStatement.getStatements()));
+            } else if (fallback == null) {
+                fallback = compile(caseStatement.getStatements());
+            }
+        }
+        Node[] caseValues = values.toArray(new Node[0]);
+        Node[] caseBodies = bodies.toArray(new Node[0]);
+        Node defaultBody = fallback;
+        return () -> {
+            Object value = condition.execute().getValue();
+            for (int i = 0; i < caseValues.length; i++) {
+                if (value.equals(caseValues[i].execute().getValue())) {
+                    return caseBodies[i].execute();
+                }
+            }
+            return defaultBody != null ? defaultBody.execute() : Environment.NIL;
+        };
+    }
+
+    @Override
+    public Node visit(Ast.Statement.Case ast) {
+        return compile(ast.getStatements());
+    }
+
+    @Override
+    public Node visit(Ast.Statement.While ast) {
+        Node condition = visit(ast.getCondition());
+        Node body = compile(ast.getStatements());
+        return () -> {
+            if (interpreter.getFrame() != null) {
+                while (Interpreter.requireType(Boolean.class, condition.execute())) {
+                    body.execute();
+                    if (interpreter.isReturning()) {
+                        break;
+                    }
+                }
+                return Environment.NIL;
+            }
+            while (Interpreter.requireType(Boolean.class, condition.execute())) {
+                Scope scope = interpreter.getScope();
+                interpreter.setScope(new Scope(scope));
+                try {
+                    body.execute();
+                    if (interpreter.isReturning()) {
+                        return Environment.NIL;
+                    }
+                } finally {
+                    interpreter.setScope(scope);
+                }
+            }
+            return Environment.NIL;
+        };
+    }
+
+    @Override
+    public Node visit(Ast.Statement.Return ast) {
+        Node value = visit(ast.getValue());
+        return () -> {
+            interpreter.setReturning(value.execute());
+            return Environment.NIL;
+        };
+    }
+
+    @Override
+    public Node visit(Ast.Expression.Literal ast) {
+        Object literal = ast.getLiteral();
+        if (literal == null) {
+            return () -> Environment.NIL;
+        }
+        return () -> Environment.create(literal);
+    }
+
+    @Override
+    public Node visit(Ast.Expression.Group ast) {
+        return visit(ast.getExpression());
+    }
+
+    @Override
+    public Node visit(Ast.Expression.Binary ast) {
+        Node generic = binary(ast);
+        IntegerNode integer = integer(ast);
+        if (integer != null) {
+            return () -> {
+                try {
+                    return Environment.create(BigInteger.valueOf(integer.execute()));
+                } catch (Overflow e) {
+                    return generic.execute();
+                }
+            };
+        }
+        if (ast.getOperator().equals("<") || ast.getOperator().equals(">")) {
+            IntegerNode left = integer(ast.getLeft());
+            IntegerNode right = integer(ast.getRight());
+            if (left != null && right != null) {
+                boolean less = ast.getOperator().equals("<");
+                return () -> {
+                    try {
+                        int comparison = Long.compare(left.execute(), right.execute());
+                        return Environment.create(less ? comparison < 0 : comparison > 0);
+                    } catch (Overflow e) {
+                        return generic.execute();
+                    }
+                };
+            }
+        }
+        return generic;
+    }
+
+    private Node binary(Ast.Expression.Binary ast) {
+        Node left = visit(ast.getLeft());
+        Node right = visit(ast.getRight());
+        switch (ast.getOperator()) {
+            case "&&":
+                return () -> Environment.create(Interpreter.requireType(Boolean.class, left.execute())
+                        && Interpreter.requireType(Boolean.class, right.execute()));
+            case "||":
+                return () -> Environment.create(Interpreter.requireType(Boolean.class, left.execute())
+                        || Interpreter.requireType(Boolean.class, right.execute()));
+            case "<":
+                return () -> Environment.create(compare(ast.getOperator(), left.execute(), right) < 0);
+            case ">":
+                return () -> Environment.create(compare(ast.getOperator(), left.execute(), right) > 0);
+            case "==":
+                return () -> Environment.create(Objects.equals(left.execute(), right.execute()));
+            case "!=":
+                return () -> Environment.create(!Objects.equals(left.execute(), right.execute()));
+            case "+":
+                return () -> add(left.execute(), right.execute());
+            case "-":
+                return () -> Environment.create(Interpreter.requireType(BigInteger.class, left.execute())
+                        .subtract(Interpreter.requireType(BigInteger.class, right.execute())));
+            case "*":
+                return () -> Environment.create(Interpreter.requireType(BigInteger.class, left.execute())
+                        .multiply(Interpreter.requireType(BigInteger.class, right.execute())));
+            case "/":
+                return () -> divide(left.execute(), right.execute());
+            case "^":
+                return () -> power(left.execute(), right.execute());
+            default:
+                return () -> {
+                    throw new RuntimeException("Unsupported operator: " + ast.getOperator());
+                };
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static int compare(String operator, Environment.PlcObject left, Node right) {
+        if (!(left.getValue() instanceof Comparable)) {
+            throw new RuntimeException("Unsupported operator: " + operator);
+        }
+        Environment.PlcObject value = right.execute();
+        Interpreter.requireType(left.getValue().getClass(), value);
+        return ((Comparable) left.getValue()).compareTo(value.getValue());
+    }
+
+    private static Environment.PlcObject add(Environment.PlcObject left, Environment.PlcObject right) {
+        if (left.getValue() instanceof String || right.getValue() instanceof String) {
+            return Environment.create(left.getValue().toString() + right.getValue().toString());
+        } else if (left.getValue() instanceof BigInteger && right.getValue() instanceof BigInteger) {
+            return Environment.create(((BigInteger) left.getValue()).add((BigInteger) right.getValue()));
+        } else if (left.getValue() instanceof BigDecimal && right.getValue() instanceof BigDecimal) {
+            return Environment.create(((BigDecimal) left.getValue()).add((BigDecimal) right.getValue()));
+        } else {
+            throw new RuntimeException("Invalid operands for + operator.");
+        }
+    }
+
+    private static Environment.PlcObject divide(Environment.PlcObject left, Environment.PlcObject right) {
+        if (left.getValue() instanceof BigInteger && right.getValue() instanceof BigInteger) {
+            if (right.getValue().equals(BigInteger.ZERO)) {
+                throw new RuntimeException("Division by zero.");
+            }
+            return Environment.create(((BigInteger) left.getValue()).divide((BigInteger) right.getValue()));
+        } else if (left.getValue() instanceof BigDecimal && right.getValue() instanceof BigDecimal) {
+            if (((BigDecimal) right.getValue()).compareTo(BigDecimal.ZERO) == 0) {
+                throw new RuntimeException("Division by zero.");
+            }
+            return Environment.create(((BigDecimal) left.getValue()).divide((BigDecimal) right.getValue(), 1, RoundingMode.HALF_EVEN));
+        }
+        // mixed operands fall through to exponentiation, which rejects them
+        return power(left, right);
+    }
+
+    private static Environment.PlcObject power(Environment.PlcObject left, Environment.PlcObject right) {
+        return Environment.create(Interpreter.requireType(BigInteger.class, left)
+                .pow(Interpreter.requireType(BigInteger.class, right).intValueExact()));
+    }
+
+    /**
+     * An {@code Integer} expression evaluated on {@code long}s. It throws
+     * {@link Overflow} when the result does not fit, or an operand is not an
+     * integer that fits.
+     */
+    @FunctionalInterface
+    private interface IntegerNode {
+
+        long execute();
+
+    }
+
+    /**
+     * Thrown by {@link IntegerNode}s to fall back to {@link BigInteger}s. It is
+     * preallocated and has no stack trace, so falling back is cheap.
+     */
+    private static final class Overflow extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final Overflow INSTANCE = new Overflow();
+
+        private Overflow() {
+            super(null, null, false, false);
+        }
+
+    }
+
+    /**
+     * Returns an {@link IntegerNode} for the expression, or null if it was not
+     * typed as {@code Integer} or has parts other than literals, variables and
+     * {@code + - * /}.
+     */
+    private IntegerNode integer(Ast.Expression ast) {
+        if (!Environment.Type.INTEGER.equals(type(ast))) {
+            return null;
+        } else if (ast instanceof Ast.Expression.Literal) {
+            BigInteger literal = (BigInteger) ((Ast.Expression.Literal) ast).getLiteral();
+            if (literal.bitLength() >= Long.SIZE) {
+                return null;
+            }
+            long value = literal.longValue();
+            return () -> value;
+        } else if (ast instanceof Ast.Expression.Group) {
+            return integer(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Access && !((Ast.Expression.Access) ast).getOffset().isPresent()) {
+            Node access = visit((Ast.Expression.Access) ast);
+            return () -> toLong(access.execute());
+        } else if (!(ast instanceof Ast.Expression.Binary)) {
+            return null;
+        }
+        Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+        IntegerNode left = integer(binary.getLeft());
+        IntegerNode right = integer(binary.getRight());
+        if (left == null || right == null) {
+            return null;
+        }
+        switch (binary.getOperator()) {
+            case "+":
+                return () -> {
+                    long a = left.execute(), b = right.execute(), result = a + b;
+                    if (((a ^ result) & (b ^ result)) < 0) {
+                        throw Overflow.INSTANCE;
+                    }
+                    return result;
+                };
+            case "-":
+                return () -> {
+                    long a = left.execute(), b = right.execute(), result = a - b;
+                    if (((a ^ b) & (a ^ result)) < 0) {
+                        throw Overflow.INSTANCE;
+                    }
+                    return result;
+                };
+            case "*":
+                return () -> {
+                    long a = left.execute(), b = right.execute();
+                    if (Math.multiplyHigh(a, b) != (a * b) >> 63) {
+                        throw Overflow.INSTANCE;
+                    }
+                    return a * b;
+                };
+            case "/":
+                // BigInteger division also truncates; division by zero is reported by the fallback
+                return () -> {
+                    long a = left.execute(), b = right.execute();
+                    if (b == 0 || (a == Long.MIN_VALUE && b == -1)) {
+                        throw Overflow.INSTANCE;
+                    }
+                    return a / b;
+                };
+            default:
+                return null;
+        }
+    }
+
+    private static long toLong(Environment.PlcObject object) {
+        Object value = object.getValue();
+        if (!(value instanceof BigInteger) || ((BigInteger) value).bitLength() >= Long.SIZE) {
+            throw Overflow.INSTANCE;
+        }
+        return ((BigInteger) value).longValue();
+    }
+
+    /**
+     * Returns the type the analyzer gave the expression, or null if it was not
+     * analyzed.
+     */
+    private static Environment.Type type(Ast.Expression ast) {
+        try {
+            return ast.getType();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Node visit(Ast.Expression.Access ast) {
+        String name = ast.getName();
+        int slot = ast.getSlot();
+        if (!ast.getOffset().isPresent()) {
+            if (slot >= 0) {
+                return () -> interpreter.getFrame()[slot];
+            }
+            return () -> interpreter.getScope().lookupVariable(name).getValue();
+        }
+        Node offset = visit(ast.getOffset().get());
+        return () -> {
+            Object value = (slot >= 0 ? interpreter.getFrame()[slot] : interpreter.getScope().lookupVariable(name).getValue()).getValue();
+            if (!(value instanceof List)) {
+                throw new RuntimeException("Variable '" + name + "' is not a list.");
+            }
+            List<?> list = (List<?>) value;
+            int index = Interpreter.requireType(BigInteger.class, offset.execute()).intValue();
+            if (index < 0 || index >= list.size()) {
+                throw new RuntimeException("List index out of bounds.");
+            }
+            Object item = list.get(index);
+            return item instanceof Environment.PlcObject ? (Environment.PlcObject) item : Environment.create(item);
+        };
+    }
+
+    @Override
+    public Node visit(Ast.Expression.Function ast) {
+        return new Call(interpreter, ast.getName(), compileAll(ast.getArguments()));
+    }
+
+    @Override
+    public Node visit(Ast.Expression.PlcList ast) {
+        Node[] values = compileAll(ast.getValues());
+        return () -> {
+            List<Object> list = new ArrayList<>(values.length);
+            for (Node value : values) {
+                list.add(value.execute().getValue());
+            }
+            return Environment.create(list);
+        };
+    }
+
+    /**
+     * A call site. The target is looked up on the first call and reused until
+     * the interpreter defines another function, which could shadow it.
+     */
+    private static final class Call implements Node {
+
+        private final Interpreter interpreter;
+        private final String name;
+        private final Node[] arguments;
+        private Environment.Function target = null;
+        private int version = -1;
+
+        private Call(Interpreter interpreter, String name, Node[] arguments) {
+            this.interpreter = interpreter;
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public Environment.PlcObject execute() {
+            List<Environment.PlcObject> values = new ArrayList<>(arguments.length);
+            for (Node argument : arguments) {
+                values.add(argument.execute());
+            }
+            if (version != interpreter.getFunctionVersion()) {
+                target = interpreter.getScope().lookupFunction(name, values.size());
+                version = interpreter.getFunctionVersion();
+            }
+            return target.invoke(values);
+        }
+
+    }
+
+}
@@ -1,15 +1,64 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 public final class Environment {
 
+    private static final int SMALL_INTEGERS = 1024;
+    private static final PlcObject[] INTEGERS = new PlcObject[2 * SMALL_INTEGERS];
+    private static final PlcObject TRUE = new PlcObject(Type.BOOLEAN, Type.BOOLEAN.scope, true);
+    private static final PlcObject FALSE = new PlcObject(Type.BOOLEAN, Type.BOOLEAN.scope, false);
+    private static final PlcObject EMPTY_STRING = new PlcObject(Type.STRING, Type.STRING.scope, "");
+
+    static {
+        for (int i = 0; i < INTEGERS.length; i++) {
+            INTEGERS[i] = new PlcObject(Type.INTEGER, Type.INTEGER.scope, BigInteger.valueOf(i - SMALL_INTEGERS));
+        }
+    }
+
+    /**
+     * Returns an object for the value with the canonical type of the value's
+     * class and that type's scope, so the only allocation is the object
+     * itself. Booleans, integers from -1024 to 1023 and the empty string
+     * are shared and not allocated at all; since {@link PlcObject#equals}
+     * compares values, sharing them makes no difference.
+     */
     public static PlcObject create(Object value) {
-        return new PlcObject(new Scope(null), value);
+        if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        } else if (value instanceof BigInteger) {
+            BigInteger integer = (BigInteger) value;
+            if (integer.bitLength() < 11) {
+                return INTEGERS[integer.intValue() + SMALL_INTEGERS];
+            }
+        } else if ("".equals(value)) {
+            return EMPTY_STRING;
+        }
+        Type type = typeOf(value);
+        return new PlcObject(type, type.scope, value);
+    }
+
+    private static Type typeOf(Object value) {
+        if (value instanceof BigInteger) {
+            return Type.INTEGER;
+        } else if (value instanceof BigDecimal) {
+            return Type.DECIMAL;
+        } else if (value instanceof String) {
+            return Type.STRING;
+        } else if (value instanceof Character) {
+            return Type.CHARACTER;
+        } else if (value instanceof Boolean) {
+            return Type.BOOLEAN;
+        } else {
+            return Type.ANY;
+        }
     }
 
     public static final PlcObject NIL = new PlcObject(Type.NIL, new Scope(null), new Object() {
@@ -113,6 +162,17 @@ public final class Environment {
             return value;
         }
 
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof PlcObject &&
+                    Objects.equals(value, ((PlcObject) obj).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(value);
+        }
+
         @Override
         public String toString() {
             return "Object{" +
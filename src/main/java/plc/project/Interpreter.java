@@ -7,12 +7,33 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Objects;
 
 
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
+    /**
+     * The number of calls after which a function is compiled.
+     */
+    static final int CALL_THRESHOLD = 100;
+
+    /**
+     * The number of loop iterations, in calls to a function so far, after
+     * which the function is compiled; a loop that runs this many iterations
+     * in one go is compiled on the spot.
+     */
+    static final int LOOP_THRESHOLD = 1000;
+
     private Scope scope = new Scope(null);
+    private final Compiler compiler = new Compiler(this);
+    private int functionVersion = 0;
+    private Tier tier = null;
+    private Environment.PlcObject[] frame = null;
+    private Environment.PlcObject returning = null;
+    private final Map<Environment.Function, Tier> tiers = new IdentityHashMap<>();
+    private final Map<Ast.Statement.While, Compiler.Node> loops = new IdentityHashMap<>();
 
     public Interpreter(Scope parent) {
         scope = new Scope(parent);
@@ -26,6 +47,26 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         return scope;
     }
 
+    void setScope(Scope scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Returns the locals of the current function if it was resolved by the
+     * {@link Resolver}, or null otherwise.
+     */
+    Environment.PlcObject[] getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns a counter that changes whenever a function is defined, so
+     * compiled call sites know when to look their target up again.
+     */
+    int getFunctionVersion() {
+        return functionVersion;
+    }
+
     @Override
     public Environment.PlcObject visit(Ast.Source ast) {
         // throw new UnsupportedOperationException(); //TODO done
@@ -75,27 +116,51 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 //            return Environment.NIL;
 //        });
 //        return Environment.NIL;
+        // bodies start out interpreted and are compiled once they are hot
+        Tier functionTier = new Tier(ast);
+        Scope definitionScope = scope;
+        functionVersion++;
         scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
-            Scope functionScope = new Scope(scope);
             Scope originalScope = scope;
-            scope = functionScope;
+            Environment.PlcObject[] originalFrame = frame;
+            Tier originalTier = tier;
+            tier = functionTier;
             try {
-                for (int i = 0; i < ast.getParameters().size(); i++) {
-                    scope.defineVariable(ast.getParameters().get(i), true, args.get(i));
-                }
-                for (Ast.Statement statement : ast.getStatements()) {
-                    visit(statement);
+                if (ast.getFrameSize() < 0) {
+                    frame = null;
+                    scope = new Scope(scope);
+                    for (int i = 0; i < ast.getParameters().size(); i++) {
+                        scope.defineVariable(ast.getParameters().get(i), true, args.get(i));
+                    }
+                } else {
+                    // resolved functions keep their locals in the frame and see only the globals
+                    frame = new Environment.PlcObject[ast.getFrameSize()];
+                    scope = definitionScope;
+                    for (int i = 0; i < args.size(); i++) {
+                        frame[i] = args.get(i);
+                    }
                 }
-            } catch (Return returnValue) {
-                return returnValue.value;
+                functionTier.execute();
+                return returning != null ? returning : Environment.NIL;
             } finally {
                 scope = originalScope;
+                frame = originalFrame;
+                tier = originalTier;
+                returning = null;
             }
-            return Environment.NIL;
         });
+        tiers.put(scope.lookupFunction(ast.getName(), ast.getParameters().size()), functionTier);
         return Environment.NIL;
     }
 
+    /**
+     * Returns true if the function has been compiled.
+     */
+    boolean isCompiled(String name, int arity) {
+        Environment.Function function = scope.lookupFunction(name, arity);
+        return tiers.containsKey(function) && tiers.get(function).body != null;
+    }
+
     @Override
     public Environment.PlcObject visit(Ast.Statement.Expression ast) {
         //TODO done
@@ -106,7 +171,10 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Statement.Declaration ast) {
         //TODO done (in lecture)
-        if(ast.getValue().isPresent()) {
+        if (ast.getSlot() >= 0) {
+            frame[ast.getSlot()] = ast.getValue().isPresent() ? visit(ast.getValue().get()) : Environment.NIL;
+        }
+        else if(ast.getValue().isPresent()) {
             scope.defineVariable(ast.getName(), true, visit(ast.getValue().get()));
         }
         else{
@@ -122,12 +190,13 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             throw new RuntimeException("Only variables or list elements can be assigned.");
         }
         Ast.Expression.Access access = (Ast.Expression.Access) receiverExpression;
-        Environment.Variable variable = scope.lookupVariable(access.getName());
-        if (!variable.getMutable()) {
+        // locals in a frame are always mutable
+        Environment.Variable variable = access.getSlot() < 0 ? scope.lookupVariable(access.getName()) : null;
+        if (variable != null && !variable.getMutable()) {
             throw new RuntimeException("Immutable variable cannot be assigned.");
         }
         if (access.getOffset().isPresent()) {
-            Environment.PlcObject listObject = variable.getValue();
+            Environment.PlcObject listObject = variable != null ? variable.getValue() : frame[access.getSlot()];
             if (!(listObject.getValue() instanceof List)) {
                 throw new RuntimeException("Variable is not a list - offset is present.");
             }
@@ -138,8 +207,10 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             }
             Object newValue = visit(ast.getValue()).getValue();
             list.set(index, newValue);
-        } else {
+        } else if (variable != null) {
             variable.setValue(visit(ast.getValue()));
+        } else {
+            frame[access.getSlot()] = visit(ast.getValue());
         }
         return Environment.NIL;
     }
@@ -155,19 +226,29 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         } else {
             throw new RuntimeException("IF statement condition is not a Boolean. rawVAL = " + rawValue);
         }
-        scope = new Scope(scope);
+        // resolved functions keep their locals in the frame, so their blocks need no scope
+        Scope originalScope = scope;
+        if (frame == null) {
+            scope = new Scope(scope);
+        }
         try {
             if (conditionResult) {
                 for (Ast.Statement stmt : ast.getThenStatements()) {
                     visit(stmt);
+                    if (returning != null) {
+                        break;
+                    }
                 }
             } else {
                 for (Ast.Statement stmt : ast.getElseStatements()) {
                     visit(stmt);
+                    if (returning != null) {
+                        break;
+                    }
                 }
             }
         } finally {
-            scope = scope.getParent();
+            scope = originalScope;
         }
         return Environment.NIL;
     }
@@ -183,6 +264,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                     matchFound = true;
                     for (Ast.Statement statement : caseStmt.getStatements()) {
                         visit(statement);
+                        if (returning != null) {
+                            break;
+                        }
                     }
                     break;///matched a case
                 }
@@ -193,6 +277,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 if (!caseStmt.getValue().isPresent()) {  //default case handling
                     for (Ast.Statement statement : caseStmt.getStatements()) {
                         visit(statement);
+                        if (returning != null) {
+                            break;
+                        }
                     }
                     break;
                 }
@@ -206,6 +293,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         //throw new UnsupportedOperationException(); //TODO done
         for (Ast.Statement stmt : ast.getStatements()) {
             visit(stmt);
+            if (returning != null) {
+                break;
+            }
         }
         return Environment.NIL;
     }
@@ -213,14 +303,28 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Statement.While ast) {
         //TODO done (in lecture)
+        int iterations = 0;
         while (requireType(Boolean.class, visit(ast.getCondition()))) {
+            Scope originalScope = scope;
             try {
-                scope = new Scope(scope);
+                if (frame == null) {
+                    scope = new Scope(scope);
+                }
                 for (Ast.Statement stmt : ast.getStatements()) {
                     visit(stmt);
+                    if (returning != null) {
+                        return Environment.NIL;
+                    }
                 }
             } finally {
-                scope = scope.getParent();
+                scope = originalScope;
+            }
+            if (tier != null) {
+                tier.iterations++;
+            }
+            if (++iterations == LOOP_THRESHOLD) {
+                // the compiled loop checks the condition again, so it picks up where this one left off
+                return loops.computeIfAbsent(ast, compiler::visit).execute();
             }
         }
         return Environment.NIL;
@@ -230,7 +334,24 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Statement.Return ast) {
         //TODO done
         Environment.PlcObject value = visit(ast.getValue());
-        throw new Return(value);
+        setReturning(value);
+        return Environment.NIL;
+    }
+
+    /**
+     * Starts returning the value from the current function. The statements
+     * enclosing the {@code RETURN} see {@link #isReturning()} and stop, and
+     * the function returns the value once they have.
+     */
+    void setReturning(Environment.PlcObject value) {
+        if (tier == null) {
+            throw new RuntimeException("RETURN statement outside of a function.");
+        }
+        returning = value;
+    }
+
+    boolean isReturning() {
+        return returning != null;
     }
 
     @Override
@@ -255,18 +376,13 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             case "||":
                 return Environment.create(requireType(Boolean.class, visit(ast.getLeft())) || requireType(Boolean.class, visit(ast.getRight())));
             case "<": ////
-                if(visit(ast.getLeft()).getValue() instanceof Comparable) {
-                    Environment.PlcObject right = visit(ast.getRight());
-                    if(requireType(visit(ast.getLeft()).getValue().getClass(), right) != null) {
-                        return Environment.create(((Comparable) visit(ast.getLeft()).getValue()).compareTo(right.getValue()) < 0);
-                    }
-                }
-                break;
             case ">": ///
-                if(visit(ast.getLeft()).getValue() instanceof Comparable) {
+                Environment.PlcObject leftComp = visit(ast.getLeft());
+                if(leftComp.getValue() instanceof Comparable) {
                     Environment.PlcObject right = visit(ast.getRight());
-                    if(requireType(visit(ast.getLeft()).getValue().getClass(), right) != null) {
-                        return Environment.create(((Comparable) visit(ast.getLeft()).getValue()).compareTo(right.getValue()) > 0);
+                    if(requireType(leftComp.getValue().getClass(), right) != null) {
+                        int comparison = ((Comparable) leftComp.getValue()).compareTo(right.getValue());
+                        return Environment.create(ast.getOperator().equals("<") ? comparison < 0 : comparison > 0);
                     }
                 }
                 break;
@@ -325,9 +441,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Access ast) {
-        Environment.Variable variable = scope.lookupVariable(ast.getName());
+        Environment.PlcObject object = ast.getSlot() >= 0 ? frame[ast.getSlot()] : scope.lookupVariable(ast.getName()).getValue();
         if (ast.getOffset().isPresent()) {
-            Object value = variable.getValue().getValue();  //get raw value from the variable
+            Object value = object.getValue();  //get raw value from the variable
             if (!(value instanceof List)) {
                 throw new RuntimeException("Variable '" + ast.getName() + "' is not a list.");
             }
@@ -345,23 +461,19 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 return Environment.create(item);  //wrap the item in a plcobject if it hasnt been alr
             }
         } else {
-            return variable.getValue();
+            return object;
         }
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Function ast) {
         //throw new UnsupportedOperationException(); //TODO done
-        try {
-            scope = new Scope(scope);
-            List<Environment.PlcObject> arg = new ArrayList<>();
-            for (Ast.Expression ar : ast.getArguments()) {
-                arg.add(visit(ar));
-            }
-            return scope.lookupFunction(ast.getName(), arg.size()).invoke(arg);
-        } finally {
-            scope = scope.getParent();
+        // arguments cannot declare anything, so they are evaluated in the current scope
+        List<Environment.PlcObject> arg = new ArrayList<>();
+        for (Ast.Expression ar : ast.getArguments()) {
+            arg.add(visit(ar));
         }
+        return scope.lookupFunction(ast.getName(), arg.size()).invoke(arg);
     }
 
     @Override
@@ -376,7 +488,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     /**
      * Helper function to ensure an object is of the appropriate type.
      */
-    private static <T> T requireType(Class<T> type, Environment.PlcObject object) {
+    static <T> T requireType(Class<T> type, Environment.PlcObject object) {
         if (type.isInstance(object.getValue())) {
             return type.cast(object.getValue());
         } else {
@@ -385,14 +497,37 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     }
 
     /**
-     * Exception class for returning values.
+     * The execution state of a function. Its body is walked by the visitor
+     * until it has been called {@link #CALL_THRESHOLD} times or run {@link
+     * #LOOP_THRESHOLD} loop iterations, and is run by its compiled {@link
+     * Compiler.Node} from then on. Both tiers behave the same, so callers
+     * cannot tell the difference.
      */
-    private static class Return extends RuntimeException {
+    private final class Tier {
+
+        private final Ast.Function ast;
+        private int calls = 0;
+        private int iterations = 0;
+        private Compiler.Node body = null;
 
-        private final Environment.PlcObject value;
+        private Tier(Ast.Function ast) {
+            this.ast = ast;
+        }
 
-        private Return(Environment.PlcObject value) {
-            this.value = value;
+        private void execute() {
+            if (body == null && (++calls >= CALL_THRESHOLD || iterations >= LOOP_THRESHOLD)) {
+                body = compiler.compile(ast.getStatements());
+            }
+            if (body != null) {
+                body.execute();
+            } else {
+                for (Ast.Statement statement : ast.getStatements()) {
+                    visit(statement);
+                    if (returning != null) {
+                        break;
+                    }
+                }
+            }
         }
 
     }
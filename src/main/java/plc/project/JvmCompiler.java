@@ -0,0 +1,567 @@
+package plc.project;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles functions straight to JVM classes and loads them in-process, so
+ * they are run (and JIT compiled) by the JVM like any other code. Unlike the
+ * {@link Generator}, no Java source or {@code javac} is involved.
+ *
+ * Each function becomes a static method taking and returning raw values (see
+ * {@link Operators}), with its parameters and {@code LET}s in local variable
+ * slots. Calls between functions compiled together are plain {@code
+ * invokestatic}s; globals and other functions, such as {@code print}, are
+ * reached through {@link Site}s. Like the {@link VirtualMachine}, names are
+ * resolved lexically, so programs behave as they do in the {@link
+ * Interpreter} on trees resolved by the {@link Resolver}. On unresolved
+ * trees the interpreter scopes names dynamically, and a function sees a
+ * local of its caller that shadows a global where compiled code sees the
+ * global.
+ */
+public final class JvmCompiler {
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String OPERATORS = "plc/project/Operators";
+    private static final String SITE = "plc/project/JvmCompiler$Site";
+    private static final String CONSTANTS = "$constants";
+    private static final String BINARY = "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;";
+    private static final AtomicInteger CLASSES = new AtomicInteger();
+
+    private final Scope scope;
+
+    public JvmCompiler(Scope parent) {
+        scope = new Scope(parent);
+        scope.defineFunction("print", 1, args -> {
+            System.out.println(args.get(0).getValue());
+            return Environment.NIL;
+        });
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Compiles the source into a single class, defines its globals and
+     * functions, then calls {@code main/0} and returns its result.
+     */
+    public Environment.PlcObject execute(Ast.Source ast) {
+        Class<?> type = compile(ast.getGlobals(), ast.getFunctions());
+        for (int i = 0; i < ast.getGlobals().size(); i++) {
+            Ast.Global global = ast.getGlobals().get(i);
+            Object value = global.getValue().isPresent() ? invoke(handle(type, "global$" + i, 0), new Object[0]) : Operators.NIL;
+            scope.defineVariable(global.getName(), true, Operators.wrap(value));
+        }
+        for (Ast.Function function : ast.getFunctions()) {
+            define(function, handle(type, function.getName(), function.getParameters().size()));
+        }
+        Environment.Function main;
+        try {
+            main = scope.lookupFunction("main", 0);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Main function not found in source.", e);
+        }
+        return main.invoke(new ArrayList<>());
+    }
+
+    /**
+     * Compiles the function into a class of its own and defines it in the
+     * scope.
+     */
+    public Environment.Function define(Ast.Function ast) {
+        Class<?> type = compile(Collections.emptyList(), Collections.singletonList(ast));
+        return define(ast, handle(type, ast.getName(), ast.getParameters().size()));
+    }
+
+    private Environment.Function define(Ast.Function ast, MethodHandle handle) {
+        int arity = ast.getParameters().size();
+        scope.defineFunction(ast.getName(), arity, args -> {
+            Object[] arguments = new Object[arity];
+            for (int i = 0; i < arity; i++) {
+                arguments[i] = args.get(i).getValue();
+            }
+            return Operators.wrap(invoke(handle, arguments));
+        });
+        return scope.lookupFunction(ast.getName(), arity);
+    }
+
+    private static String descriptor(int arity) {
+        return MethodType.genericMethodType(arity).toMethodDescriptorString();
+    }
+
+    private static MethodHandle handle(Class<?> type, String name, int arity) {
+        try {
+            return MethodHandles.publicLookup()
+                    .findStatic(type, name, MethodType.genericMethodType(arity))
+                    .asSpreader(Object[].class, arity);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError("Generated method " + name + "/" + arity + " is missing.", e);
+        }
+    }
+
+    private static Object invoke(MethodHandle handle, Object[] arguments) {
+        try {
+            return (Object) handle.invokeExact(arguments);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Generates and loads a class with a method for each function, named
+     * after it, and a method {@code global$i} for the initializer of each
+     * global.
+     */
+    private Class<?> compile(List<Ast.Global> globals, List<Ast.Function> functions) {
+        Unit unit = new Unit(new ClassFile("plc/project/Generated$" + CLASSES.incrementAndGet()));
+        ClassFile file = unit.file;
+        file.field(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, CONSTANTS, "[Ljava/lang/Object;");
+        for (int i = 0; i < globals.size(); i++) {
+            if (globals.get(i).getValue().isPresent()) {
+                // functions are not defined yet when globals are initialized
+                Emitter emitter = new Emitter(unit, "global$" + i, 0);
+                emitter.visit(globals.get(i).getValue().get());
+                emitter.code.op(ClassFile.ARETURN, -1);
+            }
+        }
+        for (Ast.Function function : functions) {
+            unit.functions.add(function.getName() + "/" + function.getParameters().size());
+        }
+        for (Ast.Function function : functions) {
+            Emitter emitter = new Emitter(unit, function.getName(), function.getParameters().size());
+            for (int i = 0; i < function.getParameters().size(); i++) {
+                emitter.blocks.peek().put(function.getParameters().get(i), i);
+            }
+            if (emitter.block(function.getStatements())) {
+                emitter.constant(Operators.NIL);
+                emitter.code.op(ClassFile.ARETURN, -1);
+            }
+        }
+        byte[] bytes = file.toByteArray();
+        try {
+            Class<?> type = new Loader(JvmCompiler.class.getClassLoader()).define(file.getName().replace('/', '.'), bytes);
+            type.getField(CONSTANTS).set(null, unit.constants.toArray());
+            return type;
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError("Generated class " + file.getName() + " is malformed.", e);
+        }
+    }
+
+    /**
+     * The state shared by the methods of one generated class.
+     */
+    private static final class Unit {
+
+        private final ClassFile file;
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> indices = new HashMap<>();
+        private final Map<String, Integer> sites = new HashMap<>();
+        private final Set<String> functions = new HashSet<>();
+
+        private Unit(ClassFile file) {
+            this.file = file;
+        }
+
+        private int add(Object constant) {
+            constants.add(constant);
+            return constants.size() - 1;
+        }
+
+    }
+
+    /**
+     * Loads one generated class. Each class gets its own loader so it can be
+     * unloaded once it is no longer used.
+     */
+    private static final class Loader extends ClassLoader {
+
+        private Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+
+    }
+
+    /**
+     * A global variable or function reached by name from generated code. It
+     * is looked up the first time it is used, and the result is kept.
+     *
+     * This class and its methods are public so generated classes can call
+     * them.
+     */
+    public static final class Site {
+
+        private final Scope scope;
+        private final String name;
+        private final int arity;
+        private Environment.Variable variable = null;
+        private Environment.Function function = null;
+
+        private Site(Scope scope, String name, int arity) {
+            this.scope = scope;
+            this.name = name;
+            this.arity = arity;
+        }
+
+        private Environment.Variable variable() {
+            if (variable == null) {
+                variable = scope.lookupVariable(name);
+            }
+            return variable;
+        }
+
+        public Object load() {
+            return variable().getValue().getValue();
+        }
+
+        public void store(Object value) {
+            if (!variable().getMutable()) {
+                throw new RuntimeException("Immutable variable cannot be assigned.");
+            }
+            variable.setValue(Operators.wrap(value));
+        }
+
+        public Object call(Object[] arguments) {
+            if (function == null) {
+                function = scope.lookupFunction(name, arity);
+            }
+            List<Environment.PlcObject> values = new ArrayList<>(arguments.length);
+            for (Object argument : arguments) {
+                values.add(Operators.wrap(argument));
+            }
+            return function.invoke(values).getValue();
+        }
+
+        @Override
+        public String toString() {
+            return arity < 0 ? name : name + "/" + arity;
+        }
+
+    }
+
+    /**
+     * Emits the code of one method, leaving each expression's value on the
+     * operand stack.
+     */
+    private final class Emitter implements Ast.Visitor<Void> {
+
+        private final Unit unit;
+        private final ClassFile.Code code;
+        private final Deque<Map<String, Integer>> blocks = new ArrayDeque<>();
+        private int slots;
+
+        private Emitter(Unit unit, String name, int arity) {
+            this.unit = unit;
+            this.code = unit.file.method(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, name, descriptor(arity));
+            this.slots = arity;
+            blocks.push(new HashMap<>());
+        }
+
+        private void constant(Object value) {
+            pool(unit.indices.computeIfAbsent(value, unit::add));
+        }
+
+        private void site(String name, int arity) {
+            String key = arity < 0 ? name : name + "/" + arity;
+            pool(unit.sites.computeIfAbsent(key, k -> unit.add(new Site(scope, name, arity))));
+            code.type(ClassFile.CHECKCAST, SITE);
+        }
+
+        private void pool(int index) {
+            code.field(ClassFile.GETSTATIC, unit.file.getName(), CONSTANTS, "[Ljava/lang/Object;");
+            code.integer(index);
+            code.op(ClassFile.AALOAD, -1);
+        }
+
+        private void operator(String name, String descriptor) {
+            code.invoke(ClassFile.INVOKESTATIC, OPERATORS, name, descriptor);
+        }
+
+        private Integer slot(String name) {
+            for (Map<String, Integer> block : blocks) {
+                Integer slot = block.get(name);
+                if (slot != null) {
+                    return slot;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Emits the statements in a new block, stopping after a {@code
+         * RETURN} since nothing after it can run. Returns true if the end of
+         * the block can be reached.
+         */
+        private boolean block(List<Ast.Statement> statements) {
+            int mark = slots;
+            blocks.push(new HashMap<>());
+            boolean reachable = true;
+            for (Ast.Statement statement : statements) {
+                visit(statement);
+                if (statement instanceof Ast.Statement.Return) {
+                    reachable = false;
+                    break;
+                }
+            }
+            blocks.pop();
+            slots = mark;
+            return reachable;
+        }
+
+        /**
+         * Pushes the expressions as a new {@code Object[]}.
+         */
+        private void array(List<Ast.Expression> expressions) {
+            code.integer(expressions.size());
+            code.type(ClassFile.ANEWARRAY, OBJECT);
+            for (int i = 0; i < expressions.size(); i++) {
+                code.op(ClassFile.DUP, 1);
+                code.integer(i);
+                visit(expressions.get(i));
+                code.op(ClassFile.AASTORE, -3);
+            }
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            throw new UnsupportedOperationException("Sources are compiled by JvmCompiler.execute.");
+        }
+
+        @Override
+        public Void visit(Ast.Global ast) {
+            throw new UnsupportedOperationException("Globals are compiled by JvmCompiler.execute.");
+        }
+
+        @Override
+        public Void visit(Ast.Function ast) {
+            throw new UnsupportedOperationException("Functions are compiled by JvmCompiler.define.");
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Expression ast) {
+            visit(ast.getExpression());
+            code.op(ClassFile.POP, -1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Declaration ast) {
+            if (blocks.peek().containsKey(ast.getName())) {
+                throw new RuntimeException("The variable " + ast.getName() + " is already defined in this scope.");
+            }
+            if (ast.getValue().isPresent()) {
+                visit(ast.getValue().get());
+            } else {
+                constant(Operators.NIL);
+            }
+            int slot = slots++;
+            code.local(ClassFile.ASTORE, slot);
+            blocks.peek().put(ast.getName(), slot);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Assignment ast) {
+            if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
+                throw new RuntimeException("Only variables or list elements can be assigned.");
+            }
+            Ast.Expression.Access access = (Ast.Expression.Access) ast.getReceiver();
+            Integer slot = slot(access.getName());
+            if (access.getOffset().isPresent()) {
+                load(access.getName(), slot);
+                visit(access.getOffset().get());
+                visit(ast.getValue());
+                operator("set", "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)V");
+            } else if (slot != null) {
+                visit(ast.getValue());
+                code.local(ClassFile.ASTORE, slot);
+            } else {
+                site(access.getName(), -1);
+                visit(ast.getValue());
+                code.invoke(ClassFile.INVOKEVIRTUAL, SITE, "store", "(Ljava/lang/Object;)V");
+            }
+            return null;
+        }
+
+        private void load(String name, Integer slot) {
+            if (slot != null) {
+                code.local(ClassFile.ALOAD, slot);
+            } else {
+                site(name, -1);
+                code.invoke(ClassFile.INVOKEVIRTUAL, SITE, "load", "()Ljava/lang/Object;");
+            }
+        }
+
+        @Override
+        public Void visit(Ast.Statement.If ast) {
+            visit(ast.getCondition());
+            operator("test", "(Ljava/lang/Object;)Z");
+            ClassFile.Label otherwise = code.label();
+            ClassFile.Label end = code.label();
+            code.jump(ClassFile.IFEQ, otherwise);
+            block(ast.getThenStatements());
+            code.jump(ClassFile.GOTO, end);
+            code.mark(otherwise);
+            block(ast.getElseStatements());
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Switch ast) {
+            visit(ast.getCondition());
+            int condition = slots++;
+            code.local(ClassFile.ASTORE, condition);
+            ClassFile.Label end = code.label();
+            for (Ast.Statement.Case caseStatement : ast.getCases()) {
+                if (caseStatement.getValue().isPresent()) {
+                    ClassFile.Label next = code.label();
+                    code.local(ClassFile.ALOAD, condition);
+                    visit(caseStatement.getValue().get());
+                    operator("matches", "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+                    code.jump(ClassFile.IFEQ, next);
+                    block(caseStatement.getStatements());
+                    code.jump(ClassFile.GOTO, end);
+                    code.mark(next);
+                }
+            }
+            // as in the Interpreter, the first default case runs only if no other case matched
+            ast.getCases().stream()
+                    .filter(caseStatement -> !caseStatement.getValue().isPresent())
+                    .findFirst()
+                    .ifPresent(this::visit);
+            code.mark(end);
+            slots--;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Case ast) {
+            block(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.While ast) {
+            ClassFile.Label start = code.label();
+            ClassFile.Label end = code.label();
+            code.mark(start);
+            visit(ast.getCondition());
+            operator("test", "(Ljava/lang/Object;)Z");
+            code.jump(ClassFile.IFEQ, end);
+            block(ast.getStatements());
+            code.jump(ClassFile.GOTO, start);
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Return ast) {
+            visit(ast.getValue());
+            code.op(ClassFile.ARETURN, -1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Literal ast) {
+            constant(ast.getLiteral() == null ? Operators.NIL : ast.getLiteral());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Binary ast) {
+            if (ast.getOperator().equals("&&") || ast.getOperator().equals("||")) {
+                boolean and = ast.getOperator().equals("&&");
+                ClassFile.Label shortCircuit = code.label();
+                ClassFile.Label end = code.label();
+                visit(ast.getLeft());
+                operator("test", "(Ljava/lang/Object;)Z");
+                code.jump(and ? ClassFile.IFEQ : ClassFile.IFNE, shortCircuit);
+                visit(ast.getRight());
+                operator("bool", "(Ljava/lang/Object;)Ljava/lang/Object;");
+                code.jump(ClassFile.GOTO, end);
+                code.mark(shortCircuit);
+                code.field(ClassFile.GETSTATIC, "java/lang/Boolean", and ? "FALSE" : "TRUE", "Ljava/lang/Boolean;");
+                code.mark(end);
+                return null;
+            }
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            operator(operator(ast.getOperator()), BINARY);
+            return null;
+        }
+
+        private String operator(String operator) {
+            switch (operator) {
+                case "+": return "add";
+                case "-": return "subtract";
+                case "*": return "multiply";
+                case "/": return "divide";
+                case "^": return "power";
+                case "<": return "lessThan";
+                case ">": return "greaterThan";
+                case "==": return "equal";
+                case "!=": return "notEqual";
+                default: throw new RuntimeException("Unsupported operator: " + operator);
+            }
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Access ast) {
+            load(ast.getName(), slot(ast.getName()));
+            if (ast.getOffset().isPresent()) {
+                visit(ast.getOffset().get());
+                code.string(ast.getName());
+                operator("get", "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/String;)Ljava/lang/Object;");
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Function ast) {
+            int arity = ast.getArguments().size();
+            if (unit.functions.contains(ast.getName() + "/" + arity)) {
+                for (Ast.Expression argument : ast.getArguments()) {
+                    visit(argument);
+                }
+                code.invoke(ClassFile.INVOKESTATIC, unit.file.getName(), ast.getName(), descriptor(arity));
+            } else {
+                site(ast.getName(), arity);
+                array(ast.getArguments());
+                code.invoke(ClassFile.INVOKEVIRTUAL, SITE, "call", "([Ljava/lang/Object;)Ljava/lang/Object;");
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.PlcList ast) {
+            array(ast.getValues());
+            operator("list", "([Ljava/lang/Object;)Ljava/lang/Object;");
+            return null;
+        }
+
+    }
+
+}
@@ -1,7 +1,28 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The lexer works through three main functions:
@@ -17,29 +38,320 @@ import java.util.ArrayList;
  * The {@link #peek(String...)} and {@link #match(String...)} functions are * helpers you need to use, they will make the implementation a lot easier. */
 public final class Lexer {
 
+    private static final CharClass ANY = CharClass.of(".");
+    private static final CharClass WHITESPACE = CharClass.of("[ \t\n\f\r\u000B\u000C]");
+    private static final CharClass IDENTIFIER_START = CharClass.of("[A-Za-z@]");
+    private static final CharClass IDENTIFIER_PART = CharClass.of("[A-Za-z0-9_-]");
+    private static final CharClass AT = CharClass.of("@");
+    private static final CharClass MINUS = CharClass.of("[-]");
+    private static final CharClass SIGN = CharClass.of("[-\\+]");
+    private static final CharClass ZERO = CharClass.of("0");
+    private static final CharClass NONZERO_DIGIT = CharClass.of("[1-9]");
+    private static final CharClass DIGIT = CharClass.of("[0-9]");
+    private static final CharClass DOT = CharClass.of("[.]");
+    private static final CharClass SINGLE_QUOTE = CharClass.of("\'");
+    private static final CharClass DOUBLE_QUOTE = CharClass.of("\"");
+    private static final CharClass BACKSLASH = CharClass.of("\\\\");
+    private static final CharClass CHARACTER_CONTENT = CharClass.of("[^'\n\r]");
+    private static final CharClass STRING_CONTENT = CharClass.of("[^\"\\n\\r]");
+    private static final CharClass ESCAPE_CHARACTER = CharClass.of("[bnrt\'\"\\\\]");
+    private static final CharClass UNICODE_MARKER = CharClass.of("u");
+    private static final CharClass BANG = CharClass.of("!");
+    private static final CharClass EQUALS = CharClass.of("=");
+    private static final CharClass PIPE = CharClass.of("[|]");
+    private static final CharClass AMPERSAND = CharClass.of("&");
+
     private final CharStream chars;
 
     public Lexer(String input) {
         chars = new CharStream(input);
     }
 
+    public Lexer(CharSequence input) {
+        chars = new CharStream(input);
+    }
+
+    /**
+     * Lexes from a reader, buffering only the characters of the token being
+     * matched rather than the whole input.
+     */
+    public Lexer(Reader reader) {
+        chars = new CharStream(reader);
+    }
+
+    public Lexer(CharStream chars) {
+        this.chars = chars;
+    }
+
     /**
      * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
      * whitespace where appropriate.
      */
     public List<Token> lex() {
         List<Token> tokens = new ArrayList<Token>();
-        while (peek(".")) {
-            if (peek("[ \t\n\f\r\u000B\u000C]")) { // changed to detect Not Whitespace LexerTests
+        while (skipWhitespace()) {
+            tokens.add(lexToken());
+        }
+        return tokens;
+
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but collects the
+     * tokens into a columnar {@link TokenBuffer} backed by the input characters
+     * instead of a list of {@link Token} objects.
+     *
+     * The char stream writes each token's type, index and length straight
+     * into the buffer when it is emitted, so no {@link Token} is created; when
+     * lexing from a reader, the token's characters are copied from the window
+     * into the buffer without creating a string either.
+     */
+    public TokenBuffer lexBuffer() {
+        TokenBuffer tokens = new TokenBuffer(chars.input);
+        chars.sink = tokens;
+        try {
+            while (skipWhitespace()) {
+                lexToken();
+            }
+        } finally {
+            chars.sink = null;
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes the input in parallel, producing the same tokens as {@link #lex()}
+     * (including throwing the same {@link ParseException} on invalid input).
+     *
+     * The input is split into chunks of roughly {@code chunkSize} characters
+     * that end just after a newline. No token (string and character literals
+     * included) may contain a raw newline, so every newline is a token boundary
+     * and each chunk can be lexed independently on the pool. Chunks lex over a
+     * window of the full input, so token indices are already relative to the
+     * whole input when the lists are stitched back together.
+     *
+     * Input read from a {@link Reader} cannot be split and is lexed
+     * sequentially. Throws {@link IllegalArgumentException} if {@code
+     * chunkSize} is not positive.
+     */
+    public List<Token> lexParallel(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive, but was " + chunkSize + ".");
+        } else if (chars.input == null) {
+            return lex();
+        }
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        int start = chars.index;
+        while (start < chars.end) {
+            int end = Math.min(start + chunkSize, chars.end);
+            while (end < chars.end && chars.input.charAt(end - 1) != '\n') {
+                end++;
+            }
+            tasks.add(pool.submit(new Chunk(new CharStream(chars.input, start, end))));
+            start = end;
+        }
+        List<Token> tokens = new ArrayList<>();
+        for (ForkJoinTask<Chunk> task : tasks) {
+            Chunk chunk = task.join();
+            if (chunk.error != null) {
+                tasks.forEach(t -> t.cancel(false));
+                throw chunk.error;
+            }
+            tokens.addAll(chunk.tokens);
+            if (chunk.stopped) {
+                tasks.forEach(t -> t.cancel(false));
+                break;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes in parallel on the common pool with 1M character chunks.
+     */
+    public List<Token> lexParallel() {
+        return lexParallel(ForkJoinPool.commonPool(), 1 << 20);
+    }
+
+    /**
+     * Re-lexes a source after an edit, reusing the tokens the edit cannot have
+     * changed. {@code previous} must be the result of lexing
+     * {@code previousSource}; the edit replaces {@code removedLength}
+     * characters at {@code offset} with {@code insertedText}. The result is
+     * the same as lexing the edited source from scratch.
+     *
+     * Lexing a token reads at most one character past its end (such as the
+     * digit after {@code 1.}, or the third quote of {@code """}), so tokens
+     * ending more than one character before the edit are kept as they are.
+     * Lexing restarts after them and continues until it reaches a position
+     * past the edit where a previous token started; since the lexer carries no
+     * state between tokens, everything from there on (string literals
+     * included) is reused with its index shifted by the edit's change in
+     * length.
+     *
+     * Neither the source nor the reused tokens are copied: the edited source
+     * is a {@link SourceText} sharing the characters of the previous one, and
+     * the result is a {@link Relexed} view over ranges of the previous tokens
+     * that creates each shifted token when it is read. Passing the result and
+     * its {@link Relexed#getSource()} back in for the next edit keeps each
+     * edit's cost in the size of the edit and the number of earlier edits,
+     * not the size of the source.
+     */
+    public static Relexed relex(CharSequence previousSource, List<Token> previous, int offset, int removedLength, String insertedText) {
+        SourceText source = SourceText.of(previousSource).edit(offset, removedLength, insertedText);
+        int delta = insertedText.length() - removedLength;
+        int editEnd = offset + removedLength;
+
+        int kept = 0;
+        int high = previous.size();
+        while (kept < high) {
+            int middle = (kept + high) >>> 1;
+            if (end(previous.get(middle)) + 1 < offset) {
+                kept = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        SliceTree ranges = Relexed.ranges(previous);
+        int restart = kept == 0 ? 0 : end(previous.get(kept - 1));
+
+        CharStream chars = new CharStream(source, restart, source.length());
+        Lexer lexer = new Lexer(chars);
+        List<Token> lexed = new ArrayList<>();
+        int next = kept;
+        while (lexer.skipWhitespace()) {
+            int oldIndex = chars.index - delta;
+            if (oldIndex >= editEnd) {
+                while (next < previous.size() && previous.get(next).getIndex() < oldIndex) {
+                    next++;
+                }
+                if (next < previous.size() && previous.get(next).getIndex() == oldIndex) {
+                    return relexed(source, ranges, kept, lexed, SliceTree.shift(SliceTree.tail(ranges, next), delta));
+                }
+            }
+            lexed.add(lexer.lexToken());
+        }
+        return relexed(source, ranges, kept, lexed, null);
+    }
+
+    private static Relexed relexed(SourceText source, SliceTree previous, int kept, List<Token> lexed, SliceTree reused) {
+        SliceTree ranges = SliceTree.concat(SliceTree.head(previous, kept), SliceTree.of(lexed, 0, lexed.size(), 0));
+        return new Relexed(source, SliceTree.concat(ranges, reused));
+    }
+
+    private static int end(Token token) {
+        return token.getIndex() + token.getLength();
+    }
+
+    /**
+     * The tokens returned by {@link #relex}: ranges of other token lists, each
+     * with the amount its indices are shifted by, kept in a balanced {@link
+     * SliceTree} so they never nest. Shifted tokens are created on each read,
+     * referencing the edited source.
+     */
+    public static final class Relexed extends AbstractList<Token> implements RandomAccess {
+
+        private final SourceText source;
+        private final SliceTree ranges;
+
+        private Relexed(SourceText source, SliceTree ranges) {
+            this.source = source;
+            this.ranges = ranges;
+        }
+
+        /**
+         * Returns the edited source the tokens were lexed from.
+         */
+        public SourceText getSource() {
+            return source;
+        }
+
+        private static SliceTree ranges(List<Token> tokens) {
+            return tokens instanceof Relexed ? ((Relexed) tokens).ranges : SliceTree.of(tokens, 0, tokens.size(), 0);
+        }
+
+        @Override
+        public int size() {
+            return SliceTree.size(ranges);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Token get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+            }
+            SliceTree tree = ranges;
+            int shift = 0;
+            while (true) {
+                shift += tree.shift;
+                int before = SliceTree.size(tree.left);
+                if (index < before) {
+                    tree = tree.left;
+                } else if (index < before + tree.length) {
+                    break;
+                } else {
+                    index -= before + tree.length;
+                    tree = tree.right;
+                }
+            }
+            shift += tree.sliceShift;
+            Token token = ((List<Token>) tree.base).get(tree.from + index - SliceTree.size(tree.left));
+            if (shift == 0) {
+                return token;
+            }
+            return new Token(token.getType(), source, token.getIndex() + shift, token.getLength());
+        }
+
+    }
+
+    /**
+     * Returns a lazy iterator over the tokens of the input. Each call to
+     * {@link Iterator#next()} lexes exactly one token, so the full token list
+     * is never materialized. The tokens produced are the same as {@link #lex()}.
+     */
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+
+            @Override
+            public boolean hasNext() {
+                return skipWhitespace();
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return lexToken();
+            }
+
+        };
+    }
+
+    /**
+     * Returns a sequential, ordered spliterator backed by {@link #iterator()}.
+     */
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Skips whitespace ahead of the next token, returning true if there is a
+     * token left to lex.
+     */
+    private boolean skipWhitespace() {
+        while (chars.has(0)) {
+            if (peek(WHITESPACE)) { // changed to detect Not Whitespace LexerTests
                 chars.advance();
                 chars.skip();
                 continue;
             }
-            tokens.add(lexToken());
+            return peek(ANY);
         }
-        return tokens;
-
+        return false;
     }
+
     /**
      * This method determines the type of the next token, delegating to the
      * appropriate lex method. As such, it is best for this method to not change
@@ -49,16 +361,16 @@ public final class Lexer {
      * by {@link #lex()}
      */
     public Token lexToken() { //done
-        if (peek("[A-Za-z@]")) {
+        if (peek(IDENTIFIER_START)) {
             return lexIdentifier();
         }
-        else if (peek("[-]", "[1-9]") || peek("[0-9]")){ //integer or decimal
+        else if (peek(MINUS, NONZERO_DIGIT) || peek(DIGIT)){ //integer or decimal
             return lexNumber();
         }
-        else if(peek("\'")){
+        else if(peek(SINGLE_QUOTE)){
             return lexCharacter();
         }
-        else if(peek("\"")){
+        else if(peek(DOUBLE_QUOTE)){
             return lexString();
         }
         else {
@@ -67,31 +379,31 @@ public final class Lexer {
 
     }
     public Token lexIdentifier() {// done
-        if (peek("@")) { //@ can only start
+        if (peek(AT)) { //@ can only start
             chars.advance();
         }
-        while (peek("[A-Za-z0-9_-]")) {
+        while (peek(IDENTIFIER_PART)) {
             chars.advance();
         }
         return chars.emit(Token.Type.IDENTIFIER);
     }
 
     public Token lexNumber() {
-        if (match("[-\\+]", "[0-9]")) {
+        if (match(SIGN, DIGIT)) {
             // If negative sign is present, check for leading zero or digit
-            if (match("0") && match("[.]", "[0-9]")) {
+            if (match(ZERO) && match(DOT, DIGIT)) {
                 return chars.emit(Token.Type.DECIMAL);
             }
         }
 
         else {
             // If no negative sign, check for leading zero
-            if (match("0")) {
+            if (match(ZERO)) {
                 // Check for decimal and digits
-                if (peek("[.]", "[0-9]")) {
-                    match("[.]");
-                    while (peek("[0-9]")) {
-                        match("[0-9]");
+                if (peek(DOT, DIGIT)) {
+                    match(DOT);
+                    while (peek(DIGIT)) {
+                        match(DIGIT);
                     }
                     return chars.emit(Token.Type.DECIMAL);
                 }
@@ -101,15 +413,15 @@ public final class Lexer {
         }
 
         // Handle digits before decimal point
-        while (peek("[0-9]")) {
-            match("[0-9]");
+        while (peek(DIGIT)) {
+            match(DIGIT);
         }
 
         // Check for decimal point and digits after it
-        if (peek("[.]", "[0-9]")) {
-            match("[.]", "[0-9]");
-            while (peek("[0-9]")) {
-                match("[0-9]");
+        if (peek(DOT, DIGIT)) {
+            match(DOT, DIGIT);
+            while (peek(DIGIT)) {
+                match(DIGIT);
             }
             return chars.emit(Token.Type.DECIMAL);
         }
@@ -120,19 +432,19 @@ public final class Lexer {
 
 
     public Token lexCharacter() { //done
-        match("\'");
+        match(SINGLE_QUOTE);
 
-        if (!peek("\'")) {
-            if (peek("\\\\")) {
+        if (!peek(SINGLE_QUOTE)) {
+            if (peek(BACKSLASH)) {
                 lexEscape();
             } else {
-                match("[^'\n\r]");
+                match(CHARACTER_CONTENT);
             }
         } else {
             throw new ParseException("Empty character literal", chars.index);
         }
 
-        if (match("\'")) {
+        if (match(SINGLE_QUOTE)) {
             return chars.emit(Token.Type.CHARACTER);
         } else {
             throw new ParseException("Unterminated character literal", chars.index);
@@ -141,29 +453,29 @@ public final class Lexer {
 
     public Token lexString() {
         //if multiple quotes in a triplet set
-        if (peek("\"", "\"", "\"")) {
-            match("\"", "\"", "\"");
+        if (peek(DOUBLE_QUOTE, DOUBLE_QUOTE, DOUBLE_QUOTE)) {
+            match(DOUBLE_QUOTE, DOUBLE_QUOTE, DOUBLE_QUOTE);
         }
         // starting quotes
-        else if (peek("\"")) {
-            match("\"");
+        else if (peek(DOUBLE_QUOTE)) {
+            match(DOUBLE_QUOTE);
         } else {
             throw new ParseException("Invalid String", chars.index);
         }
         // read string content
-        while (peek("[^\"\\n\\r]")) {
+        while (peek(STRING_CONTENT)) {
             // legal escape
-            if (peek("\\\\")) {
+            if (peek(BACKSLASH)) {
                 lexEscape();
             } else {
-                match(".");
+                match(STRING_CONTENT);
             }
         }
         // closing quote
-        if (peek("\"", "\"", "\"")) {
-            match("\"", "\"", "\"");
-        } else if (peek("\"")) {
-            match("\"");
+        if (peek(DOUBLE_QUOTE, DOUBLE_QUOTE, DOUBLE_QUOTE)) {
+            match(DOUBLE_QUOTE, DOUBLE_QUOTE, DOUBLE_QUOTE);
+        } else if (peek(DOUBLE_QUOTE)) {
+            match(DOUBLE_QUOTE);
         } else {
             throw new ParseException("Unterminated String", chars.index);
         }
@@ -173,11 +485,11 @@ public final class Lexer {
 
     public void lexEscape() { //done
         // escape ::= '\' [bnrt'"\\]
-        if (peek("\\\\u")) { //unicode escape
+        if (peek(BACKSLASH, UNICODE_MARKER)) { //unicode escape
             throw new ParseException("Invalid Unicode Escape", chars.index);
         } else {//existing seq code before
-            if (peek("\\\\", "[bnrt\'\"\\\\]")) {
-                match("\\\\", "[bnrt\'\"\\\\]");
+            if (peek(BACKSLASH, ESCAPE_CHARACTER)) {
+                match(BACKSLASH, ESCAPE_CHARACTER);
             }
             else{
                 throw new ParseException("Invalid Escape", chars.index);
@@ -187,11 +499,11 @@ public final class Lexer {
     }
     public Token lexOperator() {
         // operator ::= [!=] '='? | '&&' | '||' | 'any character'
-        if (match("!", "=") || match("[|]", "[|]") || match("&", "&") || match("=", "=")) {
+        if (match(BANG, EQUALS) || match(PIPE, PIPE) || match(AMPERSAND, AMPERSAND) || match(EQUALS, EQUALS)) {
             return chars.emit(Token.Type.OPERATOR);
         }
         else {
-            match(".");
+            match(ANY);
             return chars.emit(Token.Type.OPERATOR);
         }
     }
@@ -199,10 +511,13 @@ public final class Lexer {
      * Returns true if the next sequence of characters match the given patterns,
      * which should be a regex. For example, {@code peek("a", "b", "c")} would
      * return true if the next characters are {@code 'a', 'b', 'c'}.
+     *
+     * Each pattern is compiled once into a {@link CharClass} and cached, so
+     * repeated calls with the same pattern do not touch the regex engine.
      */
     public boolean peek(String... patterns) {
-        for(int i=0;i<patterns.length;i++) {
-            if (!chars.has(i) || !String.valueOf(chars.get(i)).matches(patterns[i])) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (!chars.has(i) || !CharClass.of(patterns[i]).matches(chars.get(i))) {
                 return false;
             }
         }
@@ -224,6 +539,61 @@ public final class Lexer {
         return peek;
     }
 
+    /**
+     * Same as {@link #peek(String...)}, but with precompiled character classes.
+     * This is what the lexing methods use internally.
+     */
+    private boolean peek(CharClass... classes) {
+        for (int i = 0; i < classes.length; i++) {
+            if (!chars.has(i) || !classes[i].matches(chars.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link #match(String...)}, but with precompiled character classes.
+     */
+    private boolean match(CharClass... classes) {
+        boolean peek = peek(classes);
+        if (peek) {
+            for (int i = 0; i < classes.length; i++) {
+                chars.advance();
+            }
+        }
+        return peek;
+    }
+
+
+    /**
+     * One chunk of a parallel lex. Errors are captured rather than thrown so
+     * that only the first failing chunk (in input order) is reported.
+     */
+    private static final class Chunk implements Callable<Chunk> {
+
+        private final CharStream chars;
+        private List<Token> tokens;
+        private ParseException error;
+        private boolean stopped;
+
+        private Chunk(CharStream chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public Chunk call() {
+            Lexer lexer = new Lexer(chars);
+            try {
+                tokens = lexer.lex();
+                stopped = chars.has(0);
+            } catch (ParseException e) {
+                error = e;
+            }
+            return this;
+        }
+
+    }
 
     /**
      * A helper class maintaining the input string, current index of the char
@@ -232,23 +602,88 @@ public final class Lexer {
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
+     *
+     * The input is either a random-access {@link CharSequence} (a string, a
+     * {@link CharBuffer}, or a memory-mapped file from {@link #map(Path,
+     * Charset)}), in which case emitted tokens reference the input and create
+     * their literal lazily, or a {@link Reader}, in which case only a window
+     * starting at the current token is buffered and literals are copied out
+     * when the token is emitted.
      */
     public static final class CharStream {
 
-        private final String input;
+        private static final int WINDOW_SIZE = 8192;
+
+        private final CharSequence input;
+        private final int end;
+        private final Reader reader;
+        private char[] window;
+        private int windowStart = 0;
+        private int windowEnd = 0;
+        private boolean exhausted = false;
         private int index = 0;
         private int length = 0;
+        private TokenBuffer sink;
 
         public CharStream(String input) {
+            this((CharSequence) input);
+        }
+
+        public CharStream(CharSequence input) {
+            this(input, 0, input.length());
+        }
+
+        /**
+         * Creates a stream over {@code [start, end)} of the input. Token indices
+         * stay relative to the whole input.
+         */
+        public CharStream(CharSequence input, int start, int end) {
             this.input = input;
+            this.end = end;
+            this.reader = null;
+            this.index = start;
+        }
+
+        public CharStream(Reader reader) {
+            this.input = null;
+            this.end = -1;
+            this.reader = reader;
+            this.window = new char[WINDOW_SIZE];
+        }
+
+        /**
+         * Memory-maps the file at the given path. Single-byte input (Latin-1,
+         * or ASCII-only content in an ASCII-compatible charset) is read straight
+         * out of the mapping; anything else is decoded once into a buffer.
+         */
+        public static CharStream map(Path path, Charset charset) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("File " + path + " is too large to lex.");
+                }
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (charset.equals(StandardCharsets.ISO_8859_1) || (isAsciiCompatible(charset) && isAscii(bytes))) {
+                    return new CharStream(new ByteSequence(bytes));
+                }
+                return new CharStream(charset.newDecoder().decode(bytes));
+            }
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            if (input != null) {
+                return index + offset < end;
+            }
+            return fill(index + offset);
         }
 
         public char get(int offset) {
-            return input.charAt(index + offset);
+            if (input != null) {
+                return input.charAt(index + offset);
+            }
+            if (!fill(index + offset)) {
+                throw new IndexOutOfBoundsException("Index " + (index + offset) + " is past the end of the input.");
+            }
+            return window[index + offset - windowStart];
         }
 
         public void advance() {
@@ -260,10 +695,103 @@ public final class Lexer {
             length = 0;
         }
 
+        /**
+         * Returns the token just matched, or adds it to the buffer and
+         * returns {@code null} while {@link #lexBuffer()} is collecting into
+         * one.
+         */
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            if (sink != null) {
+                if (input != null) {
+                    sink.add(type, start, index - start);
+                } else {
+                    sink.add(type, start, window, start - windowStart, index - start);
+                }
+                return null;
+            } else if (input != null) {
+                return new Token(type, input, start, index - start);
+            }
+            return new Token(type, new String(window, start - windowStart, index - start), start);
+        }
+
+        /**
+         * Reads from the reader until the character at {@code target} is
+         * buffered, discarding everything before the current token. Returns
+         * false if the input ends first.
+         */
+        private boolean fill(int target) {
+            while (target >= windowEnd && !exhausted) {
+                int keep = index - length;
+                if (keep > windowStart) {
+                    System.arraycopy(window, keep - windowStart, window, 0, windowEnd - keep);
+                    windowStart = keep;
+                }
+                if (windowEnd - windowStart == window.length) {
+                    window = Arrays.copyOf(window, window.length * 2);
+                }
+                try {
+                    int read = reader.read(window, windowEnd - windowStart, window.length - (windowEnd - windowStart));
+                    if (read < 0) {
+                        exhausted = true;
+                    } else {
+                        windowEnd += read;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return target < windowEnd;
+        }
+
+        private static boolean isAsciiCompatible(Charset charset) {
+            return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII);
+        }
+
+        private static boolean isAscii(ByteBuffer bytes) {
+            for (int i = 0; i < bytes.limit(); i++) {
+                if (bytes.get(i) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * A read-only view of single-byte encoded characters, used to lex mapped
+     * files without decoding them onto the heap.
+     */
+    private static final class ByteSequence implements CharSequence {
+
+        private final ByteBuffer bytes;
+
+        private ByteSequence(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ByteSequence(bytes.slice(start, end - start));
+        }
+
+        @Override
+        public String toString() {
+            byte[] copy = new byte[bytes.limit()];
+            bytes.get(0, copy);
+            return new String(copy, StandardCharsets.ISO_8859_1);
         }
 
     }
@@ -0,0 +1,162 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The operations of the language on raw values (the {@link
+ * Environment.PlcObject#getValue()} of an object, with {@link
+ * Environment#NIL} represented by {@link #NIL}), shared by the {@link
+ * VirtualMachine} and the classes generated by the {@link JvmCompiler}. They
+ * behave like the corresponding cases of {@link Interpreter}, including the
+ * messages of the errors they throw, except that both operands have already
+ * been evaluated when an operand or list is rejected.
+ *
+ * This class and its methods are public so generated classes, which are
+ * defined by their own class loader, can call them.
+ */
+public final class Operators {
+
+    public static final Object NIL = Environment.NIL.getValue();
+
+    private Operators() {}
+
+    public static Environment.PlcObject wrap(Object value) {
+        return value == NIL ? Environment.NIL : Environment.create(value);
+    }
+
+    public static <T> T require(Class<T> type, Object value) {
+        if (type.isInstance(value)) {
+            return type.cast(value);
+        } else {
+            throw new RuntimeException("Expected type " + type.getName() + ", received " + value.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * Returns the value, which must be a boolean, as a condition.
+     */
+    public static boolean test(Object value) {
+        return require(Boolean.class, value);
+    }
+
+    /**
+     * Returns the value, which must be a boolean, as the result of {@code &&}
+     * or {@code ||}.
+     */
+    public static Object bool(Object value) {
+        return require(Boolean.class, value);
+    }
+
+    public static Object add(Object left, Object right) {
+        if (left instanceof String || right instanceof String) {
+            return left.toString() + right.toString();
+        } else if (left instanceof BigInteger && right instanceof BigInteger) {
+            return ((BigInteger) left).add((BigInteger) right);
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            return ((BigDecimal) left).add((BigDecimal) right);
+        } else {
+            throw new RuntimeException("Invalid operands for + operator.");
+        }
+    }
+
+    public static Object subtract(Object left, Object right) {
+        return require(BigInteger.class, left).subtract(require(BigInteger.class, right));
+    }
+
+    public static Object multiply(Object left, Object right) {
+        return require(BigInteger.class, left).multiply(require(BigInteger.class, right));
+    }
+
+    public static Object divide(Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            if (right.equals(BigInteger.ZERO)) {
+                throw new RuntimeException("Division by zero.");
+            }
+            return ((BigInteger) left).divide((BigInteger) right);
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            if (((BigDecimal) right).compareTo(BigDecimal.ZERO) == 0) {
+                throw new RuntimeException("Division by zero.");
+            }
+            return ((BigDecimal) left).divide((BigDecimal) right, 1, RoundingMode.HALF_EVEN);
+        }
+        // mixed operands fall through to exponentiation, which rejects them
+        return power(left, right);
+    }
+
+    public static Object power(Object left, Object right) {
+        return require(BigInteger.class, left).pow(require(BigInteger.class, right).intValueExact());
+    }
+
+    public static Object lessThan(Object left, Object right) {
+        return compare("<", left, right) < 0;
+    }
+
+    public static Object greaterThan(Object left, Object right) {
+        return compare(">", left, right) > 0;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static int compare(String operator, Object left, Object right) {
+        if (!(left instanceof Comparable)) {
+            throw new RuntimeException("Unsupported operator: " + operator);
+        }
+        require(left.getClass(), right);
+        return ((Comparable) left).compareTo(right);
+    }
+
+    public static Object equal(Object left, Object right) {
+        return Objects.equals(left, right);
+    }
+
+    public static Object notEqual(Object left, Object right) {
+        return !Objects.equals(left, right);
+    }
+
+    /**
+     * Returns true if a {@code SWITCH} condition matches a {@code CASE} value.
+     */
+    public static boolean matches(Object condition, Object value) {
+        return condition.equals(value);
+    }
+
+    public static Object list(Object[] values) {
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+    /**
+     * Returns an element of the list held by the variable with the given
+     * name, which is only used to report a variable that is not a list.
+     */
+    public static Object get(Object list, Object offset, String name) {
+        if (!(list instanceof List)) {
+            throw new RuntimeException("Variable '" + name + "' is not a list.");
+        }
+        List<?> values = (List<?>) list;
+        Object item = values.get(index(values, require(BigInteger.class, offset)));
+        return item instanceof Environment.PlcObject ? ((Environment.PlcObject) item).getValue() : item;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void set(Object list, Object offset, Object value) {
+        if (!(list instanceof List)) {
+            throw new RuntimeException("Variable is not a list - offset is present.");
+        }
+        List<Object> values = (List<Object>) list;
+        values.set(index(values, require(Number.class, offset)), value);
+    }
+
+    private static int index(List<?> list, Number offset) {
+        int index = offset.intValue();
+        if (index < 0 || index >= list.size()) {
+            throw new RuntimeException("List index out of bounds.");
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,856 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Rewrites an analyzed AST into a simpler one that behaves the same in the
+ * {@link Interpreter} and the {@link Generator}. It folds binary expressions
+ * on literals, simplifies integer identities such as {@code x + 0} and
+ * {@code x * 1}, drops {@code IF} branches whose condition is constant and
+ * statements that can never run, inlines calls to small functions, and
+ * removes the functions and globals that {@code main/0} cannot reach.
+ *
+ * Constants are folded with {@link Operators}, so they follow the
+ * interpreter's semantics exactly (concatenation in {@code +}, {@code
+ * BigDecimal} division with {@code HALF_EVEN}, {@code ^} with {@code pow}).
+ * An expression is left alone if evaluating it fails, so the error still
+ * happens at runtime, or if the result is a literal the {@link Analyzer}
+ * would reject as out of range. Identities are only simplified when the
+ * analyzer typed both operands as {@code Integer}.
+ *
+ * The optimizer returns new nodes for the parts it changes, carrying over
+ * the types, variables, functions and slots the analyzer and {@link
+ * Resolver} attached, and reuses the nodes it does not change.
+ *
+ * A function can be inlined if its body is a single {@code RETURN} of an
+ * expression of at most {@code inlineSize} nodes and it does not call itself,
+ * directly or through other functions. A call to it is replaced by that
+ * expression with the arguments in place of the parameters. Since the
+ * arguments would be evaluated once per use of the parameter, and possibly
+ * after the body's own calls, a call is only inlined if each argument is a
+ * literal, a variable, or, for a parameter used at most once, an arithmetic
+ * or comparison that cannot fail, and if the body makes no calls unless all
+ * arguments are literals. Inlined bodies are optimized in turn, inlining up
+ * to {@code inlineDepth} levels of calls.
+ *
+ * The inlined expression keeps referring to the globals the function used,
+ * so a local of the caller with the same name as one of those globals is
+ * renamed to a name containing {@code $}, which the {@link Lexer} never
+ * produces. This follows the analyzer's lexical scoping, like the {@link
+ * Resolver}: an unresolved tree in the {@link Interpreter} lets functions see
+ * their caller's locals, which inlining does not preserve.
+ */
+public final class Optimizer implements Ast.Visitor<Ast> {
+
+    /**
+     * The largest result of {@code ^}, in bits, that is folded; larger ones
+     * are out of range anyway and would be expensive to compute.
+     */
+    private static final int MAX_POWER_BITS = 64;
+
+    public static final int DEFAULT_INLINE_SIZE = 12;
+    public static final int DEFAULT_INLINE_DEPTH = 3;
+
+    private final int inlineSize;
+    private final int inlineDepth;
+
+    /**
+     * The functions that can be inlined, by {@code name/arity}, and the
+     * globals their bodies use.
+     */
+    private final Map<String, Ast.Function> inlineable = new HashMap<>();
+    private final Set<String> inlineGlobals = new HashSet<>();
+
+    /**
+     * The locals renamed to keep them apart from the globals of inlined
+     * bodies, by their original names, with a map for each enclosing block.
+     */
+    private Deque<Map<String, Environment.Variable>> renamed = new ArrayDeque<>();
+    private int renames = 0;
+
+    /**
+     * The arguments of the call being inlined, by parameter name, and the
+     * number of inlined calls it is nested in.
+     */
+    private Map<String, Ast.Expression> arguments = Collections.emptyMap();
+    private int depth = 0;
+
+    public Optimizer() {
+        this(DEFAULT_INLINE_SIZE, DEFAULT_INLINE_DEPTH);
+    }
+
+    /**
+     * Creates an optimizer that inlines functions whose bodies return an
+     * expression of at most {@code inlineSize} nodes, through at most {@code
+     * inlineDepth} levels of calls. Either being zero disables inlining.
+     */
+    public Optimizer(int inlineSize, int inlineDepth) {
+        this.inlineSize = inlineSize;
+        this.inlineDepth = inlineDepth;
+    }
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        findInlineable(ast.getFunctions());
+        List<Ast.Global> globals = new ArrayList<>();
+        for (Ast.Global global : ast.getGlobals()) {
+            globals.add(visit(global));
+        }
+        List<Ast.Function> functions = new ArrayList<>();
+        for (Ast.Function function : ast.getFunctions()) {
+            functions.add(visit(function));
+        }
+        return prune(globals, functions);
+    }
+
+    /**
+     * Removes the functions and globals that cannot be reached from {@code
+     * main/0} through calls and variable accesses. Globals whose values are
+     * not {@link #safe(Ast.Expression) safe}, such as calls (which could have
+     * side effects) or divisions (which could fail), are kept, and what they
+     * reach is kept too. Names are matched without regard to scope, so
+     * a global shadowed by a local of the same name may be kept needlessly.
+     * Without a {@code main/0}, nothing is removed.
+     */
+    private static Ast.Source prune(List<Ast.Global> globals, List<Ast.Function> functions) {
+        Map<String, Ast.Function> byName = new HashMap<>();
+        for (Ast.Function function : functions) {
+            byName.put(function.getName() + "/" + function.getParameters().size(), function);
+        }
+        if (!byName.containsKey("main/0")) {
+            return new Ast.Source(globals, functions);
+        }
+        References references = new References();
+        Set<Ast> reached = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Ast.Global global : globals) {
+            if (global.getValue().isPresent() && !safe(global.getValue().get())) {
+                references.visit(global);
+                reached.add(global);
+            }
+        }
+        references.calls.add("main/0");
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String call : new ArrayList<>(references.calls)) {
+                Ast.Function function = byName.get(call);
+                if (function != null && reached.add(function)) {
+                    references.visit(function);
+                    changed = true;
+                }
+            }
+            for (Ast.Global global : globals) {
+                if (references.names.containsKey(global.getName()) && reached.add(global)) {
+                    references.visit(global);
+                    changed = true;
+                }
+            }
+        }
+        globals.removeIf(global -> !reached.contains(global));
+        functions.removeIf(function -> !reached.contains(function));
+        return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Finds the functions whose calls can be inlined: those whose body is a
+     * single small {@code RETURN} and which cannot reach themselves through
+     * calls.
+     */
+    private void findInlineable(List<Ast.Function> functions) {
+        inlineable.clear();
+        inlineGlobals.clear();
+        if (inlineSize <= 0 || inlineDepth <= 0) {
+            return;
+        }
+        Map<String, Set<String>> calls = new HashMap<>();
+        for (Ast.Function function : functions) {
+            References references = new References();
+            references.visit(function);
+            calls.put(function.getName() + "/" + function.getParameters().size(), references.calls);
+        }
+        for (Ast.Function function : functions) {
+            String name = function.getName() + "/" + function.getParameters().size();
+            if (function.getStatements().size() != 1 || !(function.getStatements().get(0) instanceof Ast.Statement.Return)
+                    || size(returned(function)) > inlineSize || reaches(calls, name, name)) {
+                continue;
+            }
+            inlineable.put(name, function);
+            References references = new References();
+            references.visit(returned(function));
+            for (String global : references.names.keySet()) {
+                if (!function.getParameters().contains(global)) {
+                    inlineGlobals.add(global);
+                }
+            }
+        }
+    }
+
+    private static Ast.Expression returned(Ast.Function function) {
+        return ((Ast.Statement.Return) function.getStatements().get(0)).getValue();
+    }
+
+    /**
+     * Returns true if a call to {@code from} may lead to a call to {@code to}.
+     */
+    private static boolean reaches(Map<String, Set<String>> calls, String from, String to) {
+        Set<String> seen = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(calls.getOrDefault(from, Collections.emptySet()));
+        while (!pending.isEmpty()) {
+            String call = pending.pop();
+            if (call.equals(to)) {
+                return true;
+            } else if (seen.add(call)) {
+                pending.addAll(calls.getOrDefault(call, Collections.emptySet()));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of nodes in an expression.
+     */
+    private static int size(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Group) {
+            return 1 + size(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Binary) {
+            return 1 + size(((Ast.Expression.Binary) ast).getLeft()) + size(((Ast.Expression.Binary) ast).getRight());
+        } else if (ast instanceof Ast.Expression.Access) {
+            return 1 + ((Ast.Expression.Access) ast).getOffset().map(Optimizer::size).orElse(0);
+        } else if (ast instanceof Ast.Expression.Function) {
+            return 1 + ((Ast.Expression.Function) ast).getArguments().stream().mapToInt(Optimizer::size).sum();
+        } else if (ast instanceof Ast.Expression.PlcList) {
+            return 1 + ((Ast.Expression.PlcList) ast).getValues().stream().mapToInt(Optimizer::size).sum();
+        }
+        return 1;
+    }
+
+    @Override
+    public Ast.Global visit(Ast.Global ast) {
+        Optional<Ast.Expression> value = ast.getValue().map(this::expression);
+        if (value.orElse(null) == ast.getValue().orElse(null)) {
+            return ast;
+        }
+        Ast.Global global = new Ast.Global(ast.getName(), ast.getTypeName(), ast.getMutable(), value);
+        global.setVariable(bound(ast::getVariable));
+        return global;
+    }
+
+    @Override
+    public Ast.Function visit(Ast.Function ast) {
+        List<String> parameters = new ArrayList<>();
+        List<Ast.Statement> statements;
+        Environment.Function bound = bound(ast::getFunction);
+        renamed.push(new HashMap<>());
+        try {
+            for (int i = 0; i < ast.getParameters().size(); i++) {
+                String parameter = ast.getParameters().get(i);
+                // a renamed parameter keeps its type, so typed rewrites and the compiler's fast paths still apply
+                parameters.add(declare(parameter, bound == null ? null
+                        : new Environment.Variable(parameter, parameter, bound.getParameterTypes().get(i), true, Environment.NIL)));
+            }
+            statements = statements(ast.getStatements());
+        } finally {
+            renamed.clear();
+        }
+        Ast.Function function = new Ast.Function(ast.getName(), parameters, ast.getParameterTypeNames(),
+                ast.getReturnTypeName(), statements);
+        function.setFunction(bound);
+        function.setFrameSize(ast.getFrameSize());
+        return function;
+    }
+
+    /**
+     * Optimizes a block, replacing each {@code IF} with a constant condition
+     * by the statements of the branch it takes, and dropping the statements
+     * after a {@code RETURN} or an {@code IF} that always returns. A branch that declares variables stays in an
+     * {@code IF} so they remain scoped to it.
+     */
+    private List<Ast.Statement> statements(List<Ast.Statement> statements) {
+        List<Ast.Statement> result = new ArrayList<>();
+        renamed.push(new HashMap<>());
+        try {
+            block(statements, result);
+        } finally {
+            renamed.pop();
+        }
+        return result;
+    }
+
+    private void block(List<Ast.Statement> statements, List<Ast.Statement> result) {
+        for (Ast.Statement statement : statements) {
+            if (returns(result)) {
+                break;
+            }
+            Ast.Statement optimized = (Ast.Statement) visit(statement);
+            if (optimized == null) {
+                continue;
+            }
+            if (optimized instanceof Ast.Statement.If) {
+                Ast.Statement.If branch = (Ast.Statement.If) optimized;
+                Object condition = literal(branch.getCondition());
+                if (condition instanceof Boolean) {
+                    List<Ast.Statement> taken = (Boolean) condition ? branch.getThenStatements() : branch.getElseStatements();
+                    if (taken.stream().noneMatch(s -> s instanceof Ast.Statement.Declaration)) {
+                        result.addAll(taken);
+                    } else {
+                        result.add(new Ast.Statement.If(literal(true), taken, new ArrayList<>()));
+                    }
+                    continue;
+                }
+            }
+            result.add(optimized);
+        }
+    }
+
+    /**
+     * Returns true if the statements always return: they end in a {@code
+     * RETURN}, or in an {@code IF} whose branches both always return. The
+     * statements after them cannot run, and {@code javac} rejects them in
+     * generated code.
+     */
+    private static boolean returns(List<Ast.Statement> statements) {
+        if (statements.isEmpty()) {
+            return false;
+        }
+        Ast.Statement last = statements.get(statements.size() - 1);
+        if (last instanceof Ast.Statement.If) {
+            Ast.Statement.If branch = (Ast.Statement.If) last;
+            return returns(branch.getThenStatements()) && returns(branch.getElseStatements());
+        }
+        return last instanceof Ast.Statement.Return;
+    }
+
+    /**
+     * Declares a local in the current block, renaming it if it has the name
+     * of a global used by an inlineable function, and returns its name.
+     */
+    private String declare(String name, Environment.Variable variable) {
+        if (!inlineGlobals.contains(name)) {
+            return name;
+        }
+        String jvmName = name + "$" + ++renames;
+        renamed.peek().put(name, variable == null
+                ? new Environment.Variable(name, jvmName, Environment.Type.ANY, true, Environment.NIL)
+                : new Environment.Variable(variable.getName(), jvmName, variable.getType(), variable.getMutable(), variable.getValue()));
+        return jvmName;
+    }
+
+    /**
+     * Returns the renamed local a name refers to, or null if it refers to a
+     * local that was not renamed or to a global.
+     */
+    private Environment.Variable lookup(String name) {
+        for (Map<String, Environment.Variable> block : renamed) {
+            if (block.containsKey(name)) {
+                return block.get(name);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Optimizes an expression statement. Only calls are allowed as
+     * statements, so a call is not inlined here; if inlining it shows that it
+     * has no effect, the statement is dropped and null is returned instead.
+     */
+    @Override
+    public Ast.Statement visit(Ast.Statement.Expression ast) {
+        if (!(ast.getExpression() instanceof Ast.Expression.Function)) {
+            Ast.Expression expression = expression(ast.getExpression());
+            return expression == ast.getExpression() ? ast : new Ast.Statement.Expression(expression);
+        }
+        Ast.Expression.Function call = (Ast.Expression.Function) ast.getExpression();
+        List<Ast.Expression> arguments = optimizeArguments(call);
+        Ast.Expression inlined = inline(call, arguments);
+        if (inlined != null && safe(inlined)) {
+            return null;
+        }
+        return new Ast.Statement.Expression(call(call, arguments));
+    }
+
+    @Override
+    public Ast.Statement visit(Ast.Statement.Declaration ast) {
+        // the value is optimized first, since it cannot see the variable it initializes
+        Optional<Ast.Expression> value = ast.getValue().map(this::expression);
+        Environment.Variable variable = bound(ast::getVariable);
+        String name = renamed.isEmpty() ? ast.getName() : declare(ast.getName(), variable);
+        if (value.orElse(null) == ast.getValue().orElse(null) && name.equals(ast.getName())) {
+            return ast;
+        } else if (!name.equals(ast.getName())) {
+            variable = variable == null ? null : lookup(ast.getName());
+        }
+        Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(name, ast.getTypeName(), value);
+        declaration.setVariable(variable);
+        declaration.setSlot(ast.getSlot());
+        return declaration;
+    }
+
+    @Override
+    public Ast.Statement visit(Ast.Statement.Assignment ast) {
+        Ast.Expression receiver = expression(ast.getReceiver());
+        Ast.Expression value = expression(ast.getValue());
+        if (receiver == ast.getReceiver() && value == ast.getValue()) {
+            return ast;
+        }
+        return new Ast.Statement.Assignment(receiver, value);
+    }
+
+    @Override
+    public Ast.Statement visit(Ast.Statement.If ast) {
+        return new Ast.Statement.If(expression(ast.getCondition()),
+                statements(ast.getThenStatements()), statements(ast.getElseStatements()));
+    }
+
+    @Override
+    public Ast.Statement visit(Ast.Statement.Switch ast) {
+        List<Ast.Statement.Case> cases = new ArrayList<>();
+        for (Ast.Statement.Case caseStatement : ast.getCases()) {
+            cases.add(visit(caseStatement));
+        }
+        return new Ast.Statement.Switch(expression(ast.getCondition()), cases);
+    }
+
+    @Override
+    public Ast.Statement.Case visit(Ast.Statement.Case ast) {
+        return new Ast.Statement.Case(ast.getValue().map(this::expression), statements(ast.getStatements()));
+    }
+
+    @Override
+    public Ast.Statement visit(Ast.Statement.While ast) {
+        return new Ast.Statement.While(expression(ast.getCondition()), statements(ast.getStatements()));
+    }
+
+    @Override
+    public Ast.Statement visit(Ast.Statement.Return ast) {
+        Ast.Expression value = expression(ast.getValue());
+        return value == ast.getValue() ? ast : new Ast.Statement.Return(value);
+    }
+
+    private Ast.Expression expression(Ast.Expression ast) {
+        return (Ast.Expression) visit(ast);
+    }
+
+    @Override
+    public Ast.Expression visit(Ast.Expression.Literal ast) {
+        return ast;
+    }
+
+    /**
+     * Drops the parentheses around anything but a binary expression, which
+     * the analyzer does not allow anyway.
+     */
+    @Override
+    public Ast.Expression visit(Ast.Expression.Group ast) {
+        Ast.Expression expression = expression(ast.getExpression());
+        if (!(expression instanceof Ast.Expression.Binary)) {
+            return expression;
+        } else if (expression == ast.getExpression()) {
+            return ast;
+        }
+        Ast.Expression.Group group = new Ast.Expression.Group(expression);
+        group.setType(bound(ast::getType));
+        return group;
+    }
+
+    @Override
+    public Ast.Expression visit(Ast.Expression.Binary ast) {
+        Ast.Expression left = expression(ast.getLeft());
+        Ast.Expression right = expression(ast.getRight());
+        Ast.Expression folded = fold(ast.getOperator(), left, right);
+        if (folded != null) {
+            return folded;
+        } else if (left == ast.getLeft() && right == ast.getRight()) {
+            return ast;
+        }
+        Ast.Expression.Binary binary = new Ast.Expression.Binary(ast.getOperator(), left, right);
+        binary.setType(bound(ast::getType));
+        return binary;
+    }
+
+    /**
+     * Returns the simplified form of the operation, or null if it cannot be
+     * simplified.
+     */
+    private Ast.Expression fold(String operator, Ast.Expression left, Ast.Expression right) {
+        Object l = literal(left), r = literal(right);
+        switch (operator) {
+            case "&&":
+                // either the right operand is never evaluated, or it is the result
+                if (Boolean.FALSE.equals(l)) {
+                    return left;
+                } else if (Boolean.TRUE.equals(l) && (r instanceof Boolean || isType(right, Environment.Type.BOOLEAN))) {
+                    return right;
+                }
+                return null;
+            case "||":
+                if (Boolean.TRUE.equals(l)) {
+                    return left;
+                } else if (Boolean.FALSE.equals(l) && (r instanceof Boolean || isType(right, Environment.Type.BOOLEAN))) {
+                    return right;
+                }
+                return null;
+        }
+        if (l != null && r != null) {
+            return constant(operator, l, r);
+        }
+        boolean integers = isType(left, Environment.Type.INTEGER) && isType(right, Environment.Type.INTEGER);
+        if (!integers) {
+            return null;
+        }
+        switch (operator) {
+            case "+":
+                return BigInteger.ZERO.equals(l) ? right : BigInteger.ZERO.equals(r) ? left : null;
+            case "-":
+                return BigInteger.ZERO.equals(r) ? left : null;
+            case "*":
+                return BigInteger.ONE.equals(l) ? right : BigInteger.ONE.equals(r) ? left : null;
+            case "/":
+                return BigInteger.ONE.equals(r) ? left : null;
+            default:
+                return null;
+        }
+    }
+
+    private Ast.Expression constant(String operator, Object left, Object right) {
+        Object value;
+        try {
+            switch (operator) {
+                case "<": value = Operators.lessThan(left, right); break;
+                case ">": value = Operators.greaterThan(left, right); break;
+                case "==": value = Operators.equal(left, right); break;
+                case "!=": value = Operators.notEqual(left, right); break;
+                case "+": value = Operators.add(left, right); break;
+                case "-": value = Operators.subtract(left, right); break;
+                case "*": value = Operators.multiply(left, right); break;
+                case "/": value = Operators.divide(left, right); break;
+                case "^":
+                    if (!(left instanceof BigInteger && right instanceof BigInteger)
+                            || ((BigInteger) left).bitLength() * ((BigInteger) right).doubleValue() > MAX_POWER_BITS) {
+                        return null;
+                    }
+                    value = Operators.power(left, right);
+                    break;
+                default:
+                    return null;
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return inRange(value) ? literal(value) : null;
+    }
+
+    /**
+     * Returns true if the analyzer accepts the value as a literal.
+     */
+    private static boolean inRange(Object value) {
+        if (value instanceof BigInteger) {
+            return ((BigInteger) value).bitLength() < Integer.SIZE;
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).compareTo(BigDecimal.valueOf(Double.MAX_VALUE)) <= 0
+                    && ((BigDecimal) value).compareTo(BigDecimal.valueOf(Double.MIN_VALUE)) >= 0;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the value of a literal other than {@code NIL}, or null if the
+     * expression is not one.
+     */
+    private static Object literal(Ast.Expression ast) {
+        return ast instanceof Ast.Expression.Literal ? ((Ast.Expression.Literal) ast).getLiteral() : null;
+    }
+
+    private static Ast.Expression.Literal literal(Object value) {
+        Ast.Expression.Literal literal = new Ast.Expression.Literal(value);
+        if (value instanceof Boolean) {
+            literal.setType(Environment.Type.BOOLEAN);
+        } else if (value instanceof BigInteger) {
+            literal.setType(Environment.Type.INTEGER);
+        } else if (value instanceof BigDecimal) {
+            literal.setType(Environment.Type.DECIMAL);
+        } else if (value instanceof String) {
+            literal.setType(Environment.Type.STRING);
+        }
+        return literal;
+    }
+
+    private static boolean isType(Ast.Expression ast, Environment.Type type) {
+        return type.equals(bound(ast::getType));
+    }
+
+    @Override
+    public Ast.Expression visit(Ast.Expression.Access ast) {
+        if (!ast.getOffset().isPresent() && arguments.containsKey(ast.getName())) {
+            return arguments.get(ast.getName());
+        }
+        Ast.Expression offset = ast.getOffset().map(this::expression).orElse(null);
+        Environment.Variable variable = lookup(ast.getName());
+        if (offset == ast.getOffset().orElse(null) && variable == null) {
+            return ast;
+        }
+        Ast.Expression.Access access = new Ast.Expression.Access(Optional.ofNullable(offset),
+                variable == null ? ast.getName() : variable.getJvmName());
+        access.setVariable(variable == null || bound(ast::getVariable) == null ? bound(ast::getVariable) : variable);
+        access.setSlot(ast.getSlot());
+        return access;
+    }
+
+    @Override
+    public Ast.Expression visit(Ast.Expression.Function ast) {
+        List<Ast.Expression> arguments = optimizeArguments(ast);
+        Ast.Expression inlined = inline(ast, arguments);
+        return inlined != null ? inlined : call(ast, arguments);
+    }
+
+    private List<Ast.Expression> optimizeArguments(Ast.Expression.Function ast) {
+        List<Ast.Expression> arguments = new ArrayList<>();
+        for (Ast.Expression argument : ast.getArguments()) {
+            arguments.add(expression(argument));
+        }
+        return arguments;
+    }
+
+    private static Ast.Expression.Function call(Ast.Expression.Function ast, List<Ast.Expression> arguments) {
+        Ast.Expression.Function function = new Ast.Expression.Function(ast.getName(), arguments);
+        function.setFunction(bound(ast::getFunction));
+        return function;
+    }
+
+    /**
+     * Returns the optimized body of the called function with the arguments
+     * in place of its parameters, or null if the call cannot be inlined.
+     */
+    private Ast.Expression inline(Ast.Expression.Function ast, List<Ast.Expression> values) {
+        Ast.Function function = inlineable.get(ast.getName() + "/" + values.size());
+        if (function == null || depth >= inlineDepth) {
+            return null;
+        }
+        Ast.Expression body = returned(function);
+        References references = new References();
+        references.visit(body);
+        Map<String, Ast.Expression> substitutions = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            String parameter = function.getParameters().get(i);
+            Ast.Expression value = values.get(i);
+            if (references.indexed.contains(parameter)) {
+                return null;
+            } else if (!(value instanceof Ast.Expression.Literal)) {
+                boolean variable = value instanceof Ast.Expression.Access && !((Ast.Expression.Access) value).getOffset().isPresent();
+                if (!references.calls.isEmpty()
+                        || !variable && !(references.names.getOrDefault(parameter, 0) <= 1 && safe(value))) {
+                    return null;
+                }
+            }
+            substitutions.put(parameter, value instanceof Ast.Expression.Binary ? group(value) : value);
+        }
+        Map<String, Ast.Expression> outerArguments = arguments;
+        Deque<Map<String, Environment.Variable>> outerRenamed = renamed;
+        arguments = substitutions;
+        renamed = new ArrayDeque<>();
+        depth++;
+        try {
+            Ast.Expression inlined = expression(body);
+            return inlined instanceof Ast.Expression.Binary ? group(inlined) : inlined;
+        } finally {
+            arguments = outerArguments;
+            renamed = outerRenamed;
+            depth--;
+        }
+    }
+
+    /**
+     * Returns true if evaluating the expression cannot fail or have side
+     * effects, so it does not matter when it is evaluated.
+     */
+    private static boolean safe(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Literal) {
+            return true;
+        } else if (ast instanceof Ast.Expression.Access) {
+            return !((Ast.Expression.Access) ast).getOffset().isPresent();
+        } else if (ast instanceof Ast.Expression.Group) {
+            return safe(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+            // division and powers can fail, and the analyzer's types rule out the other operators failing
+            return bound(binary::getType) != null && !binary.getOperator().equals("/") && !binary.getOperator().equals("^")
+                    && safe(binary.getLeft()) && safe(binary.getRight());
+        }
+        return false;
+    }
+
+    private static Ast.Expression.Group group(Ast.Expression ast) {
+        Ast.Expression.Group group = new Ast.Expression.Group(ast);
+        group.setType(bound(ast::getType));
+        return group;
+    }
+
+    @Override
+    public Ast.Expression visit(Ast.Expression.PlcList ast) {
+        List<Ast.Expression> values = new ArrayList<>();
+        for (Ast.Expression value : ast.getValues()) {
+            values.add(expression(value));
+        }
+        Ast.Expression.PlcList list = new Ast.Expression.PlcList(values);
+        list.setType(bound(ast::getType));
+        return list;
+    }
+
+    /**
+     * Returns what the analyzer attached to a node, or null if it was not
+     * analyzed.
+     */
+    private static <T> T bound(Supplier<T> getter) {
+        try {
+            return getter.get();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Collects the names of the variables accessed, with the number of
+     * accesses, those accessed with an offset, and the functions called (as
+     * {@code name/arity}) in the nodes it visits.
+     */
+    private static final class References implements Ast.Visitor<Void> {
+
+        private final Map<String, Integer> names = new HashMap<>();
+        private final Set<String> indexed = new HashSet<>();
+        private final Set<String> calls = new HashSet<>();
+
+        private void visitAll(List<? extends Ast> asts) {
+            for (Ast ast : asts) {
+                visit(ast);
+            }
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            visitAll(ast.getGlobals());
+            visitAll(ast.getFunctions());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Global ast) {
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Function ast) {
+            visitAll(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Expression ast) {
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Declaration ast) {
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Assignment ast) {
+            visit(ast.getReceiver());
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.If ast) {
+            visit(ast.getCondition());
+            visitAll(ast.getThenStatements());
+            visitAll(ast.getElseStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Switch ast) {
+            visit(ast.getCondition());
+            visitAll(ast.getCases());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Case ast) {
+            ast.getValue().ifPresent(this::visit);
+            visitAll(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.While ast) {
+            visit(ast.getCondition());
+            visitAll(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Return ast) {
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Literal ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Group ast) {
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Binary ast) {
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Access ast) {
+            names.merge(ast.getName(), 1, Integer::sum);
+            if (ast.getOffset().isPresent()) {
+                indexed.add(ast.getName());
+                visit(ast.getOffset().get());
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Function ast) {
+            calls.add(ast.getName() + "/" + ast.getArguments().size());
+            visitAll(ast.getArguments());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.PlcList ast) {
+            visitAll(ast.getValues());
+            return null;
+        }
+
+    }
+
+}
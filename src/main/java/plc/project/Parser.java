@@ -2,7 +2,14 @@ package plc.project;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList; //new
 import java.util.Optional; //new
 /**
@@ -16,13 +23,53 @@ import java.util.Optional; //new
  *
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have it's own function, and reference to other rules correspond
- * to calling that functions.
+ * to calling that functions. Binary expressions are the exception; they are
+ * parsed from a precedence table (see {@link #parseExpression()}).
  */
 public final class Parser {
 
+    /**
+     * Binding strength of each binary operator; higher binds tighter. New
+     * operators only need a {@link Token.Kind} and an entry here.
+     */
+    private static final Map<Token.Kind, Integer> PRECEDENCE = new EnumMap<>(Token.Kind.class);
+
+    static {
+        PRECEDENCE.put(Token.Kind.AND, 1);
+        PRECEDENCE.put(Token.Kind.OR, 1);
+        PRECEDENCE.put(Token.Kind.EQUAL_EQUAL, 2);
+        PRECEDENCE.put(Token.Kind.NOT_EQUAL, 2);
+        PRECEDENCE.put(Token.Kind.LESS, 2);
+        PRECEDENCE.put(Token.Kind.LESS_EQUAL, 2);
+        PRECEDENCE.put(Token.Kind.GREATER, 2);
+        PRECEDENCE.put(Token.Kind.GREATER_EQUAL, 2);
+        PRECEDENCE.put(Token.Kind.PLUS, 3);
+        PRECEDENCE.put(Token.Kind.MINUS, 3);
+        PRECEDENCE.put(Token.Kind.STAR, 4);
+        PRECEDENCE.put(Token.Kind.SLASH, 4);
+    }
+
     private final TokenStream tokens;
+    private List<ParseException> diagnostics = null;
 
     public Parser(List<Token> tokens) {
+        this(tokens.iterator());
+    }
+
+    /**
+     * Creates a parser that pulls tokens lazily, such as from
+     * {@link Lexer#iterator()}, so lexing and parsing are interleaved.
+     */
+    public Parser(Iterator<Token> tokens) {
+        this.tokens = new TokenStream(tokens);
+    }
+
+    /**
+     * Creates a parser over a columnar token buffer, such as from {@link
+     * Lexer#lexBuffer()}. Keyword checks compare the source characters in
+     * place, so literals are only created for names and values in the AST.
+     */
+    public Parser(TokenBuffer tokens) {
         this.tokens = new TokenStream(tokens);
     }
 
@@ -35,11 +82,7 @@ public final class Parser {
             List<Ast.Global> g = new ArrayList<>();
             List<Ast.Function> f = new ArrayList<>();
             while (tokens.has(0)) {
-                if (peek("LIST") || peek("VAR") || peek("VAL")) {
-                    g.add(parseGlobal());
-                } else if (match("FUN")) {
-                    f.add(parseFunction());
-                }
+                addDeclaration(parseDeclaration(), g, f);
             }
             return new Ast.Source(g,f);
         } catch (ParseException pe) {
@@ -47,19 +90,118 @@ public final class Parser {
         }
     }
 
+    /**
+     * Parses the {@code source} rule, recovering from errors instead of
+     * stopping at the first one. Every error is added to {@code diagnostics},
+     * and the returned source contains whatever could still be parsed.
+     *
+     * After an error in a statement the parser skips ahead to the next
+     * {@code ;} (consuming it) or {@code END}, and continues with the
+     * enclosing block; if it reaches the start of a top-level
+     * {@code FUN/VAR/VAL/LIST} first, the enclosing declaration is dropped and
+     * parsing resumes there. Errors outside of a block skip ahead to the next
+     * top-level declaration in the same way.
+     */
+    public Ast.Source parseSource(List<ParseException> diagnostics) {
+        this.diagnostics = diagnostics;
+        try {
+            List<Ast.Global> g = new ArrayList<>();
+            List<Ast.Function> f = new ArrayList<>();
+            while (tokens.has(0)) {
+                int start = tokens.index;
+                try {
+                    addDeclaration(parseDeclaration(), g, f);
+                } catch (ParseException e) {
+                    diagnostics.add(e);
+                    if (tokens.index == start) {
+                        tokens.advance();
+                    }
+                    synchronizeDeclaration();
+                } catch (Recovery r) {
+                    synchronizeDeclaration();
+                }
+            }
+            return new Ast.Source(g, f);
+        } finally {
+            this.diagnostics = null;
+        }
+    }
+
+    /**
+     * Parses a single top-level declaration: a global or a function.
+     */
+    private Ast parseDeclaration() throws ParseException {
+        switch (tokens.getKind(0)) {
+            case LIST:
+            case VAR:
+            case VAL:
+                return parseGlobal();
+            case FUN:
+                tokens.advance();
+                return parseFunction();
+            default:
+                throw new ParseException("Expected global or function declaration", tokens.get(0).getIndex());
+        }
+    }
+
+    private static void addDeclaration(Ast declaration, List<Ast.Global> globals, List<Ast.Function> functions) {
+        if (declaration instanceof Ast.Global) {
+            globals.add((Ast.Global) declaration);
+        } else {
+            functions.add((Ast.Function) declaration);
+        }
+    }
+
+    /**
+     * Parses the {@code source} rule, reusing the top-level declarations of a
+     * previous parse whose tokens did not change. Reused {@link Ast.Global}
+     * and {@link Ast.Function} objects are spliced into the new
+     * {@link Ast.Source} as-is; only changed declarations are parsed again.
+     *
+     * A declaration is reused when the new tokens at the current position
+     * match its previous tokens, plus the one token of lookahead the parser
+     * reads after it, since its parse cannot then differ. {@code previous} may
+     * be {@code null} for the first parse.
+     */
+    public static Snapshot parseIncremental(List<Token> tokens, Snapshot previous) throws ParseException {
+        Parser parser = new Parser(tokens);
+        Snapshot snapshot = new Snapshot(tokens);
+        try {
+            List<Ast.Global> g = new ArrayList<>();
+            List<Ast.Function> f = new ArrayList<>();
+            while (parser.tokens.has(0)) {
+                int start = parser.tokens.index;
+                Ast declaration = previous == null ? null : previous.reuse(tokens, start);
+                if (declaration != null && !snapshot.starts.containsKey(declaration)) {
+                    parser.tokens.index += previous.lengthOf(declaration);
+                    snapshot.reused++;
+                } else {
+                    declaration = parser.parseDeclaration();
+                }
+                addDeclaration(declaration, g, f);
+                snapshot.record(declaration, start, parser.tokens.index - start);
+            }
+            snapshot.source = new Ast.Source(g, f);
+            return snapshot;
+        } catch (ParseException pe) {
+            throw new ParseException(pe.getMessage(), pe.getIndex());
+        }
+    }
+
     /**
      * Parses the {@code global} rule. This method should only be called if the
      * next tokens start a global, aka {@code LIST|VAL|VAR}.
      */
     public Ast.Global parseGlobal() throws ParseException {
-        if (peek("LIST")) {
-            return parseList();
-        } else if (peek("VAR")) {
-            return parseMutable();
-        } else if (peek("VAL")) {
-            return parseImmutable();
-        } else {
-            throw new ParseException("Expected global declaration", tokens.get(0).getIndex());
+        switch (tokens.getKind(0)) {
+            case LIST:
+                return parseList();
+            case VAR:
+                return parseMutable();
+            case VAL:
+                return parseImmutable();
+            default:
+                throw new ParseException("Expected global declaration", tokens.get(0).getIndex());
         }
     }
 
@@ -69,22 +211,22 @@ public final class Parser {
      */
     public Ast.Global parseList() throws ParseException {
         // 'LIST' identifier '=' '[' expression (',' expression)* ']'
-        match("LIST");
+        match(Token.Kind.LIST);
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected identifier after LIST", tokens.get(-1).getIndex());
         }
         String listName = tokens.get(-1).getLiteral(); //identifier
         Optional<Ast.Expression> value = Optional.empty();
-        if (match("=")) {
+        if (match(Token.Kind.EQUALS)) {
             value = Optional.of(parseExpression());
         }
         List<Ast.Expression> exprs = new ArrayList<>();
-        if (match("[")) {
+        if (match(Token.Kind.LEFT_BRACKET)) {
             do {
                 exprs.add(parseExpression());
             }
-            while (match(","));
-            if (!match("]")) {
+            while (match(Token.Kind.COMMA));
+            if (!match(Token.Kind.RIGHT_BRACKET)) {
                 throw new ParseException("Expected ]", tokens.get(-1).getIndex());
             }
         } else {
@@ -100,12 +242,12 @@ public final class Parser {
      */
     public Ast.Global parseMutable() throws ParseException {
         //TODO
-        match("VAR");
+        match(Token.Kind.VAR);
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected identifier after VAR", tokens.get(-1).getIndex());
         }
         String identifier = tokens.get(-1).getLiteral();
-        if (!match(":")) {
+        if (!match(Token.Kind.COLON)) {
             throw new ParseException("Expected ':' after identifier", tokens.get(-1).getIndex());
         }
         if (!match(Token.Type.IDENTIFIER)) {
@@ -113,10 +255,10 @@ public final class Parser {
         }
         String typeName = tokens.get(-1).getLiteral();
         Optional<Ast.Expression> value = Optional.empty();
-        if (match("=")) {
+        if (match(Token.Kind.EQUALS)) {
             value = Optional.of(parseExpression());
         }
-        match(";");
+        match(Token.Kind.SEMICOLON);
         return new Ast.Global(identifier, typeName, true, value);
     }
 
@@ -126,13 +268,13 @@ public final class Parser {
      */
     public Ast.Global parseImmutable() throws ParseException {
         //TODO
-        match("VAL");
+        match(Token.Kind.VAL);
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected identifier after VAL", tokens.get(-1).getIndex());
         }
         String identifier = tokens.get(-1).getLiteral();
 
-        if (!match(":")) {
+        if (!match(Token.Kind.COLON)) {
             throw new ParseException("Expected ':' after identifier for type annotation", tokens.get(-1).getIndex());
         }
         if (!match(Token.Type.IDENTIFIER)) {
@@ -140,12 +282,12 @@ public final class Parser {
         }
         String typeName = tokens.get(-1).getLiteral();
 
-        if (!match("=")) {
+        if (!match(Token.Kind.EQUALS)) {
             throw new ParseException("Expected '=' after type annotation", tokens.get(-1).getIndex());
         }
         Ast.Expression value = parseExpression();
 
-        match(";");
+        match(Token.Kind.SEMICOLON);
         return new Ast.Global(identifier, typeName, false, Optional.of(value));
     }
 
@@ -154,7 +296,7 @@ public final class Parser {
      * next tokens start a method, aka {@code FUN}.
      */
     public Ast.Function parseFunction() throws ParseException {
-        match("FUN");
+        match(Token.Kind.FUN);
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected identifier after FUN", tokens.get(-1).getIndex());
         }
@@ -163,15 +305,15 @@ public final class Parser {
         List<String> parameters = new ArrayList<>();
         List<String> parameterTypeNames = new ArrayList<>();
         //parameters
-        if (match("(")) {
+        if (match(Token.Kind.LEFT_PAREN)) {
             // check for parameters
-            while (!peek(")")) {
+            while (!peek(Token.Kind.RIGHT_PAREN)) {
                 if (!match(Token.Type.IDENTIFIER)) {
                     throw new ParseException("Expected identifier for function parameter", tokens.get(-1).getIndex());
                 }
                 String parameterName = tokens.get(-1).getLiteral();
 
-                if (!match(":")) {
+                if (!match(Token.Kind.COLON)) {
                     throw new ParseException("Expected ':' after parameter name for type annotation", tokens.get(-1).getIndex());
                 }
                 if (!match(Token.Type.IDENTIFIER)) {
@@ -182,27 +324,27 @@ public final class Parser {
                 parameters.add(parameterName);
                 parameterTypeNames.add(parameterTypeName);
 
-                if (!match(",")) { //stop parsing parameters
+                if (!match(Token.Kind.COMMA)) { //stop parsing parameters
                     break;
                 }
             }
-            if (!match(")")) {
+            if (!match(Token.Kind.RIGHT_PAREN)) {
                 throw new ParseException("Expected ')' after parameters", tokens.get(-1).getIndex());
             }
         }
 
         String returnTypeName = "Any";
-        if (match(":")) {
+        if (match(Token.Kind.COLON)) {
             if (!match(Token.Type.IDENTIFIER)) {
                 throw new ParseException("Expected type identifier after ':' for return type", tokens.get(-1).getIndex());
             }
             returnTypeName = tokens.get(-1).getLiteral();
         }
 
-        match("DO");
+        match(Token.Kind.DO);
         // parse body of function
         List<Ast.Statement> statements = parseBlock();
-        match("END");
+        match(Token.Kind.END);
         return new Ast.Function(functionName, parameters, parameterTypeNames,  Optional.of(returnTypeName), statements);
     }
 
@@ -212,16 +354,7 @@ public final class Parser {
      */
     public List<Ast.Statement> parseBlock() throws ParseException {
         //TODO
-        List<Ast.Statement> statements = new ArrayList<>();
-        while (!match("END")) {
-            int start = tokens.index;
-            Ast.Statement statement = parseStatement();
-            if (tokens.index == start) {
-                throw new ParseException("Potential Error Encountered", tokens.get(start).getIndex());
-            }
-            statements.add(statement);
-        }
-        return statements;
+        return parseNested(new Frame(Token.Kind.NONE, null)).statements;
     }
 
     /**
@@ -231,38 +364,272 @@ public final class Parser {
      */
     public Ast.Statement parseStatement() throws ParseException {
         //TODO  2b
-        try {
-            if (peek("LET")) {
+        Token.Kind kind = tokens.has(0) ? tokens.getKind(0) : Token.Kind.NONE;
+        switch (kind) {
+            case IF:
+            case WHILE:
+            case SWITCH:
+                return (Ast.Statement) parseNestedStatement(kind);
+            default:
+                return parseSimpleStatement();
+        }
+    }
+
+    /**
+     * Parses a statement that does not contain a block: a declaration, return,
+     * expression or assignment statement.
+     */
+    private Ast.Statement parseSimpleStatement() throws ParseException {
+        switch (tokens.has(0) ? tokens.getKind(0) : Token.Kind.NONE) {
+            case LET:
                 return parseDeclarationStatement();
-            } else if (peek("SWITCH")) {
-                return parseSwitchStatement();
-            } else if (peek("IF")) {
-                return parseIfStatement();
-            } else if (peek("WHILE")) {
-                return parseWhileStatement();
-            } else if (peek("RETURN")) {
+            case RETURN:
                 return parseReturnStatement();
-            } else {
-                Ast.Expression expression = parseExpression();
-                if (match("=")) {
-                    if (!tokens.has(0)) {
-                        throw new ParseException("Expected expression after '='", tokens.get(-1).getIndex());
+            default:
+                break;
+        }
+        Ast.Expression expression = parseExpression();
+        if (match(Token.Kind.EQUALS)) {
+            if (!tokens.has(0)) {
+                throw new ParseException("Expected expression after '='", tokens.get(-1).getIndex());
+            }
+            Ast.Expression right = parseExpression();
+            if (!match(Token.Kind.SEMICOLON)) {
+                throw new ParseException("Expected ';' after expression", tokens.get(-1).getIndex());
+            }
+            return new Ast.Statement.Assignment(expression, right);
+        } else if (!match(Token.Kind.SEMICOLON)) {
+            throw new ParseException("Expected ';' after expression", tokens.get(-1).getIndex());
+        }
+        return new Ast.Statement.Expression(expression);
+    }
+
+    /**
+     * Parses an {@code IF}, {@code WHILE} or {@code SWITCH} statement (or a
+     * {@code CASE}) starting at the next token.
+     */
+    private Ast parseNestedStatement(Token.Kind kind) throws ParseException {
+        Frame root;
+        try {
+            root = openFrame(kind);
+        } catch (ParseException e) {
+            throw wrap(kind, e);
+        }
+        return parseNested(root).build();
+    }
+
+    /**
+     * Parses the contents of the given frame up to and including its
+     * {@code END}, and returns it. Nested {@code IF}, {@code WHILE} and
+     * {@code SWITCH} statements are pushed on an explicit stack rather than
+     * parsed recursively, so nesting depth is bounded by the heap instead of
+     * the thread stack.
+     *
+     * An error is prefixed once by the innermost enclosing statement (such as
+     * {@code "Error if statement: "}) instead of once per level. When
+     * recovering (see {@link #parseSource(List)}), an error in a statement is
+     * reported without a prefix, since it does not leave its block, and
+     * parsing continues after it; an error opening or closing a frame is
+     * prefixed by that statement and abandons the frame.
+     */
+    private Frame parseNested(Frame root) throws ParseException {
+        ArrayDeque<Frame> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (true) {
+            Frame frame = stack.peek();
+            Token.Kind opening = Token.Kind.NONE;
+            boolean closing = frame.kind == Token.Kind.SWITCH;
+            try {
+                if (frame.kind == Token.Kind.SWITCH) {
+                    if (peek(Token.Kind.CASE) || peek(Token.Kind.DEFAULT)) {
+                        stack.push(openFrame(Token.Kind.CASE));
+                        continue;
+                    } else if (!match(Token.Kind.END)) {
+                        throw new ParseException("Expected 'END' after switch statement", tokens.get(-1).getIndex());
                     }
-                    Ast.Expression right = parseExpression();
-                    if (!match(";")) {
-                        throw new ParseException("Expected ';' after expression", tokens.get(-1).getIndex());
+                } else {
+                    closing = true;
+                    boolean end = closeFrame(frame);
+                    closing = false;
+                    if (!end) {
+                        Token.Kind kind = tokens.has(0) ? tokens.getKind(0) : Token.Kind.NONE;
+                        if (kind == Token.Kind.IF || kind == Token.Kind.WHILE || kind == Token.Kind.SWITCH) {
+                            opening = kind;
+                            stack.push(openFrame(kind));
+                        } else {
+                            frame.add(parseSimpleStatement());
+                        }
+                        continue;
+                    }
+                }
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return frame;
+                }
+                stack.peek().add(frame.build());
+            } catch (ParseException e) {
+                if (diagnostics == null) {
+                    throw wrap(opening != Token.Kind.NONE ? opening : enclosing(stack), e);
+                } else if (opening != Token.Kind.NONE || closing) {
+                    diagnostics.add(wrap(opening != Token.Kind.NONE ? opening : enclosing(stack), e));
+                } else {
+                    diagnostics.add(e);
+                }
+                if (closing) {
+                    do {
+                        stack.pop();
+                    } while (!stack.isEmpty() && stack.peek().kind == Token.Kind.SWITCH);
+                    if (stack.isEmpty()) {
+                        throw Recovery.INSTANCE;
                     }
-                    return new Ast.Statement.Assignment(expression, right);
-                } else if (!match(";")) {
-                    throw new ParseException("Expected ';' after expression", tokens.get(-1).getIndex());
                 }
-                return new Ast.Statement.Expression(expression);
+                synchronizeStatement();
             }
-        } catch (ParseException pe) {
-            throw new ParseException(pe.getMessage(), pe.getIndex());
         }
     }
 
+    /**
+     * Parses the header of a nested statement through its {@code DO} (or the
+     * {@code :} of a case) and returns a frame for its body.
+     */
+    private Frame openFrame(Token.Kind kind) throws ParseException {
+        switch (kind) {
+            case IF: {
+                //'IF' expression 'DO' block ('ELSE' block)? 'END'
+                if (!match(Token.Kind.IF)) {
+                    throw new ParseException("Invalid statement", tokens.get(-1).getIndex());
+                }
+                Ast.Expression condition = parseExpression();
+                if (!match(Token.Kind.DO)) {
+                    throw new ParseException("Expected 'DO' after IF condition", tokens.get(-1).getIndex());
+                }
+                return new Frame(kind, condition);
+            }
+            case WHILE: {
+                match(Token.Kind.WHILE);
+                Ast.Expression condition = parseExpression();
+                if (!match(Token.Kind.DO)) {
+                    throw new ParseException("Expected 'DO' after 'WHILE' condition", tokens.get(-1).getIndex());
+                }
+                return new Frame(kind, condition);
+            }
+            case SWITCH: {
+                //'SWITCH' expression ('CASE' expression ':' block)* 'DEFAULT' block 'END'
+                match(Token.Kind.SWITCH);
+                return new Frame(kind, parseExpression());
+            }
+            default: {
+                Ast.Expression value = null;
+                if (match(Token.Kind.CASE)) {
+                    value = parseExpression();
+                    if (!match(Token.Kind.COLON)) {
+                        throw new ParseException("Expected ':' after case expression", tokens.get(-1).getIndex());
+                    }
+                } else if (match(Token.Kind.DEFAULT)) {
+                    if (!match(Token.Kind.COLON)) {
+                        throw new ParseException("Expected ':' after DEFAULT", tokens.get(-1).getIndex());
+                    }
+                }
+                return new Frame(Token.Kind.CASE, value);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the frame's {@code END} was matched, moving an if
+     * statement on to its else block when the {@code ELSE} is reached. At the
+     * end of input only a while statement reports its missing {@code END};
+     * other blocks go on to parse a statement, which reports the end of input.
+     */
+    private boolean closeFrame(Frame frame) throws ParseException {
+        if (frame.kind == Token.Kind.IF && frame.then == null && match(Token.Kind.ELSE)) {
+            frame.then = frame.statements;
+            frame.statements = new ArrayList<>();
+        }
+        if (match(Token.Kind.END)) {
+            return true;
+        } else if (!tokens.has(0) && frame.kind == Token.Kind.WHILE) {
+            throw new ParseException("Missing 'END' after 'WHILE' block", tokens.get(-1).getIndex());
+        }
+        return false;
+    }
+
+    private static Token.Kind enclosing(ArrayDeque<Frame> stack) {
+        for (Frame frame : stack) {
+            if (frame.kind == Token.Kind.IF || frame.kind == Token.Kind.WHILE || frame.kind == Token.Kind.SWITCH) {
+                return frame.kind;
+            }
+        }
+        return Token.Kind.NONE;
+    }
+
+    /**
+     * Prefixes an error with the statement it occurred in.
+     */
+    private ParseException wrap(Token.Kind kind, ParseException e) {
+        switch (kind) {
+            case IF:
+                return new ParseException("Error if statement: " + e.getMessage(), tokens.get(-1).getIndex());
+            case WHILE:
+                return new ParseException("Error in while: " + e.getMessage(), e.getIndex());
+            case SWITCH:
+                return new ParseException("Error switch statement: " + e.getMessage(), tokens.get(-1).getIndex());
+            default:
+                return e;
+        }
+    }
+
+    /**
+     * Skips past the next {@code ;}, or up to the next {@code END}. Reaching a
+     * top-level declaration or the end of input abandons the enclosing
+     * declaration.
+     */
+    private void synchronizeStatement() {
+        while (tokens.has(0)) {
+            switch (tokens.getKind(0)) {
+                case SEMICOLON:
+                    tokens.advance();
+                    return;
+                case END:
+                    return;
+                case FUN:
+                case VAR:
+                case VAL:
+                case LIST:
+                    throw Recovery.INSTANCE;
+                default:
+                    tokens.advance();
+            }
+        }
+        throw Recovery.INSTANCE;
+    }
+
+    /**
+     * Skips up to the next top-level declaration or the end of input.
+     */
+    private void synchronizeDeclaration() {
+        while (tokens.has(0)) {
+            switch (tokens.getKind(0)) {
+                case FUN:
+                case VAR:
+                case VAL:
+                case LIST:
+                    return;
+                default:
+                    tokens.advance();
+            }
+        }
+    }
+
+    private ParseException endOfInput() {
+        int index = 0;
+        if (tokens.has(-1) && tokens.index > 0) {
+            Token last = tokens.get(-1);
+            index = last.getIndex() + last.getLength();
+        }
+        return new ParseException("Unexpected end of input", index);
+    }
+
     /**
      * Parses a declaration statement from the {@code statement} rule. This
      * method should only be called if the next tokens start a declaration
@@ -271,14 +638,14 @@ public final class Parser {
     public Ast.Statement.Declaration parseDeclarationStatement() throws ParseException {
         //TODO
         // 'LET' identifier ('=' expression)? ';'
-        match("LET");
+        match(Token.Kind.LET);
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected Identifier", tokens.get(-1).getIndex());
         }
         String name = tokens.get(-1).getLiteral(); //identifier
 
         Optional<String> typeName = Optional.empty();
-        if (match(":")) {
+        if (match(Token.Kind.COLON)) {
             if (!match(Token.Type.IDENTIFIER)) {
                 throw new ParseException("Expected type identifier after ':'", tokens.get(-1).getIndex());
             }
@@ -286,10 +653,10 @@ public final class Parser {
         }
 
         Optional<Ast.Expression> value = Optional.empty();
-        if (match("=")) {
+        if (match(Token.Kind.EQUALS)) {
             value = Optional.of(parseExpression());
         }
-        if (!match(";")) {
+        if (!match(Token.Kind.SEMICOLON)) {
             throw new ParseException("Expected ';'", tokens.get(-1).getIndex());
         }
         return new Ast.Statement.Declaration(name, typeName, value);
@@ -302,36 +669,7 @@ public final class Parser {
      */
     public Ast.Statement.If parseIfStatement() throws ParseException {
         //TODO 'IF' expression 'DO' block ('ELSE' block)? 'END'
-        try {
-            if (match("IF")) {
-                Ast.Expression condition = parseExpression();
-                if (!match("DO")) {
-                    throw new ParseException("Expected 'DO' after IF condition", tokens.get(-1).getIndex());
-                }
-                List<Ast.Statement> then = new ArrayList<>(); // then block
-                List<Ast.Statement> el = new ArrayList<>(); //ELSE
-                //first match +parse all thens
-                while (!peek("ELSE") && !peek("END")) {
-                    then.add(parseStatement());
-                }
-                if (match("ELSE")) {
-                    while (!peek("END")) {
-                        el.add(parseStatement());
-                    }
-                }
-                if(match("END")){
-                    return new Ast.Statement.If(condition, then, el);
-                }
-                else {
-                    throw new ParseException("Missing END", tokens.get(-1).getIndex());
-                }
-            }
-            else {
-                throw new ParseException("Invalid statement", tokens.get(-1).getIndex());
-            }
-        } catch (ParseException e) {
-            throw new ParseException("Error if statement: " + e.getMessage(), tokens.get(-1).getIndex());
-        }
+        return (Ast.Statement.If) parseNestedStatement(Token.Kind.IF);
     }
 
     /**
@@ -341,38 +679,7 @@ public final class Parser {
      */
     public Ast.Statement.Switch parseSwitchStatement() throws ParseException {
         //TODO
-        //'SWITCH' expression ('CASE' expression ':' block)* 'DEFAULT' block 'END'
-        try {
-            match("SWITCH");
-            Ast.Expression condition = parseExpression();
-            List<Ast.Statement.Case> cases = new ArrayList<>();
-
-            while (peek("CASE") || peek("DEFAULT")) {
-                Optional<Ast.Expression> caseExpr = Optional.empty();
-                if (match("CASE")) {
-                    caseExpr = Optional.of(parseExpression());
-                    if (!match(":")) {
-                        throw new ParseException("Expected ':' after case expression", tokens.get(-1).getIndex());
-                    }
-                } else if (match("DEFAULT")) {
-                    if (!match(":")) {
-                        throw new ParseException("Expected ':' after DEFAULT", tokens.get(-1).getIndex());
-                    }
-                }
-
-                List<Ast.Statement> caseStatements = parseBlock();
-                cases.add(new Ast.Statement.Case(caseExpr, caseStatements));
-            }
-
-            if (!match("END")) {
-                throw new ParseException("Expected 'END' after switch statement", tokens.get(-1).getIndex());
-            }
-
-            return new Ast.Statement.Switch(condition, cases);
-        }
-        catch (ParseException e) {
-            throw new ParseException("Error switch statement: " + e.getMessage(), tokens.get(-1).getIndex());
-        }
+        return (Ast.Statement.Switch) parseNestedStatement(Token.Kind.SWITCH);
     }
 
 
@@ -384,16 +691,7 @@ public final class Parser {
     public Ast.Statement.Case parseCaseStatement() throws ParseException {
         //TODO
         //'CASE' expression ':' block
-        try {
-            match("CASE");
-            Ast.Expression caseExpr = parseExpression();
-            match(":");
-            List<Ast.Statement> caseBlock = parseBlock();
-            return new Ast.Statement.Case(Optional.of(caseExpr), caseBlock);
-        }
-        catch (ParseException pe) {
-            throw new ParseException(pe.getMessage(), pe.getIndex());
-        }
+        return (Ast.Statement.Case) parseNestedStatement(Token.Kind.CASE);
     }
 
     /**
@@ -403,28 +701,7 @@ public final class Parser {
      */
     public Ast.Statement.While parseWhileStatement() throws ParseException {
         //TODO
-        try {
-            match("WHILE");
-            Ast.Expression condition = parseExpression();
-
-            if (!match("DO")) {
-                throw new ParseException("Expected 'DO' after 'WHILE' condition", tokens.get(-1).getIndex());
-            }
-
-            List<Ast.Statement> statements = new ArrayList<>();
-            while (!peek("END") && tokens.has(0)) {
-                statements.add(parseStatement());
-            }
-
-            if (!match("END")) {
-                throw new ParseException("Missing 'END' after 'WHILE' block", tokens.get(-1).getIndex());
-            }
-
-            return new Ast.Statement.While(condition, statements);
-        }
-        catch (ParseException e) {
-            throw new ParseException("Error in while: " + e.getMessage(), e.getIndex());
-        }
+        return (Ast.Statement.While) parseNestedStatement(Token.Kind.WHILE);
     }
 
     /**
@@ -433,83 +710,72 @@ public final class Parser {
      * {@code RETURN}.
      */
     public Ast.Statement.Return parseReturnStatement() throws ParseException { //TODO
-        match("RETURN");
+        match(Token.Kind.RETURN);
         Ast.Expression expression = parseExpression();
-        match(";");
+        match(Token.Kind.SEMICOLON);
         return new Ast.Statement.Return(expression);
     }
 
     /**
      * Parses the {@code expression} rule.
+     *
+     * Instead of one method per precedence level, binary operators are looked
+     * up in {@link #PRECEDENCE} and reduced with explicit operand and operator
+     * stacks, so a literal or identifier costs one call to {@link
+     * #parsePrimaryExpression()} and nesting depth (including parenthesized
+     * groups) does not use the Java stack. All operators are left associative.
      */
     public Ast.Expression parseExpression() throws ParseException { //TODO 2a
-        return parseLogicalExpression();
-    }
-
-    /**
-     * Parses the {@code logical-expression} rule.
-     */
-    public Ast.Expression parseLogicalExpression() throws ParseException {
-        //TODO 2a
-        Ast.Expression currentExpression = parseComparisonExpression();
-        while (match("&&") || match("||")) {
-            String operation = tokens.get(-1).getLiteral();
-            if (!tokens.has(0)) {
-                throw new ParseException("Expected an expression after operator '" + operation + "'", tokens.index);
+        ArrayDeque<Ast.Expression> operands = new ArrayDeque<>();
+        ArrayDeque<Token.Kind> operators = new ArrayDeque<>();
+        int groups = 0;
+        while (true) {
+            while (match(Token.Kind.LEFT_PAREN)) {
+                operators.push(Token.Kind.LEFT_PAREN);
+                groups++;
             }
-            Ast.Expression rightExpression = parseComparisonExpression();
-            currentExpression = new Ast.Expression.Binary(operation, currentExpression, rightExpression);
-        }
-        return currentExpression;
-    }
-
-    /**
-     * Parses the {@code comparison-expression} rule.
-     */
-    public Ast.Expression parseComparisonExpression() throws ParseException {
-        //TODO 2a
-        Ast.Expression currentExpression = parseAdditiveExpression();
-        while (match("!=") || match("==") || match(">=") || match(">") || match("<=") || match("<")) {
-            String operation = tokens.get(-1).getLiteral();
-            if (!tokens.has(0)) {
-                throw new ParseException("Expected an expression after operator '" + operation + "'", tokens.index);
+            operands.push(parsePrimaryExpression());
+            while (true) {
+                Token.Kind kind = tokens.has(0) ? tokens.getKind(0) : Token.Kind.NONE;
+                Integer precedence = PRECEDENCE.get(kind);
+                if (precedence != null) {
+                    while (!operators.isEmpty() && operators.peek() != Token.Kind.LEFT_PAREN
+                            && PRECEDENCE.get(operators.peek()) >= precedence) {
+                        reduce(operands, operators.pop());
+                    }
+                    tokens.advance();
+                    operators.push(kind);
+                    if (!tokens.has(0)) {
+                        throw new ParseException("Expected an expression after operator '" + kind.getLiteral() + "'", tokens.index);
+                    }
+                    break;
+                } else if (groups > 0) {
+                    while (operators.peek() != Token.Kind.LEFT_PAREN) {
+                        reduce(operands, operators.pop());
+                    }
+                    operators.pop();
+                    groups--;
+                    operands.push(new Ast.Expression.Group(operands.pop()));
+                    if (match(Token.Kind.RIGHT_BRACKET)) {
+                        throw new ParseException("Invalid Closing Parenthesis", tokens.get(-1).getIndex());
+                    }
+                    if (!match(Token.Kind.RIGHT_PAREN)) {
+                        throw new ParseException("Missing )", tokens.get(-1).getIndex());
+                    }
+                } else {
+                    while (!operators.isEmpty()) {
+                        reduce(operands, operators.pop());
+                    }
+                    return operands.pop();
+                }
             }
-            Ast.Expression rightExpr = parseAdditiveExpression();
-            currentExpression = new Ast.Expression.Binary(operation, currentExpression, rightExpr);
         }
-        return currentExpression;
     }
 
-    /**
-     * Parses the {@code additive-expression} rule.
-     */
-    public Ast.Expression parseAdditiveExpression() throws ParseException {
-        Ast.Expression expression=parseMultiplicativeExpression(); //TODO 2a
-        while(match("+")||match("-")){
-            String add= tokens.get(-1).getLiteral(); //store operator
-            if (!tokens.has(0)) {
-                throw new ParseException("Expected an expression after operator '" + add + "'", tokens.index);
-            }
-            Ast.Expression right=parseMultiplicativeExpression();
-            expression=new Ast.Expression.Binary(add,expression,right);
-        }
-        return expression;
-    }
-
-    /**
-     * Parses the {@code multiplicative-expression} rule.
-     */
-    public Ast.Expression parseMultiplicativeExpression() throws ParseException {
-        Ast.Expression expression=parsePrimaryExpression(); //TODO 2a
-        while(match("/")||match("*")){
-            String multi= tokens.get(-1).getLiteral();
-            if (!tokens.has(0)) {
-                throw new ParseException("Expected an expression after operator '" + multi + "'", tokens.index);
-            }
-            Ast.Expression right=parsePrimaryExpression();
-            expression=new Ast.Expression.Binary(multi,expression,right);
-        }
-        return expression;
+    private static void reduce(ArrayDeque<Ast.Expression> operands, Token.Kind operator) {
+        Ast.Expression right = operands.pop();
+        Ast.Expression left = operands.pop();
+        operands.push(new Ast.Expression.Binary(operator.getLiteral(), left, right));
     }
 
     /**
@@ -519,11 +785,11 @@ public final class Parser {
      * not strictly necessary.
      */
     public Ast.Expression parsePrimaryExpression() throws ParseException { //TODO 2a
-        if (match("NIL")) {
+        if (match(Token.Kind.NIL)) {
             return new Ast.Expression.Literal(null);
-        } else if (match("TRUE")) {
+        } else if (match(Token.Kind.TRUE)) {
             return new Ast.Expression.Literal(true);
-        } else if (match("FALSE")) {
+        } else if (match(Token.Kind.FALSE)) {
             return new Ast.Expression.Literal(false);
         } else if (match(Token.Type.INTEGER)) {
             BigInteger in = new BigInteger(tokens.get(-1).getLiteral());
@@ -546,12 +812,12 @@ public final class Parser {
             str = str.substring(1, str.length() - 1);
             return new Ast.Expression.Literal(str);
         }
-        else if (match("(")) {
+        else if (match(Token.Kind.LEFT_PAREN)) {
             Ast.Expression.Group expression = new Ast.Expression.Group(parseExpression());
-            if (match("]")) {
+            if (match(Token.Kind.RIGHT_BRACKET)) {
                 throw new ParseException("Invalid Closing Parenthesis", tokens.get(-1).getIndex());
             }
-            if (!match(")")) {
+            if (!match(Token.Kind.RIGHT_PAREN)) {
                 throw new ParseException("Missing )", tokens.get(-1).getIndex());
             }
 
@@ -561,27 +827,29 @@ public final class Parser {
         else if (peek(Token.Type.IDENTIFIER)) {
             String id = tokens.get(0).getLiteral();
             match(Token.Type.IDENTIFIER);
-            if (match("(")) {
+            if (match(Token.Kind.LEFT_PAREN)) {
                 List<Ast.Expression> arguments = new ArrayList<>();
-                if (!match(")")) {
+                if (!match(Token.Kind.RIGHT_PAREN)) {
                     do {
                         arguments.add(parseExpression());
-                    } while (match(","));
-                    if (!match(")")) {
+                    } while (match(Token.Kind.COMMA));
+                    if (!match(Token.Kind.RIGHT_PAREN)) {
                         throw new ParseException("Missing closing parenthesis", tokens.get(-1).getIndex());
                     }
                 }
                 return new Ast.Expression.Function(id, arguments);
             }
             // check for access to array, uses Optional
-            if (match("[")) {
+            if (match(Token.Kind.LEFT_BRACKET)) {
                 Ast.Expression index = parseExpression();
-                if (!match("]")) {
+                if (!match(Token.Kind.RIGHT_BRACKET)) {
                     throw new ParseException("Missing closing bracket", tokens.get(-1).getIndex());
                 }
                 return new Ast.Expression.Access(Optional.of(index), id);
             }
             return new Ast.Expression.Access(Optional.empty(), id);
+        } else if (!tokens.has(0)) {
+            throw endOfInput();
         }
         throw new ParseException("Unexpected token: " + tokens.get(0).getType(), tokens.get(0).getIndex());
     }
@@ -590,22 +858,29 @@ public final class Parser {
      * As in the lexer, returns {@code true} if the current sequence of tokens
      * matches the given patterns. Unlike the lexer, the pattern is not a regex;
      * instead it is either a {@link Token.Type}, which matches if the token's
-     * type is the same, or a {@link String}, which matches if the token's
-     * literal is the same.
+     * type is the same, a {@link Token.Kind}, which matches if the token is
+     * that keyword or operator, or a {@link String}, which matches if the
+     * token's literal is the same.
      *
      * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
-     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
+     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}, and
+     * {@code Token(IDENTIFIER, "END")} is also matched by
+     * {@code peek(Token.Kind.END)}.
      */
     private boolean peek(Object... patterns) {
         for (int i = 0; i < patterns.length; i++) {
             if (!tokens.has(i)) {
                 return false;
-            }else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType()) {
+            } else if (patterns[i] instanceof Token.Kind) {
+                if (patterns[i] != tokens.getKind(i)) {
+                    return false;
+                }
+            } else if (patterns[i] instanceof Token.Type) {
+                if (patterns[i] != tokens.getType(i)) {
                     return false;
                 }
             } else if (patterns[i] instanceof String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
+                if (!tokens.literalEquals(i, (String) patterns[i])) {
                     return false;
                 }
             } else
@@ -627,27 +902,233 @@ public final class Parser {
         return peek;
     }
 
-    private static final class TokenStream {
+    /**
+     * A block being parsed by {@link #parseNested(Frame)}: a plain block
+     * ({@code NONE}), or the body of an {@code IF}, {@code WHILE},
+     * {@code SWITCH} or {@code CASE}.
+     */
+    private static final class Frame {
+
+        private final Token.Kind kind;
+        private final Ast.Expression condition;
+        private List<Ast.Statement> statements = new ArrayList<>();
+        private List<Ast.Statement> then = null;
+        private final List<Ast.Statement.Case> cases;
+
+        private Frame(Token.Kind kind, Ast.Expression condition) {
+            this.kind = kind;
+            this.condition = condition;
+            this.cases = kind == Token.Kind.SWITCH ? new ArrayList<>() : null;
+        }
+
+        private void add(Ast ast) {
+            if (kind == Token.Kind.SWITCH) {
+                cases.add((Ast.Statement.Case) ast);
+            } else {
+                statements.add((Ast.Statement) ast);
+            }
+        }
+
+        private Ast build() {
+            switch (kind) {
+                case IF:
+                    return then == null
+                            ? new Ast.Statement.If(condition, statements, new ArrayList<>())
+                            : new Ast.Statement.If(condition, then, statements);
+                case WHILE:
+                    return new Ast.Statement.While(condition, statements);
+                case SWITCH:
+                    return new Ast.Statement.Switch(condition, cases);
+                case CASE:
+                    return new Ast.Statement.Case(Optional.ofNullable(condition), statements);
+                default:
+                    throw new IllegalStateException("A block is not a statement.");
+            }
+        }
+
+    }
+
+    /**
+     * Thrown while recovering to abandon the enclosing declaration once its
+     * error has been reported. It is not a {@link ParseException}, so the
+     * statement methods that rewrap errors let it pass through untouched.
+     */
+    private static final class Recovery extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final Recovery INSTANCE = new Recovery();
+
+        private Recovery() {
+            super(null, null, false, false);
+        }
+
+    }
+
+    /**
+     * The result of {@link #parseIncremental(List, Snapshot)}: the parsed
+     * source along with the token range of each top-level declaration, which
+     * the next incremental parse uses to find declarations it can reuse.
+     */
+    public static final class Snapshot {
 
         private final List<Token> tokens;
-        private int index = 0;
+        private final List<Ast> declarations = new ArrayList<>();
+        private final Map<Ast, Integer> starts = new IdentityHashMap<>();
+        private final Map<Ast, Integer> lengths = new IdentityHashMap<>();
+        private Map<String, List<Ast>> byName = null;
+        private Ast.Source source;
+        private int reused = 0;
 
-        private TokenStream(List<Token> tokens) {
+        private Snapshot(List<Token> tokens) {
             this.tokens = tokens;
         }
 
+        public Ast.Source getSource() {
+            return source;
+        }
+
+        /**
+         * Returns the number of declarations reused from the previous snapshot.
+         */
+        public int getReused() {
+            return reused;
+        }
+
+        private void record(Ast declaration, int start, int length) {
+            declarations.add(declaration);
+            starts.put(declaration, start);
+            lengths.put(declaration, length);
+        }
+
+        private int lengthOf(Ast declaration) {
+            return lengths.get(declaration);
+        }
+
+        /**
+         * Returns a declaration from this snapshot whose tokens (and the
+         * following lookahead token) match {@code tokens} at {@code start}, or
+         * {@code null} if there is none.
+         */
+        private Ast reuse(List<Token> other, int start) {
+            if (start + 1 >= other.size()) {
+                return null;
+            }
+            if (byName == null) {
+                byName = new HashMap<>();
+                for (Ast declaration : declarations) {
+                    byName.computeIfAbsent(nameOf(declaration), name -> new ArrayList<>()).add(declaration);
+                }
+            }
+            for (Ast candidate : byName.getOrDefault(other.get(start + 1).getLiteral(), Collections.emptyList())) {
+                if (matches(other, start, starts.get(candidate), lengths.get(candidate))) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        private boolean matches(List<Token> other, int otherStart, int start, int length) {
+            if (otherStart + length > other.size()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (!sameToken(tokens.get(start + i), other.get(otherStart + i))) {
+                    return false;
+                }
+            }
+            boolean hasNext = start + length < tokens.size();
+            boolean otherHasNext = otherStart + length < other.size();
+            return hasNext == otherHasNext && (!hasNext || sameToken(tokens.get(start + length), other.get(otherStart + length)));
+        }
+
+        private static boolean sameToken(Token a, Token b) {
+            return a.getType() == b.getType() && a.textEquals(b);
+        }
+
+        private String nameOf(Ast declaration) {
+            return tokens.get(starts.get(declaration) + 1).getLiteral();
+        }
+
+    }
+
+    /**
+     * A window over the token source. Tokens are either read directly from the
+     * columns of a {@link TokenBuffer}, or pulled from an iterator on demand
+     * and kept in a small ring buffer, so only the lookahead (and the previous
+     * token for error reporting) is retained in memory.
+     */
+    private static final class TokenStream {
+
+        private static final int CAPACITY = 8;
+
+        private final TokenBuffer columns;
+        private final Iterator<Token> source;
+        private final Token[] buffer;
+        private int index = 0;
+        private int filled = 0;
+
+        private TokenStream(Iterator<Token> source) {
+            this.columns = null;
+            this.source = source;
+            this.buffer = new Token[CAPACITY];
+        }
+
+        private TokenStream(TokenBuffer columns) {
+            this.columns = columns;
+            this.source = null;
+            this.buffer = null;
+        }
+
         /**
          * Returns true if there is a token at index + offset.
          */
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            int target = index + offset;
+            if (columns != null) {
+                return target < columns.size();
+            }
+            while (filled <= target && source.hasNext()) {
+                buffer[filled++ & (CAPACITY - 1)] = source.next();
+            }
+            return target < filled;
         }
 
         /**
          * Gets the token at index + offset.
          */
         public Token get(int offset) {
-            return tokens.get(index + offset);
+            int target = index + offset;
+            if (columns != null) {
+                return columns.get(target);
+            } else if (target < 0 || !has(offset)) {
+                throw new IndexOutOfBoundsException("Index " + target + " out of bounds for length " + filled);
+            } else if (target < filled - CAPACITY) {
+                throw new IndexOutOfBoundsException("Index " + target + " is outside of the lookahead window");
+            }
+            return buffer[target & (CAPACITY - 1)];
+        }
+
+        /**
+         * Gets the type of the token at index + offset.
+         */
+        public Token.Type getType(int offset) {
+            return columns != null ? columns.getType(index + offset) : get(offset).getType();
+        }
+
+        /**
+         * Gets the keyword or operator kind of the token at index + offset.
+         */
+        public Token.Kind getKind(int offset) {
+            return columns != null ? columns.getKind(index + offset) : get(offset).getKind();
+        }
+
+        /**
+         * Returns true if the literal of the token at index + offset equals the
+         * given string, without creating the literal when reading columns.
+         */
+        public boolean literalEquals(int offset, String literal) {
+            return columns != null ? columns.literalEquals(index + offset, literal) : literal.equals(get(offset).getLiteral());
         }
 
         /**
@@ -659,4 +1140,4 @@ public final class Parser {
 
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,196 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each local variable of a function a slot in the function's frame,
+ * so the {@link Interpreter} can keep locals in an array and access them by
+ * index instead of looking them up by name through a chain of {@link Scope}s.
+ * Run it after the {@link Analyzer}, which has already checked that every
+ * name is defined; the resolver only records where.
+ *
+ * A frame holds the parameters followed by the variables declared in the
+ * body. Blocks do not get frames of their own: the variables of a block take
+ * the next free slots and give them back when the block ends, so sibling
+ * blocks share slots and a frame has as many slots as there are variables in
+ * scope at once. Since functions do not nest, a variable is either in the
+ * current frame or a global, so the usual (depth, slot) address comes down to
+ * a slot, with -1 for globals, which are still looked up by name.
+ *
+ * Resolved functions follow the analyzer's lexical scoping, like the {@link
+ * VirtualMachine}: they see the globals but not their caller's locals.
+ * Slots are not written by the {@link AstSerializer}, so resolve a loaded
+ * tree again before interpreting it.
+ */
+public final class Resolver implements Ast.Visitor<Void> {
+
+    private final Deque<Map<String, Integer>> blocks = new ArrayDeque<>();
+    private int next = 0;
+    private int size = 0;
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        for (Ast.Global global : ast.getGlobals()) {
+            visit(global);
+        }
+        for (Ast.Function function : ast.getFunctions()) {
+            visit(function);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Global ast) {
+        ast.getValue().ifPresent(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Function ast) {
+        next = 0;
+        size = 0;
+        blocks.push(new HashMap<>());
+        try {
+            for (String parameter : ast.getParameters()) {
+                define(parameter);
+            }
+            for (Ast.Statement statement : ast.getStatements()) {
+                visit(statement);
+            }
+        } finally {
+            blocks.clear();
+        }
+        ast.setFrameSize(size);
+        return null;
+    }
+
+    private int define(String name) {
+        if (blocks.peek().containsKey(name)) {
+            throw new RuntimeException("The variable " + name + " is already defined in this scope.");
+        }
+        blocks.peek().put(name, next);
+        size = Math.max(size, next + 1);
+        return next++;
+    }
+
+    private void block(List<Ast.Statement> statements) {
+        int start = next;
+        blocks.push(new HashMap<>());
+        for (Ast.Statement statement : statements) {
+            visit(statement);
+        }
+        blocks.pop();
+        next = start;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Expression ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Declaration ast) {
+        // the value is resolved first, since it cannot see the variable it initializes
+        ast.getValue().ifPresent(this::visit);
+        ast.setSlot(blocks.isEmpty() ? -1 : define(ast.getName()));
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Assignment ast) {
+        visit(ast.getReceiver());
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.If ast) {
+        visit(ast.getCondition());
+        block(ast.getThenStatements());
+        block(ast.getElseStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Switch ast) {
+        visit(ast.getCondition());
+        for (Ast.Statement.Case caseStatement : ast.getCases()) {
+            visit(caseStatement);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Case ast) {
+        ast.getValue().ifPresent(this::visit);
+        block(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.While ast) {
+        visit(ast.getCondition());
+        block(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Return ast) {
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Literal ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Group ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Binary ast) {
+        visit(ast.getLeft());
+        visit(ast.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Access ast) {
+        ast.getOffset().ifPresent(this::visit);
+        int slot = -1;
+        for (Map<String, Integer> block : blocks) {
+            if (block.containsKey(ast.getName())) {
+                slot = block.get(ast.getName());
+                break;
+            }
+        }
+        ast.setSlot(slot);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Function ast) {
+        for (Ast.Expression argument : ast.getArguments()) {
+            visit(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.PlcList ast) {
+        for (Ast.Expression value : ast.getValues()) {
+            visit(value);
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,196 @@
+package plc.project;
+
+/**
+ * A persistent, height-balanced sequence made of slices of other sequences,
+ * backing {@link SourceText} (slices of character sequences) and {@link
+ * Lexer.Relexed} (slices of token lists). Each node holds one slice and the
+ * nodes are ordered by position, so splitting and concatenating take time in
+ * the logarithm of the number of slices rather than the number of elements.
+ *
+ * A node may carry a shift that applies to the indices of the tokens in its
+ * whole subtree, so moving every token after an edit is a single new node.
+ * Shifts are pushed down to the children whenever a node is taken apart.
+ * Nodes are never modified, so trees share their subtrees freely.
+ */
+final class SliceTree {
+
+    final Object base;
+    final int from;
+    final int length;
+    final int sliceShift;
+    final int shift;
+    final SliceTree left;
+    final SliceTree right;
+    private final int height;
+    private final int size;
+
+    private SliceTree(Object base, int from, int length, int sliceShift, int shift, SliceTree left, SliceTree right) {
+        this.base = base;
+        this.from = from;
+        this.length = length;
+        this.sliceShift = sliceShift;
+        this.shift = shift;
+        this.left = left;
+        this.right = right;
+        this.height = 1 + Math.max(height(left), height(right));
+        this.size = size(left) + length + size(right);
+    }
+
+    /**
+     * Returns a tree holding {@code length} elements of the base starting at
+     * {@code from}, or {@code null} (the empty tree) if there are none.
+     */
+    static SliceTree of(Object base, int from, int length, int shift) {
+        return length == 0 ? null : new SliceTree(base, from, length, shift, 0, null, null);
+    }
+
+    static int size(SliceTree tree) {
+        return tree == null ? 0 : tree.size;
+    }
+
+    private static int height(SliceTree tree) {
+        return tree == null ? 0 : tree.height;
+    }
+
+    /**
+     * Returns the tree with the given amount added to the shift of every
+     * slice in it.
+     */
+    static SliceTree shift(SliceTree tree, int delta) {
+        if (tree == null || delta == 0) {
+            return tree;
+        }
+        return new SliceTree(tree.base, tree.from, tree.length, tree.sliceShift, tree.shift + delta, tree.left, tree.right);
+    }
+
+    /**
+     * Returns an equivalent node whose own shift has been pushed down to its
+     * children and its slice.
+     */
+    private SliceTree open() {
+        if (shift == 0) {
+            return this;
+        }
+        return new SliceTree(base, from, length, sliceShift + shift, 0, shift(left, shift), shift(right, shift));
+    }
+
+    private SliceTree slice() {
+        return new SliceTree(base, from, length, sliceShift, 0, null, null);
+    }
+
+    /**
+     * Returns the concatenation of two trees.
+     */
+    static SliceTree concat(SliceTree left, SliceTree right) {
+        if (left == null) {
+            return right;
+        } else if (right == null) {
+            return left;
+        }
+        SliceTree first = first(right);
+        return join(left, first, removeFirst(right));
+    }
+
+    private static SliceTree first(SliceTree tree) {
+        int shift = 0;
+        while (true) {
+            shift += tree.shift;
+            if (tree.left == null) {
+                return new SliceTree(tree.base, tree.from, tree.length, tree.sliceShift + shift, 0, null, null);
+            }
+            tree = tree.left;
+        }
+    }
+
+    private static SliceTree removeFirst(SliceTree tree) {
+        tree = tree.open();
+        if (tree.left == null) {
+            return tree.right;
+        }
+        return balance(removeFirst(tree.left), tree, tree.right);
+    }
+
+    /**
+     * Returns the first {@code count} elements of the tree.
+     */
+    static SliceTree head(SliceTree tree, int count) {
+        if (tree == null || count <= 0) {
+            return null;
+        } else if (count >= tree.size) {
+            return tree;
+        }
+        tree = tree.open();
+        int before = size(tree.left);
+        if (count <= before) {
+            return head(tree.left, count);
+        } else if (count <= before + tree.length) {
+            return join(tree.left, of(tree.base, tree.from, count - before, tree.sliceShift), null);
+        }
+        return join(tree.left, tree.slice(), head(tree.right, count - before - tree.length));
+    }
+
+    /**
+     * Returns the elements of the tree after the first {@code count}.
+     */
+    static SliceTree tail(SliceTree tree, int count) {
+        if (tree == null || count >= tree.size) {
+            return null;
+        } else if (count <= 0) {
+            return tree;
+        }
+        tree = tree.open();
+        int before = size(tree.left);
+        if (count < before) {
+            return join(tail(tree.left, count), tree.slice(), tree.right);
+        } else if (count < before + tree.length) {
+            int skipped = count - before;
+            return join(null, of(tree.base, tree.from + skipped, tree.length - skipped, tree.sliceShift), tree.right);
+        }
+        return tail(tree.right, count - before - tree.length);
+    }
+
+    /**
+     * Joins two trees around the slice of {@code middle}, whose own shift
+     * must be zero, keeping the result balanced.
+     */
+    private static SliceTree join(SliceTree left, SliceTree middle, SliceTree right) {
+        if (middle == null) {
+            return concat(left, right);
+        } else if (height(left) > height(right) + 1) {
+            left = left.open();
+            return balance(left.left, left, join(left.right, middle, right));
+        } else if (height(right) > height(left) + 1) {
+            right = right.open();
+            return balance(join(left, middle, right.left), right, right.right);
+        }
+        return node(left, middle, right);
+    }
+
+    private static SliceTree node(SliceTree left, SliceTree slice, SliceTree right) {
+        return new SliceTree(slice.base, slice.from, slice.length, slice.sliceShift, 0, left, right);
+    }
+
+    /**
+     * Builds a node from the slice of {@code slice} (an opened node) and two
+     * subtrees whose heights differ by at most two, rotating if needed.
+     */
+    private static SliceTree balance(SliceTree left, SliceTree slice, SliceTree right) {
+        if (height(left) > height(right) + 1) {
+            left = left.open();
+            if (height(left.left) >= height(left.right)) {
+                return node(left.left, left, node(left.right, slice, right));
+            }
+            SliceTree inner = left.right.open();
+            return node(node(left.left, left, inner.left), inner, node(inner.right, slice, right));
+        } else if (height(right) > height(left) + 1) {
+            right = right.open();
+            if (height(right.right) >= height(right.left)) {
+                return node(node(left, slice, right.left), right, right.right);
+            }
+            SliceTree inner = right.left.open();
+            return node(node(left, slice, inner.left), inner, node(inner.right, right, right.right));
+        }
+        return node(left, slice, right);
+    }
+
+}
@@ -0,0 +1,118 @@
+package plc.project;
+
+/**
+ * An immutable text made of pieces of other character sequences, used by
+ * {@link Lexer#relex} to represent an edited source without copying it.
+ *
+ * The pieces are kept in a balanced {@link SliceTree}. An edit shares the
+ * pieces before and after the edited range with the text it was made from
+ * and adds the inserted text as a piece of its own, so it takes time in the
+ * logarithm of the number of pieces (one or two per earlier edit) rather
+ * than in the length of the text. Reading a character searches the tree,
+ * except that sequential reads, such as the lexer's, hit the piece of the
+ * previous read without searching.
+ */
+public final class SourceText implements CharSequence {
+
+    private final SliceTree pieces;
+    private Piece last = new Piece(null, 0, 0, 0);
+
+    private SourceText(SliceTree pieces) {
+        this.pieces = pieces;
+    }
+
+    /**
+     * Returns the text as a {@code SourceText}, wrapping it if it is not one
+     * already.
+     */
+    public static SourceText of(CharSequence text) {
+        if (text instanceof SourceText) {
+            return (SourceText) text;
+        }
+        return new SourceText(SliceTree.of(text, 0, text.length(), 0));
+    }
+
+    /**
+     * Returns the text with {@code removedLength} characters at {@code offset}
+     * replaced by {@code insertedText}.
+     */
+    public SourceText edit(int offset, int removedLength, CharSequence insertedText) {
+        if (offset < 0 || removedLength < 0 || offset + removedLength > length()) {
+            throw new IndexOutOfBoundsException("Edit of " + removedLength + " at " + offset + " is out of bounds for length " + length());
+        }
+        SliceTree before = SliceTree.head(pieces, offset);
+        SliceTree after = SliceTree.tail(pieces, offset + removedLength);
+        SliceTree inserted = SliceTree.of(insertedText, 0, insertedText.length(), 0);
+        return new SourceText(SliceTree.concat(SliceTree.concat(before, inserted), after));
+    }
+
+    @Override
+    public int length() {
+        return SliceTree.size(pieces);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length());
+        }
+        Piece piece = last;
+        if (index < piece.start || index >= piece.end) {
+            SliceTree tree = pieces;
+            int start = 0;
+            while (true) {
+                int before = SliceTree.size(tree.left);
+                if (index < start + before) {
+                    tree = tree.left;
+                } else if (index < start + before + tree.length) {
+                    break;
+                } else {
+                    start += before + tree.length;
+                    tree = tree.right;
+                }
+            }
+            start += SliceTree.size(tree.left);
+            piece = new Piece((CharSequence) tree.base, tree.from, start, start + tree.length);
+            last = piece;
+        }
+        return piece.text.charAt(piece.from + index - piece.start);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + length());
+        }
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            builder.append(charAt(i));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    /**
+     * The piece holding the characters {@code [start, end)} of the text,
+     * starting at {@code from} in its own text.
+     */
+    private static final class Piece {
+
+        private final CharSequence text;
+        private final int from;
+        private final int start;
+        private final int end;
+
+        private Piece(CharSequence text, int from, int start, int end) {
+            this.text = text;
+            this.from = from;
+            this.start = start;
+            this.end = end;
+        }
+
+    }
+
+}
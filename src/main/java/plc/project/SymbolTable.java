@@ -0,0 +1,114 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Interns identifier and operator text so that every occurrence of the same
+ * name shares one {@link String}. Lookups hash the characters in place, so a
+ * name that has already been interned is returned without allocating.
+ *
+ * A table keeps every name it has interned for as long as it is reachable,
+ * so it should live no longer than the sources it serves; by default each
+ * {@link TokenBuffer} has its own. Tables are not thread-safe.
+ */
+public final class SymbolTable {
+
+    /**
+     * The keywords and operators the {@link Parser} looks for.
+     */
+    private static final String[] KEYWORDS = {
+            "LIST", "VAR", "VAL", "FUN", "DO", "END", "LET", "SWITCH", "CASE", "DEFAULT",
+            "IF", "ELSE", "WHILE", "RETURN", "NIL", "TRUE", "FALSE",
+            "=", "==", "!=", "<", ">", "<=", ">=", "&&", "||", "+", "-", "*", "/", "^",
+            "(", ")", "[", "]", ",", ";", ":"
+    };
+
+    private String[] symbols = new String[256];
+    private int size = 0;
+
+    public SymbolTable(String... symbols) {
+        for (String symbol : symbols) {
+            intern(symbol, 0, symbol.length());
+        }
+    }
+
+    /**
+     * Returns a new table seeded with the keywords, so they are interned as
+     * the same strings as the parser's constants.
+     */
+    public static SymbolTable withKeywords() {
+        return new SymbolTable(KEYWORDS);
+    }
+
+    /**
+     * Returns the canonical string for the characters {@code [start, start +
+     * length)} of the source, adding it to the table if it is new.
+     */
+    public String intern(CharSequence source, int start, int length) {
+        int hash = hash(source, start, length);
+        int mask = symbols.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            String symbol = symbols[slot];
+            if (symbol == null) {
+                symbol = source.subSequence(start, start + length).toString();
+                symbols[slot] = symbol;
+                if (++size * 2 > symbols.length) {
+                    rehash();
+                }
+                return symbol;
+            } else if (symbol.hashCode() == hash && regionEquals(symbol, source, start, length)) {
+                return symbol;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        String[] old = symbols;
+        symbols = new String[old.length * 2];
+        int mask = symbols.length - 1;
+        for (String symbol : old) {
+            if (symbol != null) {
+                int slot = symbol.hashCode() & mask;
+                while (symbols[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                symbols[slot] = symbol;
+            }
+        }
+    }
+
+    /**
+     * Computes the same hash as {@link String#hashCode()} over a region.
+     */
+    private static int hash(CharSequence source, int start, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + source.charAt(start + i);
+        }
+        return hash;
+    }
+
+    static boolean regionEquals(String symbol, CharSequence source, int start, int length) {
+        if (symbol.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "SymbolTable{" +
+                "symbols=" + Arrays.stream(symbols).filter(s -> s != null).sorted().toList() +
+                '}';
+    }
+
+}
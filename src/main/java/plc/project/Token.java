@@ -1,5 +1,7 @@
 package plc.project;
 
+import java.util.Arrays;
+
 public final class Token {
 
     public enum Type {
@@ -11,21 +13,130 @@ public final class Token {
         OPERATOR
     }
 
+    /**
+     * The keyword or operator a token spells, classified once when the token
+     * is created so the parser can dispatch on it instead of comparing
+     * literals. Tokens that are neither have kind {@link #NONE}.
+     */
+    public enum Kind {
+        NONE(null),
+        LIST("LIST"),
+        VAR("VAR"),
+        VAL("VAL"),
+        FUN("FUN"),
+        DO("DO"),
+        END("END"),
+        LET("LET"),
+        SWITCH("SWITCH"),
+        CASE("CASE"),
+        DEFAULT("DEFAULT"),
+        IF("IF"),
+        ELSE("ELSE"),
+        WHILE("WHILE"),
+        RETURN("RETURN"),
+        NIL("NIL"),
+        TRUE("TRUE"),
+        FALSE("FALSE"),
+        EQUALS("="),
+        EQUAL_EQUAL("=="),
+        NOT_EQUAL("!="),
+        LESS("<"),
+        LESS_EQUAL("<="),
+        GREATER(">"),
+        GREATER_EQUAL(">="),
+        AND("&&"),
+        OR("||"),
+        PLUS("+"),
+        MINUS("-"),
+        STAR("*"),
+        SLASH("/"),
+        CARET("^"),
+        LEFT_PAREN("("),
+        RIGHT_PAREN(")"),
+        LEFT_BRACKET("["),
+        RIGHT_BRACKET("]"),
+        COMMA(","),
+        SEMICOLON(";"),
+        COLON(":");
+
+        private static final Kind[][] BY_LENGTH = new Kind[8][];
+
+        static {
+            for (int length = 0; length < BY_LENGTH.length; length++) {
+                final int size = length;
+                BY_LENGTH[length] = Arrays.stream(values())
+                        .filter(kind -> kind.literal != null && kind.literal.length() == size)
+                        .toArray(Kind[]::new);
+            }
+        }
+
+        private final String literal;
+
+        Kind(String literal) {
+            this.literal = literal;
+        }
+
+        public String getLiteral() {
+            return literal;
+        }
+
+        /**
+         * Classifies the characters {@code [start, start + length)} of the
+         * given text without allocating.
+         */
+        public static Kind of(CharSequence text, int start, int length) {
+            if (length < BY_LENGTH.length) {
+                for (Kind kind : BY_LENGTH[length]) {
+                    if (SymbolTable.regionEquals(kind.literal, text, start, length)) {
+                        return kind;
+                    }
+                }
+            }
+            return NONE;
+        }
+
+    }
+
     private final Type type;
-    private final String literal;
+    private final CharSequence source;
     private final int index;
+    private final int length;
+    private final Kind kind;
+    private String literal;
 
     public Token(Type type, String literal, int index) {
         this.type = type;
+        this.source = null;
+        this.index = index;
+        this.length = literal.length();
+        this.kind = Kind.of(literal, 0, literal.length());
         this.literal = literal;
+    }
+
+    /**
+     * Creates a token referencing the characters {@code [index, index + length)}
+     * of the source. The literal is only copied out when it is first requested.
+     */
+    public Token(Type type, CharSequence source, int index, int length) {
+        this.type = type;
+        this.source = source;
         this.index = index;
+        this.length = length;
+        this.kind = Kind.of(source, index, length);
     }
 
     public Type getType() {
         return type;
     }
 
+    public Kind getKind() {
+        return kind;
+    }
+
     public String getLiteral() {
+        if (literal == null) {
+            literal = source.subSequence(index, index + length).toString();
+        }
         return literal;
     }
 
@@ -33,17 +144,43 @@ public final class Token {
         return index;
     }
 
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns true if both tokens spell the same text, comparing characters
+     * without creating either literal.
+     */
+    public boolean textEquals(Token other) {
+        if (length != other.length) {
+            return false;
+        } else if (literal != null && other.literal != null) {
+            return literal.equals(other.literal);
+        }
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private char charAt(int i) {
+        return literal != null ? literal.charAt(i) : source.charAt(index + i);
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && getLiteral().equals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return type + "=" + getLiteral() + "@" + index;
     }
 
 }
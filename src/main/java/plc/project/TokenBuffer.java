@@ -0,0 +1,162 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A columnar list of tokens. Instead of one {@link Token} object per token,
+ * the type, source index and length are stored in parallel {@code int} arrays
+ * and the text stays in the source characters.
+ *
+ * Literals are only created when requested through {@link #getLiteral(int)}
+ * (or {@link #get(int)}), and identifiers and operators are interned through a
+ * {@link SymbolTable} so repeated names share one string. Each buffer has its
+ * own table unless one is passed in, so the names of a source are released
+ * along with its tokens. Keyword checks can
+ * use {@link #literalEquals(int, String)}, which compares the characters in
+ * place without creating a literal at all.
+ */
+public final class TokenBuffer extends AbstractList<Token> implements RandomAccess {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+    private static final Token.Kind[] KINDS = Token.Kind.values();
+
+    private final CharSequence source;
+    private final StringBuilder copied;
+    private final SymbolTable symbols;
+    private int[] types = new int[64];
+    private int[] kinds = new int[64];
+    private int[] indices = new int[64];
+    private int[] offsets = new int[64];
+    private int[] lengths = new int[64];
+    private int size = 0;
+
+    /**
+     * Creates a buffer over the given source characters. If the source is
+     * {@code null} (such as when lexing from a reader) the text of each token
+     * is copied into the buffer instead.
+     */
+    public TokenBuffer(CharSequence source) {
+        this(source, SymbolTable.withKeywords());
+    }
+
+    public TokenBuffer(CharSequence source, SymbolTable symbols) {
+        this.source = source;
+        this.copied = source == null ? new StringBuilder() : null;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Adds a token covering {@code [index, index + length)} of the source.
+     */
+    public void add(Token.Type type, int index, int length) {
+        if (source == null) {
+            throw new IllegalStateException("Buffer has no source; add the literal instead.");
+        }
+        append(type, index, index, length);
+    }
+
+    /**
+     * Adds a token whose text is copied into the buffer from {@code length}
+     * characters of {@code chars} starting at {@code offset}.
+     */
+    public void add(Token.Type type, int index, char[] chars, int offset, int length) {
+        if (source != null) {
+            add(type, index, length);
+        } else {
+            copied.append(chars, offset, length);
+            append(type, index, copied.length() - length, length);
+        }
+    }
+
+    /**
+     * Adds a token whose text is copied into the buffer.
+     */
+    public void add(Token.Type type, int index, String literal) {
+        if (source != null) {
+            add(type, index, literal.length());
+        } else {
+            copied.append(literal);
+            append(type, index, copied.length() - literal.length(), literal.length());
+        }
+    }
+
+    private void append(Token.Type type, int index, int offset, int length) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            indices = Arrays.copyOf(indices, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        types[size] = type.ordinal();
+        kinds[size] = Token.Kind.of(text(), offset, length).ordinal();
+        indices[size] = index;
+        offsets[size] = offset;
+        lengths[size] = length;
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a {@link Token} for position {@code i}. This allocates; the
+     * accessors below read the columns directly.
+     */
+    @Override
+    public Token get(int i) {
+        return new Token(getType(i), getLiteral(i), getIndex(i));
+    }
+
+    public Token.Type getType(int i) {
+        return TYPES[types[checkIndex(i)]];
+    }
+
+    public Token.Kind getKind(int i) {
+        return KINDS[kinds[checkIndex(i)]];
+    }
+
+    public int getIndex(int i) {
+        return indices[checkIndex(i)];
+    }
+
+    public int getLength(int i) {
+        return lengths[checkIndex(i)];
+    }
+
+    public String getLiteral(int i) {
+        CharSequence text = text();
+        switch (getType(i)) {
+            case IDENTIFIER:
+            case OPERATOR:
+                return symbols.intern(text, offsets[i], lengths[i]);
+            default:
+                return text.subSequence(offsets[i], offsets[i] + lengths[i]).toString();
+        }
+    }
+
+    /**
+     * Returns true if the literal at position {@code i} equals the given
+     * string, comparing characters in place.
+     */
+    public boolean literalEquals(int i, String literal) {
+        return SymbolTable.regionEquals(literal, text(), offsets[checkIndex(i)], lengths[i]);
+    }
+
+    private CharSequence text() {
+        return source != null ? source : copied;
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+        return i;
+    }
+
+}
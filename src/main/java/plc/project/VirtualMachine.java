@@ -0,0 +1,210 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs {@link Bytecode} compiled by the {@link BytecodeCompiler}, as an
+ * alternative to walking the AST with the {@link Interpreter}.
+ *
+ * Programs run against a {@link Scope} just like the interpreter's: globals
+ * are defined in it, each function is defined in it as an {@link
+ * Environment.Function} (so other code can call it), and {@code print} is
+ * defined in it by the constructor. Calls from bytecode to bytecode skip the
+ * scope and the {@link Environment.PlcObject} wrappers entirely.
+ *
+ * The machine follows the {@link Analyzer}'s lexical scoping rather than
+ * the interpreter's dynamic scoping (as the interpreter does for trees
+ * resolved by the {@link Resolver}), so a function cannot see its caller's
+ * locals.
+ */
+public final class VirtualMachine {
+
+    private final Scope scope;
+    private final Map<String, Bytecode> functions = new HashMap<>();
+
+    public VirtualMachine(Scope parent) {
+        scope = new Scope(parent);
+        scope.defineFunction("print", 1, args -> {
+            System.out.println(args.get(0).getValue());
+            return Environment.NIL;
+        });
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Defines the globals and functions of the source, then calls
+     * {@code main/0} and returns its result.
+     */
+    public Environment.PlcObject execute(Ast.Source ast) {
+        for (Ast.Global global : ast.getGlobals()) {
+            Object value = global.getValue()
+                    .map(expression -> run(BytecodeCompiler.compile(global.getName(), expression)))
+                    .orElse(Operators.NIL);
+            scope.defineVariable(global.getName(), true, Operators.wrap(value));
+        }
+        for (Ast.Function function : ast.getFunctions()) {
+            define(function);
+        }
+        Environment.Function main;
+        try {
+            main = scope.lookupFunction("main", 0);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Main function not found in source.", e);
+        }
+        return main.invoke(new ArrayList<>());
+    }
+
+    /**
+     * Compiles the function and defines it in the scope, returning its
+     * bytecode.
+     */
+    public Bytecode define(Ast.Function ast) {
+        Bytecode bytecode = BytecodeCompiler.compile(ast);
+        scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
+            Object[] registers = new Object[bytecode.getRegisters()];
+            for (int i = 0; i < args.size(); i++) {
+                registers[i] = args.get(i).getValue();
+            }
+            return Operators.wrap(run(bytecode, registers));
+        });
+        functions.put(ast.getName() + "/" + ast.getParameters().size(), bytecode);
+        return bytecode;
+    }
+
+    private Object run(Bytecode bytecode) {
+        return run(bytecode, new Object[bytecode.getRegisters()]);
+    }
+
+    /**
+     * Runs the code with the given registers, whose first elements are the
+     * arguments, and returns the value of the first {@code RETURN}.
+     */
+    private Object run(Bytecode bytecode, Object[] r) {
+        int[] code = bytecode.getCode();
+        Object[] constants = bytecode.getConstants();
+        int pc = 0;
+        while (true) {
+            int a = code[pc + 1], b = code[pc + 2], c = code[pc + 3];
+            switch (code[pc]) {
+                case Bytecode.CONST:
+                    r[a] = constants[b];
+                    break;
+                case Bytecode.MOVE:
+                    r[a] = r[b];
+                    break;
+                case Bytecode.LOAD_GLOBAL:
+                    r[a] = variable((Bytecode.Global) constants[b]).getValue().getValue();
+                    break;
+                case Bytecode.STORE_GLOBAL: {
+                    Environment.Variable variable = variable((Bytecode.Global) constants[b]);
+                    if (!variable.getMutable()) {
+                        throw new RuntimeException("Immutable variable cannot be assigned.");
+                    }
+                    variable.setValue(Operators.wrap(r[a]));
+                    break;
+                }
+                case Bytecode.GET_INDEX:
+                    r[a] = Operators.get(r[a], r[c], (String) constants[b]);
+                    break;
+                case Bytecode.SET_INDEX:
+                    Operators.set(r[a], r[b], r[c]);
+                    break;
+                case Bytecode.NEW_LIST:
+                    r[a] = Operators.list(Arrays.copyOfRange(r, b, b + c));
+                    break;
+                case Bytecode.ADD:
+                    r[a] = Operators.add(r[b], r[c]);
+                    break;
+                case Bytecode.SUB:
+                    r[a] = Operators.subtract(r[b], r[c]);
+                    break;
+                case Bytecode.MUL:
+                    r[a] = Operators.multiply(r[b], r[c]);
+                    break;
+                case Bytecode.DIV:
+                    r[a] = Operators.divide(r[b], r[c]);
+                    break;
+                case Bytecode.POW:
+                    r[a] = Operators.power(r[b], r[c]);
+                    break;
+                case Bytecode.LT:
+                    r[a] = Operators.lessThan(r[b], r[c]);
+                    break;
+                case Bytecode.GT:
+                    r[a] = Operators.greaterThan(r[b], r[c]);
+                    break;
+                case Bytecode.EQ:
+                    r[a] = Operators.equal(r[b], r[c]);
+                    break;
+                case Bytecode.NE:
+                    r[a] = Operators.notEqual(r[b], r[c]);
+                    break;
+                case Bytecode.BOOL:
+                    r[a] = Operators.bool(r[b]);
+                    break;
+                case Bytecode.JUMP:
+                    pc = a;
+                    continue;
+                case Bytecode.JUMP_FALSE:
+                    if (!Operators.test(r[a])) {
+                        pc = b;
+                        continue;
+                    }
+                    break;
+                case Bytecode.JUMP_TRUE:
+                    if (Operators.test(r[a])) {
+                        pc = b;
+                        continue;
+                    }
+                    break;
+                case Bytecode.JUMP_UNLESS_MATCH:
+                    if (!Operators.matches(r[a], r[b])) {
+                        pc = c;
+                        continue;
+                    }
+                    break;
+                case Bytecode.CALL:
+                    r[a] = call((Bytecode.Call) constants[b], r, c);
+                    break;
+                case Bytecode.RETURN:
+                    return r[a];
+                default:
+                    throw new AssertionError("Unknown opcode " + code[pc] + " at " + pc + ".");
+            }
+            pc += Bytecode.WIDTH;
+        }
+    }
+
+    private Environment.Variable variable(Bytecode.Global global) {
+        if (global.variable == null) {
+            global.variable = scope.lookupVariable(global.name);
+        }
+        return global.variable;
+    }
+
+    private Object call(Bytecode.Call call, Object[] r, int base) {
+        if (call.target == null) {
+            Bytecode bytecode = functions.get(call.toString());
+            call.target = bytecode != null ? bytecode : scope.lookupFunction(call.name, call.arity);
+        }
+        if (call.target instanceof Bytecode) {
+            Bytecode bytecode = (Bytecode) call.target;
+            Object[] registers = new Object[bytecode.getRegisters()];
+            System.arraycopy(r, base, registers, 0, call.arity);
+            return run(bytecode, registers);
+        }
+        List<Environment.PlcObject> arguments = new ArrayList<>(call.arity);
+        for (int i = 0; i < call.arity; i++) {
+            arguments.add(Operators.wrap(r[base + i]));
+        }
+        return ((Environment.Function) call.target).invoke(arguments).getValue();
+    }
+
+}
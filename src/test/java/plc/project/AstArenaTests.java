@@ -0,0 +1,47 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+final class AstArenaTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRoundTrip(String test, String input) {
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(source, AstArena.of(source).toSource());
+    }
+
+    private static Stream<Arguments> testRoundTrip() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Globals", "VAR x: Integer = 1; VAL y: Decimal = 2.0; VAR w: Any;"),
+                Arguments.of("Literals", "FUN main() DO print(NIL); print(TRUE); print('c'); print(\"s\"); print(-1.5); END"),
+                Arguments.of("Statements", "FUN f(a: Integer, b: Integer): Integer DO LET x = a; LET y: Integer; x = b[1 + 2]; RETURN (x * y) - 1; END"),
+                Arguments.of("Control Flow", "FUN main() DO IF x DO f(); ELSE g(); END WHILE y < 10 DO y = y + 1; END SWITCH z CASE 1: f(); END DEFAULT: g(); END END END")
+        );
+    }
+
+    @Test
+    void testPoolSharing() {
+        Ast.Source source = new Parser(new Lexer("FUN main() DO x = x + x; print(\"x\"); RETURN x; END").lex()).parseSource();
+        AstArena arena = AstArena.of(source);
+        Assertions.assertEquals(12, arena.getNodeCount());
+        // main, Any, x, +, print
+        Assertions.assertEquals(5, arena.getPoolSize());
+    }
+
+    @Test
+    void testAccept() {
+        Ast.Source source = new Parser(new Lexer("VAR x: Integer = 1; FUN main() DO WHILE x < 10 DO x = x + 1; END RETURN x; END").lex()).parseSource();
+        Object result = AstArena.of(source).accept(new Interpreter(new Scope(null)));
+        Assertions.assertEquals(BigInteger.TEN, ((Environment.PlcObject) result).getValue());
+    }
+
+}
@@ -0,0 +1,102 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class AstCacheTests {
+
+    private static final String INPUT = "VAR x: Integer = 1; VAL name: String = \"plc\"; " +
+            "FUN twice(n: Integer): Integer DO RETURN n * 2; END " +
+            "FUN main(): Integer DO LET y = 2.5; x = twice(x); " +
+            "IF x > 1 DO print(name); ELSE print(y); END WHILE x < 10 DO x = x + 1; END RETURN 0; END";
+
+    @Test
+    void testRoundTrip() throws IOException {
+        Ast.Source ast = compile(INPUT);
+        Ast.Source loaded = AstSerializer.deserialize(AstSerializer.serialize(ast));
+        Assertions.assertEquals(ast, loaded);
+        Assertions.assertEquals(generate(ast), generate(loaded));
+    }
+
+    @Test
+    void testSharedBindings() throws IOException {
+        Ast.Source loaded = AstSerializer.deserialize(AstSerializer.serialize(compile(INPUT)));
+        Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) loaded.getFunctions().get(1).getStatements().get(1);
+        Assertions.assertSame(loaded.getGlobals().get(0).getVariable(), ((Ast.Expression.Access) assignment.getReceiver()).getVariable());
+        Assertions.assertSame(loaded.getFunctions().get(0).getFunction(), ((Ast.Expression.Function) assignment.getValue()).getFunction());
+        Assertions.assertSame(Environment.Type.INTEGER, loaded.getGlobals().get(0).getVariable().getType());
+    }
+
+    @Test
+    void testUnanalyzed() throws IOException {
+        Ast.Source ast = new Parser(new Lexer(INPUT).lex()).parseSource();
+        Assertions.assertEquals(ast, AstSerializer.deserialize(AstSerializer.serialize(ast)));
+    }
+
+    @Test
+    void testVersionMismatch() {
+        byte[] bytes = AstSerializer.serialize(compile(INPUT));
+        ByteBuffer.wrap(bytes).putInt(4, AstSerializer.VERSION + 1);
+        Assertions.assertThrows(IOException.class, () -> AstSerializer.deserialize(bytes));
+    }
+
+    @Test
+    void testTruncated() {
+        byte[] bytes = AstSerializer.serialize(compile(INPUT));
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            Assertions.assertThrows(IOException.class, () -> AstSerializer.deserialize(truncated));
+        }
+    }
+
+    @Test
+    void testCache() throws IOException {
+        Path directory = Files.createTempDirectory("plc-cache");
+        AstCache cache = new AstCache(directory);
+        AtomicInteger compiles = new AtomicInteger();
+        Ast.Source first = cache.load(INPUT, source -> {
+            compiles.incrementAndGet();
+            return compile(source);
+        });
+        Ast.Source second = cache.load(INPUT, source -> {
+            compiles.incrementAndGet();
+            return compile(source);
+        });
+        Assertions.assertEquals(1, compiles.get());
+        Assertions.assertEquals(first, second);
+        Assertions.assertNotSame(first, second);
+
+        byte[] stale = Files.readAllBytes(cache.path(INPUT));
+        ByteBuffer.wrap(stale).putInt(4, AstSerializer.VERSION - 1);
+        Files.write(cache.path(INPUT), stale);
+        Assertions.assertFalse(cache.lookup(INPUT).isPresent());
+        cache.load(INPUT, source -> {
+            compiles.incrementAndGet();
+            return compile(source);
+        });
+        Assertions.assertEquals(2, compiles.get());
+        Assertions.assertTrue(cache.lookup(INPUT).isPresent());
+    }
+
+    private static Ast.Source compile(String input) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    private static String generate(Ast.Source ast) {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(ast);
+        return writer.toString();
+    }
+
+}
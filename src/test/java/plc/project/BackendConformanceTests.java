@@ -0,0 +1,271 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Runs the same programs on every backend and compares each against the
+ * {@link Interpreter}. The interpreter is given resolved trees (see {@link
+ * Resolver}), since the other backends resolve names lexically; the
+ * difference on unresolved trees is pinned by the backends' own tests.
+ */
+final class BackendConformanceTests {
+
+    private static final String[] BACKENDS = {"Interpreter", "VirtualMachine", "JvmCompiler"};
+
+    @ParameterizedTest
+    @MethodSource
+    void testSource(String test, String input, Object expected) {
+        for (String backend : BACKENDS) {
+            Supplier<Object> run = () -> execute(backend, parse(input)).getValue();
+            if (expected != null) {
+                Assertions.assertEquals(expected, run.get(), backend);
+            } else {
+                Assertions.assertThrows(RuntimeException.class, run::get, backend);
+            }
+        }
+    }
+
+    private static Stream<Arguments> testSource() {
+        return Stream.of(
+                Arguments.of("Main",
+                        "FUN main(): Integer DO RETURN 0; END",
+                        BigInteger.ZERO
+                ),
+                Arguments.of("No Return",
+                        "FUN main(): Integer DO 1; END",
+                        Environment.NIL.getValue()
+                ),
+                Arguments.of("Globals",
+                        "VAR x: Integer = 1; VAL y: Integer = 10; FUN main(): Integer DO x = x + y; RETURN x * 2; END",
+                        BigInteger.valueOf(22)
+                ),
+                Arguments.of("Recursion",
+                        "FUN fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END " +
+                        "FUN main(): Integer DO RETURN fib(15); END",
+                        BigInteger.valueOf(610)
+                ),
+                Arguments.of("While",
+                        "FUN main(): Integer DO LET i = 0; LET sum = 0; " +
+                        "WHILE i < 10 DO LET square = i * i; sum = sum + square; i = i + 1; END RETURN sum; END",
+                        BigInteger.valueOf(285)
+                ),
+                Arguments.of("If Else",
+                        "FUN sign(n: Integer): Integer DO IF n > 0 DO RETURN 1; ELSE IF n < 0 DO RETURN 0 - 1; END END RETURN 0; END " +
+                        "FUN main(): Integer DO RETURN sign(5) * 100 + sign(0 - 5) * 10 + sign(0); END",
+                        BigInteger.valueOf(90)
+                ),
+                Arguments.of("Switch",
+                        "FUN name(c: Character): String DO SWITCH c CASE 'a': RETURN \"alpha\"; END CASE 'b': RETURN \"beta\"; END DEFAULT: RETURN \"other\"; END END END " +
+                        "FUN main(): String DO RETURN name('a') + name('b') + name('z'); END",
+                        "alphabetaother"
+                ),
+                Arguments.of("Logical",
+                        "FUN main(): Boolean DO RETURN TRUE && (FALSE || 1 < 2); END",
+                        true
+                ),
+                Arguments.of("Short Circuit",
+                        "FUN main(): Boolean DO RETURN FALSE && 1 || TRUE; END",
+                        true
+                ),
+                Arguments.of("Concatenation",
+                        "FUN main(): String DO LET d = 1.5; RETURN \"x\" + 1 + 'c' + d + TRUE; END",
+                        "x1c1.5true"
+                ),
+                Arguments.of("Decimal Division",
+                        "FUN main(): Decimal DO RETURN 1.0 / 3.0; END",
+                        new BigDecimal("0.3")
+                ),
+                Arguments.of("Type Error",
+                        "FUN main(): Integer DO RETURN 1 - 1.0; END",
+                        null
+                ),
+                Arguments.of("Missing Main",
+                        "FUN other(): Integer DO RETURN 0; END",
+                        null
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testError(String test, String input, String expected) {
+        for (String backend : BACKENDS) {
+            Throwable e = Assertions.assertThrows(RuntimeException.class, () -> execute(backend, parse(input)), backend);
+            // the interpreter reports any failure in main as a missing main, with the error as its cause
+            while (e.getCause() != null) {
+                e = e.getCause();
+            }
+            Assertions.assertEquals(expected, e.getMessage(), backend);
+        }
+    }
+
+    private static Stream<Arguments> testError() {
+        return Stream.of(
+                Arguments.of("Less Than",
+                        "FUN main(): Boolean DO RETURN NIL < 1; END",
+                        "Unsupported operator: <"
+                ),
+                Arguments.of("Greater Than",
+                        "FUN main(): Boolean DO RETURN NIL > 1; END",
+                        "Unsupported operator: >"
+                ),
+                Arguments.of("Global Not A List",
+                        "VAR x: Integer = 1; FUN main(): Integer DO RETURN x[0]; END",
+                        "Variable 'x' is not a list."
+                ),
+                Arguments.of("Local Not A List",
+                        "FUN main(): Integer DO LET y = 1; RETURN y[0]; END",
+                        "Variable 'y' is not a list."
+                ),
+                Arguments.of("Assign Not A List",
+                        "FUN main(): Integer DO LET y = 1; y[0] = 2; RETURN y; END",
+                        "Variable is not a list - offset is present."
+                )
+        );
+    }
+
+    @Test
+    void testPrint() {
+        String input = "FUN main(): Integer DO LET i = 0; WHILE i < 3 DO print(\"i = \" + i); i = i + 1; END print(NIL); RETURN 0; END";
+        for (String backend : BACKENDS) {
+            Assertions.assertEquals(String.join(System.lineSeparator(), "i = 0", "i = 1", "i = 2", "nil", "") + "0",
+                    run(backend, input), backend);
+        }
+    }
+
+    @Test
+    void testList() {
+        // LIST list = [1, 5, 10]; FUN main() DO list[1] = list[0] + list[2]; RETURN list; END
+        for (String backend : BACKENDS) {
+            Ast.Source ast = new Ast.Source(
+                    Arrays.asList(new Ast.Global("list", true, Optional.of(new Ast.Expression.PlcList(Arrays.asList(
+                            new Ast.Expression.Literal(BigInteger.ONE),
+                            new Ast.Expression.Literal(BigInteger.valueOf(5)),
+                            new Ast.Expression.Literal(BigInteger.TEN)
+                    ))))),
+                    Arrays.asList(new Ast.Function("main", Arrays.asList(), Arrays.asList(
+                            new Ast.Statement.Assignment(
+                                    new Ast.Expression.Access(Optional.of(new Ast.Expression.Literal(BigInteger.ONE)), "list"),
+                                    new Ast.Expression.Binary("+",
+                                            new Ast.Expression.Access(Optional.of(new Ast.Expression.Literal(BigInteger.ZERO)), "list"),
+                                            new Ast.Expression.Access(Optional.of(new Ast.Expression.Literal(BigInteger.valueOf(2))), "list")
+                                    )
+                            ),
+                            new Ast.Statement.Return(new Ast.Expression.Access(Optional.empty(), "list"))
+                    )))
+            );
+            Assertions.assertEquals(Arrays.asList(BigInteger.ONE, BigInteger.valueOf(11), BigInteger.TEN),
+                    execute(backend, ast).getValue(), backend);
+        }
+    }
+
+    @Test
+    void testRandomPrograms() {
+        // a seeded series of programs mixing globals, locals, calls and control flow
+        Random random = new Random(11);
+        for (int i = 0; i < 300; i++) {
+            StringBuilder builder = new StringBuilder("VAR x: Integer = 1; VAR z: Integer = 0; VAR g: Integer = 2; " +
+                    "FUN f(a: Any) DO RETURN a + g; END FUN main() DO ");
+            for (int j = random.nextInt(5); j >= 0; j--) {
+                builder.append(statement(random, 2)).append(' ');
+            }
+            String input = builder.append("RETURN x; END").toString();
+            String expected = run("Interpreter", input);
+            for (String backend : BACKENDS) {
+                Assertions.assertEquals(expected, run(backend, input), backend + ": " + input);
+            }
+        }
+    }
+
+    private static String statement(Random random, int depth) {
+        switch (random.nextInt(depth <= 0 ? 4 : 7)) {
+            case 0:
+                return "x = " + expression(random, 2) + ";";
+            case 1:
+                return "print(" + expression(random, 2) + ");";
+            case 2:
+                return "LET g = " + expression(random, 1) + ";";
+            case 3:
+                return "z = z + 1;";
+            case 4:
+                return "IF " + expression(random, 2) + " DO " + statement(random, depth - 1) + " " + statement(random, depth - 1) +
+                        " ELSE " + statement(random, depth - 1) + " END";
+            case 5:
+                return "WHILE z < " + random.nextInt(4) + " DO z = z + 1; " + statement(random, depth - 1) + " END";
+            default:
+                return "RETURN " + expression(random, 1) + ";";
+        }
+    }
+
+    private static String expression(Random random, int depth) {
+        switch (random.nextInt(depth <= 0 ? 4 : 6)) {
+            case 0:
+                return String.valueOf(random.nextInt(5));
+            case 1:
+                return new String[] {"x", "z", "g"}[random.nextInt(3)];
+            case 2:
+                return random.nextBoolean() ? "TRUE" : "FALSE";
+            case 3:
+                return "\"s\"";
+            case 4:
+                return "f(" + expression(random, depth - 1) + ")";
+            default:
+                String[] operators = {"+", "-", "*", "/", "<", ">", "==", "&&", "||"};
+                return "(" + expression(random, depth - 1) + " " + operators[random.nextInt(operators.length)] + " " +
+                        expression(random, depth - 1) + ")";
+        }
+    }
+
+    /**
+     * Runs the program on the backend and returns what it printed followed by
+     * its result, or just {@code "error"} if it failed, since backends may
+     * report an error, such as a redefined variable, before or after running.
+     */
+    private static String run(String backend, String input) {
+        PrintStream sysout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        String result;
+        try {
+            result = String.valueOf(execute(backend, parse(input)).getValue());
+        } catch (RuntimeException e) {
+            return "error";
+        } finally {
+            System.setOut(sysout);
+        }
+        return out + result;
+    }
+
+    private static Environment.PlcObject execute(String backend, Ast.Source ast) {
+        switch (backend) {
+            case "Interpreter":
+                new Resolver().visit(ast);
+                return new Interpreter(new Scope(null)).visit(ast);
+            case "VirtualMachine":
+                return new VirtualMachine(new Scope(null)).execute(ast);
+            case "JvmCompiler":
+                return new JvmCompiler(new Scope(null)).execute(ast);
+            default:
+                throw new AssertionError(backend);
+        }
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
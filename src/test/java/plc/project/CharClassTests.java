@@ -0,0 +1,38 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+public class CharClassTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testMatchesRegex(String test, String pattern) {
+        CharClass charClass = CharClass.of(pattern);
+        for (char c = 0; c < 0x3000; c++) {
+            Assertions.assertEquals(String.valueOf(c).matches(pattern), charClass.matches(c), test + " @ " + (int) c);
+        }
+    }
+
+    private static Stream<Arguments> testMatchesRegex() {
+        return Stream.of(
+                Arguments.of("Any", "."),
+                Arguments.of("Range", "[A-Za-z0-9_-]"),
+                Arguments.of("Negated", "[^\"\\n\\r]"),
+                Arguments.of("Escaped Backslash", "\\\\"),
+                Arguments.of("Literal", "@"),
+                Arguments.of("Multiple Characters", "\\\\u")
+        );
+    }
+
+    @Test
+    void testCached() {
+        Assertions.assertSame(CharClass.of("[0-9]"), CharClass.of("[0-9]"));
+    }
+
+}
@@ -39,6 +39,73 @@ final class EndToEndInterpreterTests {
         );
     }
 
+    @Test
+    void testCompiledLoop() {
+        // the left operand of < is evaluated once per comparison
+        test("VAR n: Integer = 0; " +
+                "FUN next(): Integer DO n = n + 1; RETURN n; END " +
+                "FUN main(): Integer DO LET count = 0; WHILE next() < 5 DO count = count + 1; END RETURN count; END",
+                BigInteger.valueOf(4), new Scope(null), Parser::parseSource);
+    }
+
+    @Test
+    void testTieredFunction() {
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.visit(new Parser(new Lexer(
+                "FUN max(a: Integer, b: Integer): Integer DO IF a > b DO RETURN a; END RETURN b; END"
+        ).lex()).parseFunction());
+        Environment.Function function = interpreter.getScope().lookupFunction("max", 2);
+        for (int i = 0; i < 2 * Interpreter.CALL_THRESHOLD; i++) {
+            Assertions.assertEquals(i >= Interpreter.CALL_THRESHOLD, interpreter.isCompiled("max", 2));
+            Environment.PlcObject result = function.invoke(Arrays.asList(Environment.create(BigInteger.valueOf(i)), Environment.create(BigInteger.TEN)));
+            Assertions.assertEquals(BigInteger.valueOf(Math.max(i, 10)), result.getValue());
+        }
+    }
+
+    @Test
+    void testTieredLoop() {
+        // the loop is compiled part way through, then main is compiled on its next call
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Ast.Source ast = new Parser(new Lexer(
+                "VAR limit: Integer = 3000; " +
+                "FUN main(): Integer DO LET i = 0; LET sum = 0; WHILE i < limit DO LET step = i * 2; sum = sum + step; i = i + 1; END RETURN sum; END"
+        ).lex()).parseSource();
+        Assertions.assertEquals(BigInteger.valueOf(8997000), interpreter.visit(ast).getValue());
+        Assertions.assertFalse(interpreter.isCompiled("main", 0));
+        Environment.PlcObject result = interpreter.getScope().lookupFunction("main", 0).invoke(Arrays.asList());
+        Assertions.assertEquals(BigInteger.valueOf(8997000), result.getValue());
+        Assertions.assertTrue(interpreter.isCompiled("main", 0));
+    }
+
+    @Test
+    void testIntegerOverflow() {
+        // the compiled loop runs on longs until p overflows, then falls back to BigIntegers
+        Ast.Source ast = new Parser(new Lexer(
+                "VAR limit: Integer = 2000; " +
+                "FUN main(): Integer DO LET i = 1; LET p = 1; LET s = 0; " +
+                "WHILE i < limit DO s = s + i * i / 2; IF i > 1900 DO p = p * 3; END i = i + 1; END RETURN p + s; END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Assertions.assertEquals(new BigInteger("171792506910670443678820376588540424235368173667"), interpreter.visit(ast).getValue());
+        Environment.PlcObject result = interpreter.getScope().lookupFunction("main", 0).invoke(Arrays.asList());
+        Assertions.assertEquals(new BigInteger("171792506910670443678820376588540424235368173667"), result.getValue());
+        Assertions.assertTrue(interpreter.isCompiled("main", 0));
+    }
+
+    @Test
+    void testIntegerDivisionByZero() {
+        Ast.Source ast = new Parser(new Lexer(
+                "FUN divide(a: Integer, b: Integer): Integer DO RETURN a / b + 1; END " +
+                "FUN main(): Integer DO LET i = 0; WHILE i < 200 DO divide(i, 1); i = i + 1; END RETURN divide(1, 0); END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(ast));
+        Assertions.assertTrue(interpreter.isCompiled("divide", 2));
+        Assertions.assertEquals("Division by zero.", exception.getCause().getMessage());
+    }
+
     @ParameterizedTest
     @MethodSource
     void testGlobal(String test, String input, Object expected, String variableName) {
@@ -345,6 +345,14 @@ final class InterpreterTests {
                         ),
                         false
                 ),
+                // 12345 == 12345
+                Arguments.of("Equal Values",
+                        new Ast.Expression.Binary("==",
+                                new Ast.Expression.Literal(BigInteger.valueOf(12345)),
+                                new Ast.Expression.Literal(BigInteger.valueOf(12345))
+                        ),
+                        true
+                ),
                 // "a" + "b"
                 Arguments.of("Concatenation",
                         new Ast.Expression.Binary("+",
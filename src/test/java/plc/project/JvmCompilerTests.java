@@ -0,0 +1,54 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+final class JvmCompilerTests {
+
+    @Test
+    void testUnreachable() {
+        // code that cannot run, after a RETURN or an IF whose branches both return
+        Ast.Source ast = new Parser(new Lexer(
+                "FUN f(n: Integer): Integer DO IF n > 0 DO RETURN 1; ELSE RETURN 2; END print(n); END " +
+                "FUN main(): Integer DO RETURN f(1) + f(0); RETURN 0; print(1); END"
+        ).lex()).parseSource();
+        Assertions.assertEquals(BigInteger.valueOf(3), new JvmCompiler(new Scope(null)).execute(ast).getValue());
+    }
+
+    @Test
+    void testShadowing() {
+        // compiled code resolves k lexically, where the interpreter sees main's k
+        String input = "VAR k: Integer = 3; FUN f(a: Integer): Integer DO RETURN a * k; END " +
+                "FUN main(): Integer DO LET k = 2; RETURN f(k); END";
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(BigInteger.valueOf(6), new JvmCompiler(new Scope(null)).execute(ast).getValue());
+        Assertions.assertEquals(BigInteger.valueOf(4), new Interpreter(new Scope(null)).visit(ast).getValue());
+        new Resolver().visit(ast);
+        Assertions.assertEquals(BigInteger.valueOf(6), new Interpreter(new Scope(null)).visit(ast).getValue());
+    }
+
+    @Test
+    void testDefine() {
+        JvmCompiler compiler = new JvmCompiler(new Scope(null));
+        compiler.getScope().defineVariable("factor", true, Environment.create(BigInteger.valueOf(3)));
+        Environment.Function function = compiler.define(new Parser(new Lexer(
+                "FUN scale(n: Integer): Integer DO IF n > 0 DO RETURN n * factor + scale(n - 1); END RETURN 0; END"
+        ).lex()).parseFunction());
+        Environment.PlcObject result = function.invoke(Arrays.asList(Environment.create(BigInteger.valueOf(4))));
+        Assertions.assertEquals(BigInteger.valueOf(30), result.getValue());
+        Assertions.assertSame(function, compiler.getScope().lookupFunction("scale", 1));
+    }
+
+    @Test
+    void testDeepRecursion() {
+        Ast.Source ast = new Parser(new Lexer(
+                "FUN count(n: Integer): Integer DO IF n > 0 DO RETURN count(n - 1) + 1; END RETURN 0; END " +
+                "FUN main(): Integer DO RETURN count(2000); END"
+        ).lex()).parseSource();
+        Assertions.assertEquals(BigInteger.valueOf(2000), new JvmCompiler(new Scope(null)).execute(ast).getValue());
+    }
+
+}
@@ -6,8 +6,14 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -271,6 +277,136 @@ public class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testIterator(String test, String input, List<Token> expected) {
+        List<Token> tokens = new ArrayList<>();
+        new Lexer(input).iterator().forEachRemaining(tokens::add);
+        Assertions.assertEquals(new Lexer(input).lex(), tokens);
+    }
+
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testCharStreams(String test, String input, List<Token> expected) {
+        List<Token> tokens = new Lexer(input).lex();
+        Assertions.assertEquals(tokens, new Lexer(CharBuffer.wrap(input)).lex());
+        Assertions.assertEquals(tokens, new Lexer(new StringReader(input)).lex());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testBuffer(String test, String input, List<Token> expected) {
+        List<Token> tokens = new Lexer(input).lex();
+        Assertions.assertEquals(tokens, new Lexer(input).lexBuffer());
+        Assertions.assertEquals(tokens, new Lexer(new StringReader(input)).lexBuffer());
+    }
+
+    @Test
+    void testBufferInterning() {
+        TokenBuffer tokens = new Lexer("name = name + \"name\"").lexBuffer();
+        Assertions.assertSame(tokens.getLiteral(0), tokens.getLiteral(2));
+        Assertions.assertTrue(tokens.literalEquals(1, "="));
+        Assertions.assertFalse(tokens.literalEquals(4, "name"));
+        // names are interned per buffer, not for the whole process
+        Assertions.assertNotSame(tokens.getLiteral(0), new Lexer("name").lexBuffer().getLiteral(0));
+    }
+
+    @Test
+    void testKinds() {
+        List<Token> tokens = new Lexer("LET x = END != ENDING;").lex();
+        Assertions.assertEquals(Arrays.asList(Token.Kind.LET, Token.Kind.NONE, Token.Kind.EQUALS, Token.Kind.END,
+                Token.Kind.NOT_EQUAL, Token.Kind.NONE, Token.Kind.SEMICOLON),
+                tokens.stream().map(Token::getKind).collect(Collectors.toList()));
+        TokenBuffer buffer = new Lexer("LET x = END != ENDING;").lexBuffer();
+        for (int i = 0; i < tokens.size(); i++) {
+            Assertions.assertEquals(tokens.get(i).getKind(), buffer.getKind(i));
+        }
+    }
+
+    @Test
+    void testParallel() {
+        String input = "FUN main(): Integer DO\n    LET x = \"a b\";\n    print(x + 'c');\n    RETURN 0;\nEND\n";
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (int chunkSize = 1; chunkSize < input.length(); chunkSize++) {
+                Assertions.assertEquals(new Lexer(input).lex(), new Lexer(input).lexParallel(pool, chunkSize));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelException() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ParseException exception = Assertions.assertThrows(ParseException.class,
+                    () -> new Lexer("x;\n\"unterminated\ny;\n''").lexParallel(pool, 1));
+            Assertions.assertEquals(16, exception.getIndex());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelChunkSize() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new Lexer("x;\ny;\n").lexParallel(pool, 0));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new Lexer("x;\ny;\n").lexParallel(pool, -1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String input, int offset, int removedLength, String insertedText) {
+        String edited = input.substring(0, offset) + insertedText + input.substring(offset + removedLength);
+        Assertions.assertEquals(new Lexer(edited).lex(),
+                Lexer.relex(input, new Lexer(input).lex(), offset, removedLength, insertedText));
+    }
+
+    private static Stream<Arguments> testRelex() {
+        return Stream.of(
+                Arguments.of("Append", "LET x = 1;", 10, 0, " LET y = 2;"),
+                Arguments.of("Extend Identifier", "abc + d", 3, 0, "def"),
+                Arguments.of("Extend Decimal", "1. + 2", 2, 0, "5"),
+                Arguments.of("Delete", "first + second - third", 6, 9, ""),
+                Arguments.of("Join Strings", "x = \"a\" + b + \"c\";", 6, 9, " b "),
+                Arguments.of("Triple Quoted", "\"\"\"a b\"\"\" + x", 0, 0, "LET s = "),
+                Arguments.of("Multiple Lines", "LET x = 1;\nLET y = 2;\nLET z = 3;", 15, 1, "value")
+        );
+    }
+
+    @Test
+    void testRelexEdits() {
+        // a seeded series of edits, each relexed from the result of the last
+        String[] snippets = {"", " ", "x", "1", ".", "5", "\"", "\"s t\"", "'c'", "=", "!", "&&", "LET", "\n", ";"};
+        String source = "LET x = 1.5;\nprint(\"a b\" + 'c');\nIF x != y && z DO RETURN 10; END";
+        CharSequence text = source;
+        List<Token> tokens = new Lexer(source).lex();
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(source.length() + 1);
+            int removedLength = random.nextInt(Math.min(3, source.length() - offset) + 1);
+            String insertedText = snippets[random.nextInt(snippets.length)];
+            String edited = source.substring(0, offset) + insertedText + source.substring(offset + removedLength);
+            List<Token> expected;
+            try {
+                expected = new Lexer(edited).lex();
+            } catch (ParseException e) {
+                continue;
+            }
+            Lexer.Relexed relexed = Lexer.relex(text, tokens, offset, removedLength, insertedText);
+            Assertions.assertEquals(edited, relexed.getSource().toString());
+            Assertions.assertEquals(expected, relexed);
+            source = edited;
+            text = relexed.getSource();
+            tokens = relexed;
+        }
+    }
+
     @Test
     void testException() {
         ParseException exception = Assertions.assertThrows(ParseException.class,
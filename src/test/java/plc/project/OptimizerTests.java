@@ -0,0 +1,258 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+final class OptimizerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testExpression(String test, String input, String expected) {
+        Ast.Statement.Return optimized = (Ast.Statement.Return) body(optimize(analyze(input))).get(0);
+        Ast.Statement.Return unoptimized = (Ast.Statement.Return) body(analyze(expected)).get(0);
+        Assertions.assertEquals(unoptimized.getValue(), optimized.getValue());
+    }
+
+    private static Stream<Arguments> testExpression() {
+        return Stream.of(
+                Arguments.of("Integer Arithmetic", "1 + 2 * 3", "7"),
+                Arguments.of("Concatenation", "\"a\" + \"b\" + 1", "\"ab1\""),
+                Arguments.of("Decimal Division", "1.0 / 3.0", "0.3"),
+                Arguments.of("Comparison", "1 < 2 && x > 0", "x > 0"),
+                Arguments.of("Short Circuit", "FALSE && x > 0", "FALSE"),
+                Arguments.of("Group", "x * (2 + 3)", "x * 5"),
+                Arguments.of("Identities", "(x + 0) * 1 - 0", "x"),
+                Arguments.of("Division By Zero", "x + 1 / 0", "x + 1 / 0"),
+                Arguments.of("Out Of Range", "2147483647 + 1", "2147483647 + 1"),
+                Arguments.of("String Identity", "s + 0", "s + 0")
+        );
+    }
+
+    @Test
+    void testPower() {
+        // the parser has no ^ operator, so the expression is built directly
+        Ast.Expression power = new Ast.Expression.Binary("^",
+                new Ast.Expression.Literal(BigInteger.valueOf(2)),
+                new Ast.Expression.Literal(BigInteger.TEN));
+        Assertions.assertEquals(BigInteger.valueOf(1024), ((Ast.Expression.Literal) new Optimizer().visit(power)).getLiteral());
+        Ast.Expression large = new Ast.Expression.Binary("^",
+                new Ast.Expression.Literal(BigInteger.valueOf(2)),
+                new Ast.Expression.Literal(BigInteger.valueOf(1000000000)));
+        Assertions.assertSame(large, new Optimizer().visit(large));
+    }
+
+    @Test
+    void testIf() {
+        Ast.Source ast = optimize(analyze(
+                "IF 1 < 2 DO print(1); ELSE print(2); END " +
+                "IF 1 > 2 DO print(3); END " +
+                "IF FALSE DO print(4); ELSE LET y = 5; print(y); END " +
+                "RETURN x"));
+        List<Ast.Statement> statements = body(ast);
+        Assertions.assertEquals(3, statements.size());
+        Assertions.assertEquals(body(analyze("print(1); RETURN x")).get(0), statements.get(0));
+        // the branch declares a variable, so it keeps its own scope
+        Ast.Statement.If branch = (Ast.Statement.If) statements.get(1);
+        Assertions.assertEquals(true, ((Ast.Expression.Literal) branch.getCondition()).getLiteral());
+        Assertions.assertEquals(2, branch.getThenStatements().size());
+        Assertions.assertTrue(branch.getElseStatements().isEmpty());
+    }
+
+    @Test
+    void testUnreachable() {
+        Ast.Source ast = new Parser(new Lexer(
+                "VAR used: Integer = 1; VAR unused: Integer = 2; VAR logged: Any = print(3); VAR indirect: Integer = 4; " +
+                "FUN helper(): Integer DO RETURN indirect; END " +
+                "FUN unreachable(): Integer DO RETURN unused; END " +
+                "FUN main(): Integer DO RETURN used + helper(); print(0); END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Source optimized = optimize(ast);
+        Assertions.assertEquals(Arrays.asList("used", "logged", "indirect"),
+                optimized.getGlobals().stream().map(Ast.Global::getName).collect(Collectors.toList()));
+        Assertions.assertEquals(Arrays.asList("helper", "main"),
+                optimized.getFunctions().stream().map(Ast.Function::getName).collect(Collectors.toList()));
+        // the print after the RETURN is dropped
+        Assertions.assertEquals(1, body(optimized).size());
+        Assertions.assertEquals(BigInteger.valueOf(5), new Interpreter(new Scope(null)).visit(optimized).getValue());
+    }
+
+    @Test
+    void testFailingGlobal() {
+        // the global is unused, but removing it would remove the error
+        Ast.Source ast = new Parser(new Lexer(
+                "VAR g: Integer = 1 / 0; FUN main(): Integer DO RETURN 0; END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Source optimized = optimize(ast);
+        Assertions.assertEquals(1, optimized.getGlobals().size());
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class,
+                () -> new Interpreter(new Scope(null)).visit(optimized));
+        Assertions.assertEquals("Division by zero.", exception.getMessage());
+    }
+
+    @Test
+    void testReturningIf() {
+        // the print after an IF whose branches both return is dropped, since javac rejects it
+        List<Ast.Statement> statements = body(optimize(analyze(
+                "IF x == 1 DO RETURN 3; ELSE RETURN 4; END print(\"after\"); RETURN 9"
+        )));
+        Assertions.assertEquals(1, statements.size());
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(statements.get(0));
+        Assertions.assertFalse(writer.toString().contains("after"), writer.toString());
+    }
+
+    @Test
+    void testInterpreter() {
+        Ast.Source ast = new Parser(new Lexer("VAR x: Integer = 1; " +
+                "FUN main(): Integer DO LET i = 0; LET total = 0; " +
+                "WHILE i < 2 * 5 DO total = total + i * (1 + 1) + 0; i = i + 1; END " +
+                "IF TRUE || x > 0 DO total = total * 1 + 10 / 3; END RETURN total; END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Object expected = new Interpreter(new Scope(null)).visit(ast).getValue();
+        Assertions.assertEquals(BigInteger.valueOf(93), expected);
+        Assertions.assertEquals(expected, new Interpreter(new Scope(null)).visit(new Optimizer().visit(ast)).getValue());
+    }
+
+    @Test
+    void testInline() {
+        Ast.Source ast = new Parser(new Lexer("VAR limit: Integer = 10; " +
+                "FUN square(n: Integer): Integer DO RETURN n * n; END " +
+                "FUN add(a: Integer, b: Integer): Integer DO RETURN a + b; END " +
+                "FUN capped(n: Integer): Integer DO RETURN n + limit; END " +
+                "FUN countdown(n: Integer): Boolean DO RETURN n < 1 || countdown(n - 2); END " +
+                "FUN main(): Integer DO LET limit = 1; LET i = 3; countdown(i); " +
+                "RETURN 2 * square(i + 1) + add(i, 4) + capped(limit) + square(2); END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new Resolver().visit(ast);
+        Object expected = new Interpreter(new Scope(null)).visit(ast).getValue();
+        Assertions.assertEquals(BigInteger.valueOf(54), expected);
+        Ast.Source optimized = new Optimizer().visit(ast);
+        // square(i + 1) would evaluate i + 1 twice, and countdown calls itself
+        Assertions.assertEquals(Arrays.asList("square", "countdown", "main"),
+                optimized.getFunctions().stream().map(Ast.Function::getName).collect(Collectors.toList()));
+        StringWriter writer = new StringWriter();
+        Generator generator = new Generator(new PrintWriter(writer));
+        for (Ast.Statement statement : optimized.getFunctions().get(2).getStatements()) {
+            generator.visit(statement);
+        }
+        // the local limit is renamed so the inlined body of capped still sees the global
+        Assertions.assertEquals("int limit$1 = 1;int i = 3;countdown(i);" +
+                "return 2 * square(i + 1) + (i + 4) + (limit$1 + limit) + 4;", writer.toString());
+        Assertions.assertEquals(expected, new Interpreter(new Scope(null)).visit(optimized).getValue());
+        new Resolver().visit(optimized);
+        Assertions.assertEquals(expected, new Interpreter(new Scope(null)).visit(optimized).getValue());
+    }
+
+    @Test
+    void testInlineLimits() {
+        Ast.Source ast = new Parser(new Lexer(
+                "FUN b(): Integer DO RETURN 2; END FUN a(): Integer DO RETURN b() + 1; END " +
+                "FUN main(): Integer DO RETURN a(); END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        // only b is small enough, but a then folds to a constant
+        Ast.Source small = new Optimizer(1, 2).visit(ast);
+        Assertions.assertEquals(Arrays.asList("a", "main"),
+                small.getFunctions().stream().map(Ast.Function::getName).collect(Collectors.toList()));
+        Assertions.assertEquals(BigInteger.valueOf(3),
+                ((Ast.Expression.Literal) ((Ast.Statement.Return) body(small).get(0)).getValue()).getLiteral());
+        Ast.Source shallow = new Optimizer(3, 1).visit(ast);
+        Assertions.assertEquals(Arrays.asList("b", "main"),
+                shallow.getFunctions().stream().map(Ast.Function::getName).collect(Collectors.toList()));
+        Ast.Source deep = new Optimizer(3, 2).visit(ast);
+        Assertions.assertEquals(Arrays.asList("main"),
+                deep.getFunctions().stream().map(Ast.Function::getName).collect(Collectors.toList()));
+        Assertions.assertEquals(BigInteger.valueOf(3),
+                ((Ast.Expression.Literal) ((Ast.Statement.Return) body(deep).get(0)).getValue()).getLiteral());
+    }
+
+    @Test
+    void testRenamedParameter() {
+        Ast.Source ast = new Parser(new Lexer("VAR limit: Integer = 10; " +
+                "FUN capped(n: Integer): Integer DO RETURN n + limit; END " +
+                "FUN scale(limit: Integer): Integer DO RETURN limit * 1 + capped(limit); END " +
+                "FUN main(): Integer DO RETURN scale(2); END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Function scale = new Optimizer(3, 1).visit(ast).getFunctions().get(0);
+        // the renamed parameter is still an Integer, so limit * 1 is simplified
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(scale.getStatements().get(0));
+        Assertions.assertEquals("return limit$1 + (limit$1 + limit);", writer.toString());
+        Ast.Expression.Binary sum = (Ast.Expression.Binary) ((Ast.Statement.Return) scale.getStatements().get(0)).getValue();
+        Assertions.assertEquals(Environment.Type.INTEGER, ((Ast.Expression.Access) sum.getLeft()).getVariable().getType());
+    }
+
+    @Test
+    void testCallStatement() {
+        Ast.Source ast = new Parser(new Lexer(
+                "FUN f(n: Integer): Integer DO RETURN n + 1; END " +
+                "FUN half(n: Integer): Integer DO RETURN n / 2; END " +
+                "FUN main(): Integer DO f(1); f(2); LET k = 4; half(k); RETURN f(k); END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Source optimized = new Optimizer().visit(ast);
+        // calls to f have no effect and are dropped, and the call to half could fail so it stays a call
+        StringWriter writer = new StringWriter();
+        Generator generator = new Generator(new PrintWriter(writer));
+        for (Ast.Statement statement : optimized.getFunctions().get(1).getStatements()) {
+            generator.visit(statement);
+        }
+        Assertions.assertEquals("int k = 4;half(k);return (k + 1);", writer.toString());
+        // only calls are allowed as statements, so the result must still pass the analyzer
+        new Analyzer(new Scope(null)).visit(optimized);
+        Assertions.assertEquals(BigInteger.valueOf(5), new Interpreter(new Scope(null)).visit(optimized).getValue());
+    }
+
+    @Test
+    void testGenerator() {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(body(optimize(analyze("RETURN x * (2 + 3)"))).get(0));
+        Assertions.assertEquals("return x * 5;", writer.toString());
+    }
+
+    /**
+     * Analyzes a function with the given body, or returning the given
+     * expression, along with globals {@code x} and {@code s}.
+     */
+    private static Ast.Source analyze(String body) {
+        if (!body.contains("RETURN")) {
+            body = "RETURN " + body;
+        }
+        Ast.Source ast = new Parser(new Lexer(
+                "VAR x: Integer = 1; VAR s: String = \"s\"; FUN f(): Any DO " + body + "; END FUN main(): Integer DO f(); RETURN 0; END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    /**
+     * Optimizes without inlining, so {@code f} is not inlined into {@code
+     * main} and removed, and its optimized body can be checked. Inlining is
+     * covered by its own tests, including {@link #testCallStatement()} for
+     * calls used as statements like {@code main}'s.
+     */
+    private static Ast.Source optimize(Ast.Source ast) {
+        return new Optimizer(0, 0).visit(ast);
+    }
+
+    private static List<Ast.Statement> body(Ast.Source ast) {
+        return ast.getFunctions().get(0).getStatements();
+    }
+
+}
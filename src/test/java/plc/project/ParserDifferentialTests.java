@@ -0,0 +1,89 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares {@link Parser} against {@link RecursiveParser}, the parser it
+ * replaced, on seeded random input. Both must produce the same AST, or fail
+ * with the same message at the same index.
+ */
+final class ParserDifferentialTests {
+
+    @Test
+    void testExpressions() {
+        String[] atoms = {"x", "1", "2.5", "'c'", "\"s\"", "NIL", "TRUE", "f(", "g()", "a[", "(", ")", "]", ",",
+                "+", "-", "*", "/", "&&", "||", "==", "!=", "<", "<=", ">", ">=", "^", ";"};
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            String input = generate(random, atoms, 1 + random.nextInt(14), "");
+            List<Token> tokens = new Lexer(input).lex();
+            Assertions.assertEquals(
+                    parse(() -> new RecursiveParser(tokens).parseExpression()),
+                    parse(() -> new Parser(tokens).parseExpression()),
+                    input);
+        }
+    }
+
+    @Test
+    void testStatements() {
+        String[] atoms = {"IF x DO", "WHILE x DO", "SWITCH x", "CASE 1:", "DEFAULT:", "ELSE", "END", "END", "END",
+                "x = 1;", "f();", "LET y = 2;", "RETURN 1;", "FUN g() DO", "VAR z: Integer = 1;", ";", "x", "DO", "+"};
+        Random random = new Random(5);
+        for (int i = 0; i < 20000; i++) {
+            String input = generate(random, atoms, random.nextInt(16), "FUN main() DO ") + (random.nextBoolean() ? "END" : "");
+            List<Token> tokens = new Lexer(input).lex();
+            Assertions.assertEquals(
+                    parse(() -> new RecursiveParser(tokens).parseSource()),
+                    parse(() -> new Parser(tokens).parseSource()),
+                    input);
+            List<ParseException> expected = new ArrayList<>();
+            List<ParseException> actual = new ArrayList<>();
+            Assertions.assertEquals(
+                    parse(() -> new RecursiveParser(tokens).parseSource(expected)),
+                    parse(() -> new Parser(tokens).parseSource(actual)),
+                    input);
+            Assertions.assertEquals(describe(expected), describe(actual), input);
+        }
+    }
+
+    private static String generate(Random random, String[] atoms, int length, String prefix) {
+        StringBuilder builder = new StringBuilder(prefix);
+        for (int i = 0; i < length; i++) {
+            builder.append(atoms[random.nextInt(atoms.length)]).append(' ');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the result of a parse as a string, or its error message and
+     * index if it fails.
+     */
+    private static String parse(Parse parse) {
+        try {
+            return String.valueOf(parse.run());
+        } catch (ParseException e) {
+            return e.getMessage() + " @ " + e.getIndex();
+        }
+    }
+
+    private static List<String> describe(List<ParseException> diagnostics) {
+        List<String> descriptions = new ArrayList<>();
+        for (ParseException e : diagnostics) {
+            descriptions.add(e.getMessage() + " @ " + e.getIndex());
+        }
+        return descriptions;
+    }
+
+    @FunctionalInterface
+    private interface Parse {
+
+        Object run() throws ParseException;
+
+    }
+
+}
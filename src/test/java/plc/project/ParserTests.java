@@ -8,10 +8,12 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -503,6 +505,111 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @Test
+    void testDeeplyNestedExpression() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            input.append("(1 + ");
+        }
+        input.append("1");
+        for (int i = 0; i < 10000; i++) {
+            input.append(")");
+        }
+        Ast.Expression actual = new Parser(new Lexer(input.toString()).lex()).parseExpression();
+        for (int i = 0; i < 10000; i++) {
+            Assertions.assertTrue(actual instanceof Ast.Expression.Group);
+            actual = ((Ast.Expression.Group) actual).getExpression();
+            Assertions.assertEquals(new Ast.Expression.Literal(BigInteger.ONE), ((Ast.Expression.Binary) actual).getLeft());
+            actual = ((Ast.Expression.Binary) actual).getRight();
+        }
+        Assertions.assertEquals(new Ast.Expression.Literal(BigInteger.ONE), actual);
+    }
+
+    @Test
+    void testDeeplyNestedStatements() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            input.append(i % 2 == 0 ? "IF x DO " : "WHILE x DO ");
+        }
+        input.append("f(); ");
+        for (int i = 0; i < 10000; i++) {
+            input.append("END ");
+        }
+        Ast.Statement actual = new Parser(new Lexer(input.toString()).lex()).parseStatement();
+        for (int i = 0; i < 10000; i++) {
+            List<Ast.Statement> body = actual instanceof Ast.Statement.If
+                    ? ((Ast.Statement.If) actual).getThenStatements()
+                    : ((Ast.Statement.While) actual).getStatements();
+            Assertions.assertEquals(1, body.size());
+            actual = body.get(0);
+        }
+        Assertions.assertEquals(new Ast.Statement.Expression(new Ast.Expression.Function("f", Arrays.asList())), actual);
+    }
+
+    @Test
+    void testDeeplyNestedStatementError() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            input.append("IF x DO ");
+        }
+        input.append("f() END");
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input.toString()).lex()).parseStatement());
+        Assertions.assertEquals("Error if statement: Expected ';' after expression", exception.getMessage());
+    }
+
+    @Test
+    void testStreamingSource() {
+        String input = "VAR first: Integer = 1; FUN main(): Integer DO WHILE first != 10 DO print(first); first = first + 1; END RETURN 0; END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).iterator()).parseSource());
+    }
+
+    @Test
+    void testBufferedSource() {
+        String input = "VAR first: Integer = 1; FUN main(): Integer DO WHILE first != 10 DO print(first); first = first + 1; END RETURN 0; END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).parseSource());
+    }
+
+    @Test
+    void testIncrementalSource() {
+        String before = "VAR x: Integer = 1; FUN f(): Integer DO RETURN x; END FUN g(): Integer DO RETURN 2; END FUN main(): Integer DO RETURN f(); END";
+        String after = "VAR x: Integer = 1; FUN f(): Integer DO RETURN x + 1; END FUN g(): Integer DO RETURN 2; END FUN main(): Integer DO RETURN f(); END";
+        Parser.Snapshot first = Parser.parseIncremental(new Lexer(before).lex(), null);
+        Parser.Snapshot second = Parser.parseIncremental(new Lexer(after).lex(), first);
+        Assertions.assertEquals(new Parser(new Lexer(after).lex()).parseSource(), second.getSource());
+        Assertions.assertEquals(3, second.getReused());
+        Assertions.assertSame(first.getSource().getGlobals().get(0), second.getSource().getGlobals().get(0));
+        Assertions.assertNotSame(first.getSource().getFunctions().get(0), second.getSource().getFunctions().get(0));
+        Assertions.assertSame(first.getSource().getFunctions().get(1), second.getSource().getFunctions().get(1));
+        Assertions.assertSame(first.getSource().getFunctions().get(2), second.getSource().getFunctions().get(2));
+    }
+
+    @Test
+    void testRecoveringSource() {
+        String input = "VAR x: Integer = ; FUN f(): Integer DO x = ; RETURN x; END VAL y: = 2; FUN g(): Integer DO IF DO END RETURN 1; END FUN main(): Integer DO RETURN 0; END";
+        List<ParseException> diagnostics = new ArrayList<>();
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource(diagnostics);
+        Assertions.assertEquals(5, diagnostics.size());
+        Assertions.assertEquals(0, source.getGlobals().size());
+        Assertions.assertEquals(Arrays.asList("f", "g", "main"), source.getFunctions().stream().map(Ast.Function::getName).collect(Collectors.toList()));
+        Assertions.assertEquals(1, source.getFunctions().get(0).getStatements().size());
+    }
+
+    @Test
+    void testRecoveringEndOfInput() {
+        List<ParseException> diagnostics = new ArrayList<>();
+        Ast.Source source = new Parser(new Lexer("VAL x: Integer = 1; FUN main(): Integer DO RETURN").lex()).parseSource(diagnostics);
+        Assertions.assertEquals(1, diagnostics.size());
+        Assertions.assertEquals(1, source.getGlobals().size());
+        Assertions.assertEquals(0, source.getFunctions().size());        Assertions.assertEquals("Unexpected end of input", diagnostics.get(0).getMessage());
+        Assertions.assertEquals(49, diagnostics.get(0).getIndex());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("FUN main(): Integer DO LET x = ").lex()).parseSource());
+        Assertions.assertEquals("Unexpected end of input", exception.getMessage());
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
@@ -0,0 +1,808 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The recursive-descent parser that {@link Parser} replaced, kept as a
+ * reference for {@link ParserDifferentialTests}. Expressions are parsed by one
+ * method per precedence level, and nested statements by recursive calls
+ * through {@link #parseBlock()} and friends, as before {@link Parser} moved
+ * to a precedence table and an explicit stack of open blocks.
+ *
+ * It reports the end of input as a {@link ParseException} and prefixes an
+ * error with only the innermost statement it occurred in, which are the two
+ * intended changes in {@link Parser}. Any other difference between the two
+ * is a regression.
+ */
+final class RecursiveParser {
+
+    private final TokenStream tokens;
+    private List<ParseException> diagnostics = null;
+    private ParseException prefixed = null;
+
+    RecursiveParser(List<Token> tokens) {
+        this.tokens = new TokenStream(tokens);
+    }
+
+    /**
+     * Parses the {@code source} rule.
+     */
+    public Ast.Source parseSource() throws ParseException {
+        try {
+            List<Ast.Global> g = new ArrayList<>();
+            List<Ast.Function> f = new ArrayList<>();
+            while (tokens.has(0)) {
+                addDeclaration(parseDeclaration(), g, f);
+            }
+            return new Ast.Source(g,f);
+        } catch (ParseException pe) {
+            throw new ParseException(pe.getMessage(), pe.getIndex());
+        }
+    }
+
+    /**
+     * Parses the {@code source} rule, recovering from errors instead of
+     * stopping at the first one. Every error is added to {@code diagnostics},
+     * and the returned source contains whatever could still be parsed.
+     *
+     * After an error in a statement the parser skips ahead to the next
+     * {@code ;} (consuming it) or {@code END}, and continues with the
+     * enclosing block; if it reaches the start of a top-level
+     * {@code FUN/VAR/VAL/LIST} first, the enclosing declaration is dropped and
+     * parsing resumes there. Errors outside of a block skip ahead to the next
+     * top-level declaration in the same way.
+     */
+    public Ast.Source parseSource(List<ParseException> diagnostics) {
+        this.diagnostics = diagnostics;
+        try {
+            List<Ast.Global> g = new ArrayList<>();
+            List<Ast.Function> f = new ArrayList<>();
+            while (tokens.has(0)) {
+                int start = tokens.index;
+                try {
+                    addDeclaration(parseDeclaration(), g, f);
+                } catch (ParseException e) {
+                    diagnostics.add(e);
+                    if (tokens.index == start) {
+                        tokens.advance();
+                    }
+                    synchronizeDeclaration();
+                } catch (Recovery r) {
+                    synchronizeDeclaration();
+                }
+            }
+            return new Ast.Source(g, f);
+        } finally {
+            this.diagnostics = null;
+        }
+    }
+
+    /**
+     * Parses a single top-level declaration: a global or a function.
+     */
+    private Ast parseDeclaration() throws ParseException {
+        switch (tokens.getKind(0)) {
+            case LIST:
+            case VAR:
+            case VAL:
+                return parseGlobal();
+            case FUN:
+                tokens.advance();
+                return parseFunction();
+            default:
+                throw new ParseException("Expected global or function declaration", tokens.get(0).getIndex());
+        }
+    }
+
+    private static void addDeclaration(Ast declaration, List<Ast.Global> globals, List<Ast.Function> functions) {
+        if (declaration instanceof Ast.Global) {
+            globals.add((Ast.Global) declaration);
+        } else {
+            functions.add((Ast.Function) declaration);
+        }
+    }
+
+    /**
+     * Parses the {@code global} rule. This method should only be called if the
+     * next tokens start a global, aka {@code LIST|VAL|VAR}.
+     */
+    public Ast.Global parseGlobal() throws ParseException {
+        switch (tokens.getKind(0)) {
+            case LIST:
+                return parseList();
+            case VAR:
+                return parseMutable();
+            case VAL:
+                return parseImmutable();
+            default:
+                throw new ParseException("Expected global declaration", tokens.get(0).getIndex());
+        }
+    }
+
+    /**
+     * Parses the {@code list} rule. This method should only be called if the
+     * next token declares a list, aka {@code LIST}.
+     */
+    public Ast.Global parseList() throws ParseException {
+        // 'LIST' identifier '=' '[' expression (',' expression)* ']'
+        match(Token.Kind.LIST);
+        if (!match(Token.Type.IDENTIFIER)) {
+            throw new ParseException("Expected identifier after LIST", tokens.get(-1).getIndex());
+        }
+        String listName = tokens.get(-1).getLiteral(); //identifier
+        Optional<Ast.Expression> value = Optional.empty();
+        if (match(Token.Kind.EQUALS)) {
+            value = Optional.of(parseExpression());
+        }
+        List<Ast.Expression> exprs = new ArrayList<>();
+        if (match(Token.Kind.LEFT_BRACKET)) {
+            do {
+                exprs.add(parseExpression());
+            }
+            while (match(Token.Kind.COMMA));
+            if (!match(Token.Kind.RIGHT_BRACKET)) {
+                throw new ParseException("Expected ]", tokens.get(-1).getIndex());
+            }
+        } else {
+            throw new ParseException("Expected [", tokens.get(-1).getIndex());
+        }
+
+        return new Ast.Global(listName, false, value);
+    }
+
+    /**
+     * Parses the {@code mutable} rule. This method should only be called if the
+     * next token declares a mutable global variable, aka {@code VAR}.
+     */
+    public Ast.Global parseMutable() throws ParseException {
+        match(Token.Kind.VAR);
+        if (!match(Token.Type.IDENTIFIER)) {
+            throw new ParseException("Expected identifier after VAR", tokens.get(-1).getIndex());
+        }
+        String identifier = tokens.get(-1).getLiteral();
+        if (!match(Token.Kind.COLON)) {
+            throw new ParseException("Expected ':' after identifier", tokens.get(-1).getIndex());
+        }
+        if (!match(Token.Type.IDENTIFIER)) {
+            throw new ParseException("Expected type identifier after ':'", tokens.get(-1).getIndex());
+        }
+        String typeName = tokens.get(-1).getLiteral();
+        Optional<Ast.Expression> value = Optional.empty();
+        if (match(Token.Kind.EQUALS)) {
+            value = Optional.of(parseExpression());
+        }
+        match(Token.Kind.SEMICOLON);
+        return new Ast.Global(identifier, typeName, true, value);
+    }
+
+    /**
+     * Parses the {@code immutable} rule. This method should only be called if the
+     * next token declares an immutable global variable, aka {@code VAL}.
+     */
+    public Ast.Global parseImmutable() throws ParseException {
+        match(Token.Kind.VAL);
+        if (!match(Token.Type.IDENTIFIER)) {
+            throw new ParseException("Expected identifier after VAL", tokens.get(-1).getIndex());
+        }
+        String identifier = tokens.get(-1).getLiteral();
+
+        if (!match(Token.Kind.COLON)) {
+            throw new ParseException("Expected ':' after identifier for type annotation", tokens.get(-1).getIndex());
+        }
+        if (!match(Token.Type.IDENTIFIER)) {
+            throw new ParseException("Expected type identifier after ':'", tokens.get(-1).getIndex());
+        }
+        String typeName = tokens.get(-1).getLiteral();
+
+        if (!match(Token.Kind.EQUALS)) {
+            throw new ParseException("Expected '=' after type annotation", tokens.get(-1).getIndex());
+        }
+        Ast.Expression value = parseExpression();
+
+        match(Token.Kind.SEMICOLON);
+        return new Ast.Global(identifier, typeName, false, Optional.of(value));
+    }
+
+    /**
+     * Parses the {@code function} rule. This method should only be called if the
+     * next tokens start a method, aka {@code FUN}.
+     */
+    public Ast.Function parseFunction() throws ParseException {
+        match(Token.Kind.FUN);
+        if (!match(Token.Type.IDENTIFIER)) {
+            throw new ParseException("Expected identifier after FUN", tokens.get(-1).getIndex());
+        }
+        String functionName = tokens.get(-1).getLiteral();
+
+        List<String> parameters = new ArrayList<>();
+        List<String> parameterTypeNames = new ArrayList<>();
+        //parameters
+        if (match(Token.Kind.LEFT_PAREN)) {
+            // check for parameters
+            while (!peek(Token.Kind.RIGHT_PAREN)) {
+                if (!match(Token.Type.IDENTIFIER)) {
+                    throw new ParseException("Expected identifier for function parameter", tokens.get(-1).getIndex());
+                }
+                String parameterName = tokens.get(-1).getLiteral();
+
+                if (!match(Token.Kind.COLON)) {
+                    throw new ParseException("Expected ':' after parameter name for type annotation", tokens.get(-1).getIndex());
+                }
+                if (!match(Token.Type.IDENTIFIER)) {
+                    throw new ParseException("Expected type identifier after ':' for parameter type", tokens.get(-1).getIndex());
+                }
+                String parameterTypeName = tokens.get(-1).getLiteral();
+
+                parameters.add(parameterName);
+                parameterTypeNames.add(parameterTypeName);
+
+                if (!match(Token.Kind.COMMA)) { //stop parsing parameters
+                    break;
+                }
+            }
+            if (!match(Token.Kind.RIGHT_PAREN)) {
+                throw new ParseException("Expected ')' after parameters", tokens.get(-1).getIndex());
+            }
+        }
+
+        String returnTypeName = "Any";
+        if (match(Token.Kind.COLON)) {
+            if (!match(Token.Type.IDENTIFIER)) {
+                throw new ParseException("Expected type identifier after ':' for return type", tokens.get(-1).getIndex());
+            }
+            returnTypeName = tokens.get(-1).getLiteral();
+        }
+
+        match(Token.Kind.DO);
+        // parse body of function
+        List<Ast.Statement> statements = parseBlock();
+        match(Token.Kind.END);
+        return new Ast.Function(functionName, parameters, parameterTypeNames,  Optional.of(returnTypeName), statements);
+    }
+
+    /**
+     * Parses the {@code block} rule. This method should only be called if the
+     * preceding token indicates the opening a block of statements.
+     */
+    public List<Ast.Statement> parseBlock() throws ParseException {
+        List<Ast.Statement> statements = new ArrayList<>();
+        while (!match(Token.Kind.END)) {
+            int start = tokens.index;
+            Ast.Statement statement = parseStatementOrRecover();
+            if (statement == null) {
+                continue;
+            } else if (tokens.index == start) {
+                throw new ParseException("Potential Error Encountered", tokens.get(0).getIndex());
+            }
+            statements.add(statement);
+        }
+        return statements;
+    }
+
+    /**
+     * Parses the {@code statement} rule and delegates to the necessary method.
+     * If the next tokens do not start a declaration, if, while, or return
+     * statement, then it is an expression/assignment statement.
+     */
+    public Ast.Statement parseStatement() throws ParseException {
+        switch (tokens.has(0) ? tokens.getKind(0) : Token.Kind.NONE) {
+            case LET:
+                return parseDeclarationStatement();
+            case SWITCH:
+                return parseSwitchStatement();
+            case IF:
+                return parseIfStatement();
+            case WHILE:
+                return parseWhileStatement();
+            case RETURN:
+                return parseReturnStatement();
+            default:
+                break;
+        }
+        Ast.Expression expression = parseExpression();
+        if (match(Token.Kind.EQUALS)) {
+            if (!tokens.has(0)) {
+                throw new ParseException("Expected expression after '='", tokens.get(-1).getIndex());
+            }
+            Ast.Expression right = parseExpression();
+            if (!match(Token.Kind.SEMICOLON)) {
+                throw new ParseException("Expected ';' after expression", tokens.get(-1).getIndex());
+            }
+            return new Ast.Statement.Assignment(expression, right);
+        } else if (!match(Token.Kind.SEMICOLON)) {
+            throw new ParseException("Expected ';' after expression", tokens.get(-1).getIndex());
+        }
+        return new Ast.Statement.Expression(expression);
+    }
+
+    /**
+     * Parses a statement. When recovering from errors (see {@link
+     * #parseSource(List)}), a statement that fails to parse is reported, the
+     * tokens up to the next {@code ;} or {@code END} are skipped, and
+     * {@code null} is returned instead.
+     */
+    private Ast.Statement parseStatementOrRecover() throws ParseException {
+        if (diagnostics == null) {
+            return parseStatement();
+        }
+        try {
+            return parseStatement();
+        } catch (ParseException e) {
+            diagnostics.add(e);
+            synchronizeStatement();
+            return null;
+        }
+    }
+
+    private static void addStatement(List<Ast.Statement> statements, Ast.Statement statement) {
+        if (statement != null) {
+            statements.add(statement);
+        }
+    }
+
+    /**
+     * Skips past the next {@code ;}, or up to the next {@code END}. Reaching a
+     * top-level declaration or the end of input abandons the enclosing
+     * declaration.
+     */
+    private void synchronizeStatement() {
+        while (tokens.has(0)) {
+            switch (tokens.getKind(0)) {
+                case SEMICOLON:
+                    tokens.advance();
+                    return;
+                case END:
+                    return;
+                case FUN:
+                case VAR:
+                case VAL:
+                case LIST:
+                    throw Recovery.INSTANCE;
+                default:
+                    tokens.advance();
+            }
+        }
+        throw Recovery.INSTANCE;
+    }
+
+    /**
+     * Skips up to the next top-level declaration or the end of input.
+     */
+    private void synchronizeDeclaration() {
+        while (tokens.has(0)) {
+            switch (tokens.getKind(0)) {
+                case FUN:
+                case VAR:
+                case VAL:
+                case LIST:
+                    return;
+                default:
+                    tokens.advance();
+            }
+        }
+    }
+
+    private ParseException endOfInput() {
+        int index = 0;
+        if (tokens.has(-1) && tokens.index > 0) {
+            Token last = tokens.get(-1);
+            index = last.getIndex() + last.getLength();
+        }
+        return new ParseException("Unexpected end of input", index);
+    }
+
+    /**
+     * Prefixes an error with the statement it occurred in, unless a nested
+     * statement already has, so an error is prefixed once as in Parser.
+     */
+    private ParseException prefix(String prefix, ParseException e, int index) {
+        if (e != prefixed) {
+            prefixed = new ParseException(prefix + e.getMessage(), index);
+        }
+        return prefixed;
+    }
+
+    /**
+     * Parses a declaration statement from the {@code statement} rule. This
+     * method should only be called if the next tokens start a declaration
+     * statement, aka {@code LET}.
+     */
+    public Ast.Statement.Declaration parseDeclarationStatement() throws ParseException {
+        // 'LET' identifier ('=' expression)? ';'
+        match(Token.Kind.LET);
+        if (!match(Token.Type.IDENTIFIER)) {
+            throw new ParseException("Expected Identifier", tokens.get(-1).getIndex());
+        }
+        String name = tokens.get(-1).getLiteral(); //identifier
+
+        Optional<String> typeName = Optional.empty();
+        if (match(Token.Kind.COLON)) {
+            if (!match(Token.Type.IDENTIFIER)) {
+                throw new ParseException("Expected type identifier after ':'", tokens.get(-1).getIndex());
+            }
+            typeName = Optional.of(tokens.get(-1).getLiteral());
+        }
+
+        Optional<Ast.Expression> value = Optional.empty();
+        if (match(Token.Kind.EQUALS)) {
+            value = Optional.of(parseExpression());
+        }
+        if (!match(Token.Kind.SEMICOLON)) {
+            throw new ParseException("Expected ';'", tokens.get(-1).getIndex());
+        }
+        return new Ast.Statement.Declaration(name, typeName, value);
+    }
+
+    /**
+     * Parses an if statement from the {@code statement} rule. This method
+     * should only be called if the next tokens start an if statement, aka
+     * {@code IF}.
+     */
+    public Ast.Statement.If parseIfStatement() throws ParseException {
+        try {
+            if (match(Token.Kind.IF)) {
+                Ast.Expression condition = parseExpression();
+                if (!match(Token.Kind.DO)) {
+                    throw new ParseException("Expected 'DO' after IF condition", tokens.get(-1).getIndex());
+                }
+                List<Ast.Statement> then = new ArrayList<>(); // then block
+                List<Ast.Statement> el = new ArrayList<>(); //ELSE
+                //first match +parse all thens
+                while (!peek(Token.Kind.ELSE) && !peek(Token.Kind.END)) {
+                    addStatement(then, parseStatementOrRecover());
+                }
+                if (match(Token.Kind.ELSE)) {
+                    while (!peek(Token.Kind.END)) {
+                        addStatement(el, parseStatementOrRecover());
+                    }
+                }
+                if(match(Token.Kind.END)){
+                    return new Ast.Statement.If(condition, then, el);
+                }
+                else {
+                    throw new ParseException("Missing END", tokens.get(-1).getIndex());
+                }
+            }
+            else {
+                throw new ParseException("Invalid statement", tokens.get(-1).getIndex());
+            }
+        } catch (ParseException e) {
+            throw prefix("Error if statement: ", e, tokens.get(-1).getIndex());
+        }
+    }
+
+    /**
+     * Parses a switch statement from the {@code statement} rule. This method
+     * should only be called if the next tokens start a switch statement, aka
+     * {@code SWITCH}.
+     */
+    public Ast.Statement.Switch parseSwitchStatement() throws ParseException {
+        //'SWITCH' expression ('CASE' expression ':' block)* 'DEFAULT' block 'END'
+        try {
+            match(Token.Kind.SWITCH);
+            Ast.Expression condition = parseExpression();
+            List<Ast.Statement.Case> cases = new ArrayList<>();
+
+            while (peek(Token.Kind.CASE) || peek(Token.Kind.DEFAULT)) {
+                Optional<Ast.Expression> caseExpr = Optional.empty();
+                if (match(Token.Kind.CASE)) {
+                    caseExpr = Optional.of(parseExpression());
+                    if (!match(Token.Kind.COLON)) {
+                        throw new ParseException("Expected ':' after case expression", tokens.get(-1).getIndex());
+                    }
+                } else if (match(Token.Kind.DEFAULT)) {
+                    if (!match(Token.Kind.COLON)) {
+                        throw new ParseException("Expected ':' after DEFAULT", tokens.get(-1).getIndex());
+                    }
+                }
+
+                List<Ast.Statement> caseStatements = parseBlock();
+                cases.add(new Ast.Statement.Case(caseExpr, caseStatements));
+            }
+
+            if (!match(Token.Kind.END)) {
+                throw new ParseException("Expected 'END' after switch statement", tokens.get(-1).getIndex());
+            }
+
+            return new Ast.Statement.Switch(condition, cases);
+        }
+        catch (ParseException e) {
+            throw prefix("Error switch statement: ", e, tokens.get(-1).getIndex());
+        }
+    }
+
+    /**
+     * Parses a while statement from the {@code statement} rule. This method
+     * should only be called if the next tokens start a while statement, aka
+     * {@code WHILE}.
+     */
+    public Ast.Statement.While parseWhileStatement() throws ParseException {
+        try {
+            match(Token.Kind.WHILE);
+            Ast.Expression condition = parseExpression();
+
+            if (!match(Token.Kind.DO)) {
+                throw new ParseException("Expected 'DO' after 'WHILE' condition", tokens.get(-1).getIndex());
+            }
+
+            List<Ast.Statement> statements = new ArrayList<>();
+            while (!peek(Token.Kind.END) && tokens.has(0)) {
+                addStatement(statements, parseStatementOrRecover());
+            }
+
+            if (!match(Token.Kind.END)) {
+                throw new ParseException("Missing 'END' after 'WHILE' block", tokens.get(-1).getIndex());
+            }
+
+            return new Ast.Statement.While(condition, statements);
+        }
+        catch (ParseException e) {
+            throw prefix("Error in while: ", e, e.getIndex());
+        }
+    }
+
+    /**
+     * Parses a return statement from the {@code statement} rule. This method
+     * should only be called if the next tokens start a return statement, aka
+     * {@code RETURN}.
+     */
+    public Ast.Statement.Return parseReturnStatement() throws ParseException {
+        match(Token.Kind.RETURN);
+        Ast.Expression expression = parseExpression();
+        match(Token.Kind.SEMICOLON);
+        return new Ast.Statement.Return(expression);
+    }
+
+    /**
+     * Parses the {@code expression} rule.
+     */
+    public Ast.Expression parseExpression() throws ParseException {
+        return parseLogicalExpression();
+    }
+
+    /**
+     * Parses the {@code logical-expression} rule.
+     */
+    public Ast.Expression parseLogicalExpression() throws ParseException {
+        Ast.Expression currentExpression = parseComparisonExpression();
+        while (match(Token.Kind.AND) || match(Token.Kind.OR)) {
+            String operation = tokens.get(-1).getLiteral();
+            if (!tokens.has(0)) {
+                throw new ParseException("Expected an expression after operator '" + operation + "'", tokens.index);
+            }
+            Ast.Expression rightExpression = parseComparisonExpression();
+            currentExpression = new Ast.Expression.Binary(operation, currentExpression, rightExpression);
+        }
+        return currentExpression;
+    }
+
+    /**
+     * Parses the {@code comparison-expression} rule.
+     */
+    public Ast.Expression parseComparisonExpression() throws ParseException {
+        Ast.Expression currentExpression = parseAdditiveExpression();
+        while (match(Token.Kind.NOT_EQUAL) || match(Token.Kind.EQUAL_EQUAL) || match(Token.Kind.GREATER_EQUAL) || match(Token.Kind.GREATER) || match(Token.Kind.LESS_EQUAL) || match(Token.Kind.LESS)) {
+            String operation = tokens.get(-1).getLiteral();
+            if (!tokens.has(0)) {
+                throw new ParseException("Expected an expression after operator '" + operation + "'", tokens.index);
+            }
+            Ast.Expression rightExpr = parseAdditiveExpression();
+            currentExpression = new Ast.Expression.Binary(operation, currentExpression, rightExpr);
+        }
+        return currentExpression;
+    }
+
+    /**
+     * Parses the {@code additive-expression} rule.
+     */
+    public Ast.Expression parseAdditiveExpression() throws ParseException {
+        Ast.Expression expression=parseMultiplicativeExpression();
+        while(match(Token.Kind.PLUS)||match(Token.Kind.MINUS)){
+            String add= tokens.get(-1).getLiteral(); //store operator
+            if (!tokens.has(0)) {
+                throw new ParseException("Expected an expression after operator '" + add + "'", tokens.index);
+            }
+            Ast.Expression right=parseMultiplicativeExpression();
+            expression=new Ast.Expression.Binary(add,expression,right);
+        }
+        return expression;
+    }
+
+    /**
+     * Parses the {@code multiplicative-expression} rule.
+     */
+    public Ast.Expression parseMultiplicativeExpression() throws ParseException {
+        Ast.Expression expression=parsePrimaryExpression();
+        while(match(Token.Kind.SLASH)||match(Token.Kind.STAR)){
+            String multi= tokens.get(-1).getLiteral();
+            if (!tokens.has(0)) {
+                throw new ParseException("Expected an expression after operator '" + multi + "'", tokens.index);
+            }
+            Ast.Expression right=parsePrimaryExpression();
+            expression=new Ast.Expression.Binary(multi,expression,right);
+        }
+        return expression;
+    }
+
+    /**
+     * Parses the {@code primary-expression} rule. This is the top-level rule
+     * for expressions and includes literal values, grouping, variables, and
+     * functions. It may be helpful to break these up into other methods but is
+     * not strictly necessary.
+     */
+    public Ast.Expression parsePrimaryExpression() throws ParseException {
+        if (match(Token.Kind.NIL)) {
+            return new Ast.Expression.Literal(null);
+        } else if (match(Token.Kind.TRUE)) {
+            return new Ast.Expression.Literal(true);
+        } else if (match(Token.Kind.FALSE)) {
+            return new Ast.Expression.Literal(false);
+        } else if (match(Token.Type.INTEGER)) {
+            BigInteger in = new BigInteger(tokens.get(-1).getLiteral());
+            return new Ast.Expression.Literal(in);
+        } else if (match(Token.Type.DECIMAL)) {
+            BigDecimal dec = new BigDecimal(tokens.get(-1).getLiteral());
+            return new Ast.Expression.Literal(dec);
+        } else if (match(Token.Type.CHARACTER)) {
+            String ch = tokens.get(-1).getLiteral();
+            return new Ast.Expression.Literal(ch.charAt(1));
+        } else if (match(Token.Type.STRING)) {
+            String str = tokens.get(-1).getLiteral();
+            str = str.replace("\\n", "\n");
+            str = str.replace("\\t", "\t");
+            str = str.replace("\\b", "\b");
+            str = str.replace("\\r", "\r");
+            str = str.replace("\\'", "'");
+            str = str.replace("\\\\", "\\");
+            str = str.replace("\\\"", "\"");
+            str = str.substring(1, str.length() - 1);
+            return new Ast.Expression.Literal(str);
+        }
+        else if (match(Token.Kind.LEFT_PAREN)) {
+            Ast.Expression.Group expression = new Ast.Expression.Group(parseExpression());
+            if (match(Token.Kind.RIGHT_BRACKET)) {
+                throw new ParseException("Invalid Closing Parenthesis", tokens.get(-1).getIndex());
+            }
+            if (!match(Token.Kind.RIGHT_PAREN)) {
+                throw new ParseException("Missing )", tokens.get(-1).getIndex());
+            }
+
+            return expression;
+        }
+
+        else if (peek(Token.Type.IDENTIFIER)) {
+            String id = tokens.get(0).getLiteral();
+            match(Token.Type.IDENTIFIER);
+            if (match(Token.Kind.LEFT_PAREN)) {
+                List<Ast.Expression> arguments = new ArrayList<>();
+                if (!match(Token.Kind.RIGHT_PAREN)) {
+                    do {
+                        arguments.add(parseExpression());
+                    } while (match(Token.Kind.COMMA));
+                    if (!match(Token.Kind.RIGHT_PAREN)) {
+                        throw new ParseException("Missing closing parenthesis", tokens.get(-1).getIndex());
+                    }
+                }
+                return new Ast.Expression.Function(id, arguments);
+            }
+            // check for access to array, uses Optional
+            if (match(Token.Kind.LEFT_BRACKET)) {
+                Ast.Expression index = parseExpression();
+                if (!match(Token.Kind.RIGHT_BRACKET)) {
+                    throw new ParseException("Missing closing bracket", tokens.get(-1).getIndex());
+                }
+                return new Ast.Expression.Access(Optional.of(index), id);
+            }
+            return new Ast.Expression.Access(Optional.empty(), id);
+        } else if (!tokens.has(0)) {
+            throw endOfInput();
+        }
+        throw new ParseException("Unexpected token: " + tokens.get(0).getType(), tokens.get(0).getIndex());
+    }
+
+    /**
+     * As in the lexer, returns {@code true} if the current sequence of tokens
+     * matches the given patterns. Unlike the lexer, the pattern is not a regex;
+     * instead it is either a {@link Token.Type}, which matches if the token's
+     * type is the same, a {@link Token.Kind}, which matches if the token is
+     * that keyword or operator, or a {@link String}, which matches if the
+     * token's literal is the same.
+     *
+     * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
+     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}, and
+     * {@code Token(IDENTIFIER, "END")} is also matched by
+     * {@code peek(Token.Kind.END)}.
+     */
+    private boolean peek(Object... patterns) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (!tokens.has(i)) {
+                return false;
+            } else if (patterns[i] instanceof Token.Kind) {
+                if (patterns[i] != tokens.getKind(i)) {
+                    return false;
+                }
+            } else if (patterns[i] instanceof Token.Type) {
+                if (patterns[i] != tokens.getType(i)) {
+                    return false;
+                }
+            } else if (patterns[i] instanceof String) {
+                if (!tokens.literalEquals(i, (String) patterns[i])) {
+                    return false;
+                }
+            } else
+                throw new AssertionError("Invalid pattern object: " + patterns[i].getClass());
+        }
+        return true;
+    }
+
+    /**
+     * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
+     * and advances the token stream.
+     */
+    private boolean match(Object... patterns) {
+        boolean peek = peek(patterns);
+        if (peek) {
+            for (int i = 0; i < patterns.length; i++)
+                tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * Thrown while recovering to abandon the enclosing declaration once its
+     * error has been reported. It is not a {@link ParseException}, so the
+     * statement methods that rewrap errors let it pass through untouched.
+     */
+    private static final class Recovery extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final Recovery INSTANCE = new Recovery();
+
+        private Recovery() {
+            super(null, null, false, false);
+        }
+
+    }
+
+
+    private static final class TokenStream {
+
+        private final List<Token> tokens;
+        private int index = 0;
+
+        private TokenStream(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        public boolean has(int offset) {
+            return index + offset < tokens.size();
+        }
+
+        public Token get(int offset) {
+            return tokens.get(index + offset);
+        }
+
+        public Token.Type getType(int offset) {
+            return get(offset).getType();
+        }
+
+        public Token.Kind getKind(int offset) {
+            return get(offset).getKind();
+        }
+
+        public boolean literalEquals(int offset, String literal) {
+            return literal.equals(get(offset).getLiteral());
+        }
+
+        public void advance() {
+            index++;
+        }
+
+    }
+
+}
@@ -0,0 +1,105 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+final class ResolverTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSource(String test, String input, Object expected) {
+        // resolved and unresolved trees give the same results, in both tiers
+        Ast.Source ast = parse(input);
+        Object unresolved = new Interpreter(new Scope(null)).visit(ast).getValue();
+        new Analyzer(new Scope(null)).visit(ast);
+        new Resolver().visit(ast);
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Assertions.assertEquals(expected, unresolved);
+        Assertions.assertEquals(expected, interpreter.visit(ast).getValue());
+        Environment.Function main = interpreter.getScope().lookupFunction("main", 0);
+        for (int i = 0; i < Interpreter.CALL_THRESHOLD; i++) {
+            Assertions.assertEquals(expected, main.invoke(Arrays.asList()).getValue());
+        }
+        Assertions.assertTrue(interpreter.isCompiled("main", 0));
+    }
+
+    private static Stream<Arguments> testSource() {
+        return Stream.of(
+                Arguments.of("Parameters",
+                        "FUN add(x: Integer, y: Integer): Integer DO RETURN x + y; END " +
+                        "FUN main(): Integer DO RETURN add(1, 2); END",
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Globals",
+                        "VAR x: Integer = 1; VAR y: Integer = 0; FUN main(): Integer DO y = x + 1; LET z = y; RETURN z; END",
+                        BigInteger.valueOf(2)
+                ),
+                Arguments.of("Nested Blocks",
+                        "FUN main(): Integer DO LET i = 0; LET sum = 0; " +
+                        "WHILE i < 10 DO LET j = 0; WHILE j < i DO IF j < 5 DO LET k = j; sum = sum + k; ELSE LET k = 1; sum = sum + k; END j = j + 1; END i = i + 1; END " +
+                        "RETURN sum; END",
+                        BigInteger.valueOf(70)
+                ),
+                Arguments.of("Switch",
+                        "FUN main(): Integer DO LET c = 'b'; LET r = 0; " +
+                        "SWITCH c CASE 'a': LET v = 1; r = v; END CASE 'b': LET v = 2; r = v; END DEFAULT: LET v = 3; r = v; END END " +
+                        "RETURN r; END",
+                        BigInteger.valueOf(2)
+                ),
+                Arguments.of("Uninitialized",
+                        "FUN main(): Integer DO LET x: Integer; x = 4; RETURN x; END",
+                        BigInteger.valueOf(4)
+                )
+        );
+    }
+
+    @Test
+    void testSlots() {
+        Ast.Source ast = parse("VAR g: Integer = 0; " +
+                "FUN f(a: Integer): Integer DO LET b = a; " +
+                "IF b > 0 DO LET c = b; g = c; ELSE LET d = g; LET e = d; g = e; END " +
+                "RETURN b; END");
+        new Resolver().visit(ast);
+        Ast.Function function = ast.getFunctions().get(0);
+        // the else block reuses the slot of the then block, so the frame needs four slots
+        Assertions.assertEquals(4, function.getFrameSize());
+        Ast.Statement.Declaration b = (Ast.Statement.Declaration) function.getStatements().get(0);
+        Assertions.assertEquals(1, b.getSlot());
+        Assertions.assertEquals(0, ((Ast.Expression.Access) b.getValue().get()).getSlot());
+        Ast.Statement.If branch = (Ast.Statement.If) function.getStatements().get(1);
+        Assertions.assertEquals(2, ((Ast.Statement.Declaration) branch.getThenStatements().get(0)).getSlot());
+        Assertions.assertEquals(2, ((Ast.Statement.Declaration) branch.getElseStatements().get(0)).getSlot());
+        Assertions.assertEquals(3, ((Ast.Statement.Declaration) branch.getElseStatements().get(1)).getSlot());
+        Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) branch.getThenStatements().get(1);
+        Assertions.assertEquals(-1, ((Ast.Expression.Access) assignment.getReceiver()).getSlot());
+    }
+
+    @Test
+    void testLexicalScoping() {
+        // resolved functions see the global, not their caller's local of the same name
+        Ast.Source ast = parse("VAR x: Integer = 1; " +
+                "FUN f(): Integer DO RETURN x; END " +
+                "FUN main(): Integer DO LET x = 2; RETURN f(); END");
+        Assertions.assertEquals(BigInteger.valueOf(2), new Interpreter(new Scope(null)).visit(ast).getValue());
+        new Resolver().visit(ast);
+        Assertions.assertEquals(BigInteger.ONE, new Interpreter(new Scope(null)).visit(ast).getValue());
+    }
+
+    @Test
+    void testRedefined() {
+        Ast.Source ast = parse("FUN main(): Integer DO LET x = 1; LET x = 2; RETURN x; END");
+        Assertions.assertThrows(RuntimeException.class, () -> new Resolver().visit(ast));
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
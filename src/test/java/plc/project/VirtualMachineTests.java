@@ -0,0 +1,54 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+final class VirtualMachineTests {
+
+    @Test
+    void testShadowing() {
+        // the machine resolves g lexically, where the interpreter sees main's g
+        String input = "VAR g: Integer = 5; FUN f(a: Integer): Integer DO RETURN a + g; END " +
+                "FUN main(): Integer DO LET g = 100; RETURN f(g); END";
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(BigInteger.valueOf(105), new VirtualMachine(new Scope(null)).execute(ast).getValue());
+        Assertions.assertEquals(BigInteger.valueOf(200), new Interpreter(new Scope(null)).visit(ast).getValue());
+        new Resolver().visit(ast);
+        Assertions.assertEquals(BigInteger.valueOf(105), new Interpreter(new Scope(null)).visit(ast).getValue());
+    }
+
+    @Test
+    void testFunction() {
+        VirtualMachine machine = new VirtualMachine(new Scope(null));
+        machine.define(new Parser(new Lexer("FUN twice(n: Integer): Integer DO RETURN n * 2; END").lex()).parseFunction());
+        Environment.PlcObject result = machine.getScope().lookupFunction("twice", 1)
+                .invoke(Arrays.asList(Environment.create(BigInteger.valueOf(21))));
+        Assertions.assertEquals(BigInteger.valueOf(42), result.getValue());
+    }
+
+    @Test
+    void testDisassemble() {
+        Bytecode bytecode = BytecodeCompiler.compile(new Parser(new Lexer(
+                "FUN f(n: Integer): String DO WHILE n > 0 DO n = n - 1; END RETURN \"n = \" + n; END"
+        ).lex()).parseFunction());
+        Assertions.assertEquals(String.join("\n",
+                "f/1 (registers: 3, constants: 4)",
+                "   0  CONST          r2, #0 (0)",
+                "   4  GT             r1, r0, r2",
+                "   8  JUMP_FALSE     r1, 28",
+                "  12  CONST          r2, #1 (1)",
+                "  16  SUB            r1, r0, r2",
+                "  20  MOVE           r0, r1",
+                "  24  JUMP           0",
+                "  28  CONST          r2, #2 (\"n = \")",
+                "  32  ADD            r1, r2, r0",
+                "  36  RETURN         r1",
+                "  40  CONST          r1, #3 (nil)",
+                "  44  RETURN         r1",
+                ""), bytecode.disassemble());
+    }
+
+}